@@ -4,8 +4,9 @@ import config.MiniChainConfig;
 import data.*;
 import utils.MinerUtil;
 import utils.SHA256Util;
+import utils.Sha256Midstate;
 
-import java.util.LinkedList;
+import java.nio.charset.StandardCharsets;
 import java.util.Random;
 
 /**
@@ -68,19 +69,13 @@ public class MinerNode extends Thread {
     public BlockBody getBlockBody(Transaction[] transactions) {
         assert transactions != null && transactions.length == MiniChainConfig.MAX_TRANSACTION_COUNT;
         //todo
-        LinkedList<String> hashValues = new LinkedList<>();
-        for (Transaction transaction : transactions) {
-            hashValues.add(SHA256Util.sha256Digest(transaction.toString()));
+        // 叶子节点为交易的32字节哈希值，Merkle树直接在原始字节上计算
+        byte[][] leaves = new byte[transactions.length][];
+        for (int i = 0; i < transactions.length; ++i) {
+            leaves[i] = SHA256Util.sha256Digest(transactions[i].toString().getBytes(StandardCharsets.UTF_8));
         }
-        while (hashValues.size() > 1) {
-            int size = hashValues.size();
-            for (int i = 0; i < size; i += 2) {
-                String firstHash = hashValues.poll();
-                String secondHash = hashValues.poll();
-                hashValues.offer(SHA256Util.sha256Digest(firstHash + secondHash));
-            }
-        }
-        BlockBody blockBody = new BlockBody(hashValues.poll(), transactions);
+        MerkleTree merkleTree = new MerkleTree(leaves);
+        BlockBody blockBody = new BlockBody(SHA256Util.bytes2HexString(merkleTree.getRoot()), transactions);
         return blockBody;
     }
 
@@ -92,12 +87,17 @@ public class MinerNode extends Thread {
      */
     private void mine(BlockBody blockBody) {
         Block block = getBlock(blockBody);
+        // 区块头中nonce之前的部分只压缩一次，每次尝试只处理包含nonce的末尾分组
+        Sha256Midstate hasher = new Sha256Midstate(block.getBlockHeader().toBytes(), BlockHeader.NONCE_OFFSET);
+        byte[] digest = new byte[32];
+        String prefixTarget = MinerUtil.hashPrefixTarget();
         while (true) {
-            String blockHash = SHA256Util.sha256Digest(block.toString());
-            if (blockHash.startsWith(MinerUtil.hashPrefixTarget())) {
+            hasher.hash(block.getBlockHeader().getNonce(), digest);
+            String blockHash = SHA256Util.bytes2HexString(digest);
+            if (blockHash.startsWith(prefixTarget)) {
                 System.out.println("Mined a new Block! Detail of the new Block : ");
                 System.out.println(block.toString());
-                System.out.println("And the hash of this Block is : " + SHA256Util.sha256Digest(block.toString()) +
+                System.out.println("And the hash of this Block is : " + blockHash +
                                     ", you will see the hash value in next Block's preBlockHash field.");
                 System.out.println();
                 blockChain.addNewBlock(block);
@@ -122,7 +122,7 @@ public class MinerNode extends Thread {
      */
     public Block getBlock(BlockBody blockBody) {
         Block preBlock = blockChain.getNewestBlock();
-        String preBlockHash = SHA256Util.sha256Digest(preBlock.toString());
+        String preBlockHash = preBlock.getBlockHeader().getHash();
 
         BlockHeader blockHeader = new BlockHeader(preBlockHash, blockBody.getMerkleRootHash(),
                                                     Math.abs(new Random().nextLong()));
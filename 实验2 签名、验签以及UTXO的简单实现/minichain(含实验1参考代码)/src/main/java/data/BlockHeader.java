@@ -1,6 +1,9 @@
 package data;
 
 import config.MiniChainConfig;
+import utils.SHA256Util;
+
+import java.nio.ByteBuffer;
 
 /**
  * 对区块头的抽象（参考比特币中的区块头结构），主要有以下字段：
@@ -16,9 +19,23 @@ import config.MiniChainConfig;
  *
  *    nonce: 随机字段，创建新的区块头对象时需要提供该参数
  *
+ * 工作量证明只对区块头的定长二进制序列化（见toBytes方法）计算哈希，与区块体中交易的数量和大小无关
+ *
  */
 public class BlockHeader {
 
+    /**
+     * 区块头二进制序列化的长度：version(4) + preBlockHash(32) + merkleRootHash(32) + timestamp(8) + difficulty(4) + nonce(8)
+     */
+    public static final int HEADER_SIZE = 88;
+
+    /**
+     * nonce 在区块头二进制序列化中的偏移量，nonce 位于末尾，挖矿时只需改写最后8个字节
+     */
+    public static final int NONCE_OFFSET = HEADER_SIZE - 8;
+
+    private static final int HASH_SIZE = 32;
+
     private final int version = 1;
     private final String preBlockHash;
     private final String merkleRootHash;
@@ -61,6 +78,40 @@ public class BlockHeader {
         this.nonce = nonce;
     }
 
+    /**
+     * 区块头的定长二进制序列化（大端序），作为工作量证明的唯一原像，
+     * 创世区块的preBlockHash和merkleRootHash为null，此时以32个0字节填充
+     *
+     * @return 长度为HEADER_SIZE的字节数组
+     */
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+        buffer.putInt(version);
+        putHash(buffer, preBlockHash);
+        putHash(buffer, merkleRootHash);
+        buffer.putLong(timestamp);
+        buffer.putInt(difficulty);
+        buffer.putLong(nonce);
+        return buffer.array();
+    }
+
+    /**
+     * 区块的哈希值，即对区块头二进制序列化计算的SHA256哈希值
+     *
+     * @return 十六进制形式的区块哈希
+     */
+    public String getHash() {
+        return SHA256Util.bytes2HexString(SHA256Util.sha256Digest(toBytes()));
+    }
+
+    private static void putHash(ByteBuffer buffer, String hash) {
+        if (hash == null) {
+            buffer.put(new byte[HASH_SIZE]);
+        } else {
+            buffer.put(SHA256Util.hexString2Bytes(hash));
+        }
+    }
+
     @Override
     public String toString() {
         return "BlockHeader{" +
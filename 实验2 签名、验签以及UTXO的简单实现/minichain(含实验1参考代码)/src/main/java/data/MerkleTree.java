@@ -0,0 +1,116 @@
+package data;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 二进制Merkle树
+ *
+ * 叶子为交易的32字节SHA256哈希值，父节点为 SHA256(左子节点 || 右子节点)，直接拼接原始字节而不是十六进制字符串；
+ * 某一层节点数为奇数时，最后一个节点与自身配对（与比特币相同）
+ *
+ * 每个线程复用自己的MessageDigest对象；某一层的节点数较多时，该层的哈希计算会拆分到ForkJoinPool的多个线程上并行完成
+ * （本模块按Java 7编译，没有ForkJoinPool.commonPool，使用类内共享的线程池）
+ *
+ */
+public class MerkleTree {
+
+    /**
+     * 某一层的父节点数不少于该值时并行计算，每个子任务至少计算这么多个父节点
+     */
+    private static final int PARALLEL_THRESHOLD = 1024;
+
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+
+    private static final ThreadLocal<MessageDigest> SHA256_DIGEST = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    private final byte[] root;
+
+    /**
+     * 根据叶子节点构建Merkle树
+     *
+     * @param leaves 叶子节点（交易哈希），每个为32字节；没有叶子时根为null
+     */
+    public MerkleTree(byte[][] leaves) {
+        byte[][] level = leaves;
+        // 逐层向上计算，直至只剩根节点
+        while (level.length > 1) {
+            level = nextLevel(level);
+        }
+        root = level.length == 0 ? null : level[0];
+    }
+
+    public byte[] getRoot() {
+        return root;
+    }
+
+    private static byte[][] nextLevel(byte[][] level) {
+        byte[][] parents = new byte[(level.length + 1) / 2][];
+        if (parents.length < PARALLEL_THRESHOLD) {
+            hashRange(level, parents, 0, parents.length);
+        } else {
+            POOL.invoke(new LevelTask(level, parents, 0, parents.length));
+        }
+        return parents;
+    }
+
+    /**
+     * 计算 parents[from, to) 这些父节点
+     */
+    private static void hashRange(byte[][] level, byte[][] parents, int from, int to) {
+        MessageDigest digest = SHA256_DIGEST.get();
+        for (int i = from; i < to; ++i) {
+            byte[] left = level[2 * i];
+            // 如果出现奇数个节点，即最后一个节点没有右结点与其构成一对，就将当前节点复制一份作为右节点
+            byte[] right = 2 * i + 1 < level.length ? level[2 * i + 1] : left;
+            parents[i] = hashPair(digest, left, right);
+        }
+    }
+
+    private static byte[] hashPair(MessageDigest digest, byte[] left, byte[] right) {
+        digest.update(left);
+        digest.update(right);
+        return digest.digest();
+    }
+
+    /**
+     * 将一层的哈希计算二分拆解为多个子任务
+     */
+    private static class LevelTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final byte[][] level;
+        private final byte[][] parents;
+        private final int from;
+        private final int to;
+
+        LevelTask(byte[][] level, byte[][] parents, int from, int to) {
+            this.level = level;
+            this.parents = parents;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                hashRange(level, parents, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new LevelTask(level, parents, from, middle), new LevelTask(level, parents, middle, to));
+        }
+    }
+}
@@ -18,6 +18,24 @@ public class SHA256Util {
         return stringBuilder.toString();
     }
 
+    /**
+     * 十六进制字符串转为相应的比特数据，null 视为空数组
+     * @param hexString
+     * @return
+     */
+    public static byte[] hexString2Bytes(String hexString) {
+        if (hexString == null) {
+            return new byte[0];
+        }
+        byte[] data = new byte[hexString.length() / 2];
+        for (int i = 0; i < data.length; ++i) {
+            int high = Character.digit(hexString.charAt(2 * i), 16);
+            int low = Character.digit(hexString.charAt(2 * i + 1), 16);
+            data[i] = (byte) ((high << 4) | low);
+        }
+        return data;
+    }
+
     /**
      * 使用SHA256算法进行哈希值计算
      *
@@ -36,4 +54,21 @@ public class SHA256Util {
         return bytes2HexString(sha256Digest.digest());
     }
 
+    /**
+     * 字节版本哈希函数
+     * @param data
+     * @return
+     */
+    public static byte[] sha256Digest(byte[] data) {
+        MessageDigest sha256Digest = null;
+        try {
+            sha256Digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        sha256Digest.update(data);
+        return sha256Digest.digest();
+    }
+
 }
@@ -24,7 +24,7 @@ public class Test {
             transactions[i] = new Transaction("com.ecnu.dase.minichain" + i, 0);
         }
         BlockBody blockBody = minerNode.getBlockBody(transactions);
-        Assert.assertTrue("ac81624dc5efd6e92dee9da722b00ce5bf4c06eb69b5f197807c96fabc2f947a".equals(SHA256Util.sha256Digest(blockBody.toString())));
+        Assert.assertTrue("cc27c4f081f3bc08b67f6aaa42b31f334636b4864b4975e802bc7f6e26a0ddcb".equals(SHA256Util.sha256Digest(blockBody.toString())));
     }
 
 }
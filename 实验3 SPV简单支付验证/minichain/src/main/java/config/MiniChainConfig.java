@@ -2,13 +2,41 @@ package config;
 
 /**
  * 该类为配置类，主要有两个字段：
- *    DIFFICULTY: 挖矿的难度值，即规定了新的区块的哈希值至少以几个0开头才满足难度条件
+ *    INIT_BITS: 紧凑格式（bits）的挖矿难度目标，区块的哈希值不大于该目标才满足难度条件，
+ *               默认值0x1f0fffff对应的目标值以3个十六进制0开头，创世区块及链上区块不足以调整难度时使用该值
+ *
+ *    MAX_TARGET_BITS: 难度调整所允许的最大目标值（即最低难度）
+ *
+ *    TARGET_BLOCK_INTERVAL: 期望的出块间隔（毫秒），每个新区块的难度目标根据最近的出块间隔向该值调整
+ *
+ *    RETARGET_WINDOW: 难度调整时参考的最近区块间隔个数（滑动窗口大小）
  *
  *    MAX_TRANSACTION_COUNT: 交易池大小；TransactionProducer需要随机生成交易，放入交易池中，直至达到该大小
+ *
+ *    MINER_THREAD_NUM: 矿工并行搜索nonce所使用的线程数，默认为CPU核数
+ *
+ *    VERIFIER_THREAD_NUM: 矿工并行验签所使用的线程数，默认为CPU核数
+ *
+ *    SIGNATURE_CACHE_SIZE: 验签结果缓存最多保存的签名个数，见SignatureCache
+ *
+ *    UTXO_STORE_DIR: 保存utxo集合的内存映射文件所在的目录，见UtxoStore；为null时utxo集合保存在Java堆中（UtxoSet）。
+ *                    区块本身不持久化，每次启动都会清空该目录，默认为null，需要时再开启
+ *
+ *    UTXO_STORE_CAPACITY: utxo文件的初始容量（utxo个数），超过时自动按两倍扩容
+ *
+ *    UTXO_CACHE_SIZE: utxo文件之上堆内缓存的内存预算（字节），包括刷新时文件的堆内脏页，超过时把修改写入文件并清空缓存，见UtxoCache
+ *
+ *    UTXO_CACHE_FLUSH_INTERVAL: 每应用多少个区块把缓存中的修改写入utxo文件
  */
 public class MiniChainConfig {
 
-    public static final int DIFFICULTY = 3;
+    public static final int INIT_BITS = 0x1f0fffff;
+
+    public static final int MAX_TARGET_BITS = 0x2000ffff;
+
+    public static final long TARGET_BLOCK_INTERVAL = 1000;
+
+    public static final int RETARGET_WINDOW = 10;
 
     public static final int MAX_TRANSACTION_COUNT = 11;
 
@@ -16,4 +44,18 @@ public class MiniChainConfig {
 
     public static final int INIT_AMOUNT = 10000;
 
+    public static final int MINER_THREAD_NUM = Runtime.getRuntime().availableProcessors();
+
+    public static final int VERIFIER_THREAD_NUM = Runtime.getRuntime().availableProcessors();
+
+    public static final int SIGNATURE_CACHE_SIZE = 1 << 16;
+
+    public static final String UTXO_STORE_DIR = null;
+
+    public static final int UTXO_STORE_CAPACITY = 1 << 16;
+
+    public static final long UTXO_CACHE_SIZE = 64L << 20;
+
+    public static final int UTXO_CACHE_FLUSH_INTERVAL = 100;
+
 }
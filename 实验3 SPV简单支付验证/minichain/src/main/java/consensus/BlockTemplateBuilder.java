@@ -0,0 +1,122 @@
+package consensus;
+
+import data.BlockBody;
+import data.MerkleTree;
+import data.Transaction;
+import data.TransactionPool;
+import network.Network;
+import utils.SecurityUtil;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 区块模板构造线程
+ *
+ * 在矿工挖当前区块的同时，该线程从交易池中取出下一批交易，完成验签并取得交易池中增量计算的Merkle树，
+ * 得到下一个区块的区块体（模板）放入队列；矿工挖出当前区块后可以立即取出模板开始挖下一个区块，
+ * 验签和Merkle树的计算不再占用两个区块之间的时间
+ *
+ * 验签失败的交易会被剔除并释放其输入，剩余的交易重新计算Merkle树后组成区块，矿工不再因个别错误交易而退出；
+ * 验签被中断时这批交易没有验证完，丢弃本次的模板并释放剩余交易的输入
+ *
+ * 队列容量为1，即最多提前准备一个模板，准备好之后该线程会阻塞，直到矿工取走模板
+ *
+ */
+public class BlockTemplateBuilder extends Thread {
+
+    private final MinerPeer minerPeer;
+    private final Network network;
+    private final BlockingQueue<BlockBody> templates = new ArrayBlockingQueue<>(1);
+
+    public BlockTemplateBuilder(MinerPeer minerPeer, Network network) {
+        this.minerPeer = minerPeer;
+        this.network = network;
+        setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            Transaction[] transactions;
+            MerkleTree merkleTree;
+            // 只在取交易时锁住交易池，取完立即唤醒交易生产者继续生产
+            synchronized (network.getTransactionPool()) {
+                TransactionPool transactionPool = network.getTransactionPool();
+                while (!transactionPool.isFull()) {
+                    try {
+                        transactionPool.wait();
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+                // 从交易池中获取一批次的交易，Merkle树在交易入池时已增量计算，这里只需补齐最右侧的节点
+                merkleTree = transactionPool.getMerkleTree();
+                transactions = transactionPool.getAll();
+                transactionPool.notify();
+            }
+
+            // 并行验签，验签失败的交易从本批次中剔除，其余交易组成区块
+            Transaction[] valid = transactions;
+            try {
+                int failed = minerPeer.check(valid);
+                while (failed >= 0) {
+                    evict(valid[failed]);
+                    valid = remove(valid, failed);
+                    // 失败下标之前的交易已验证通过，只需继续检查之后的交易
+                    failed = minerPeer.check(valid, failed);
+                }
+            } catch (InterruptedException e) {
+                // 已剔除的交易已释放过输入，这里只释放剩余的交易
+                e.printStackTrace();
+                network.getTransactionPool().release(valid);
+                continue;
+            }
+            if (valid != transactions) {
+                transactions = valid;
+                merkleTree = buildMerkleTree(transactions);
+            }
+
+            BlockBody blockBody = new BlockBody(merkleTree, transactions);
+
+            try {
+                templates.put(blockBody);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 剔除验签失败的交易，并释放其输入，使这些utxo可以被其他交易使用
+     */
+    private void evict(Transaction transaction) {
+        System.out.println("evict transaction " + SecurityUtil.bytes2HexString(transaction.getTxId()) +
+                ": invalid signature");
+        network.getTransactionPool().release(new Transaction[]{transaction});
+    }
+
+    private static Transaction[] remove(Transaction[] transactions, int index) {
+        Transaction[] result = new Transaction[transactions.length - 1];
+        System.arraycopy(transactions, 0, result, 0, index);
+        System.arraycopy(transactions, index + 1, result, index, result.length - index);
+        return result;
+    }
+
+    private static MerkleTree buildMerkleTree(Transaction[] transactions) {
+        byte[][] leaves = new byte[transactions.length][];
+        for (int i = 0; i < transactions.length; ++i) {
+            leaves[i] = transactions[i].getTxId();
+        }
+        return new MerkleTree(leaves);
+    }
+
+    /**
+     * 取出下一个区块模板，没有准备好的模板时阻塞等待
+     *
+     * @return 已完成验签和Merkle根哈希计算的区块体
+     */
+    public BlockBody takeTemplate() throws InterruptedException {
+        return templates.take();
+    }
+}
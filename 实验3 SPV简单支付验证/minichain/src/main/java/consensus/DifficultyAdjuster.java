@@ -0,0 +1,61 @@
+package consensus;
+
+import config.MiniChainConfig;
+import data.BlockHeader;
+import utils.MinerUtil;
+
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * 难度调整
+ *
+ * 每个新区块的难度目标由其之前最近的若干个区块（滑动窗口，大小见MiniChainConfig.RETARGET_WINDOW）决定：
+ * 以窗口内区块的平均目标值为基准，按实际出块耗时与期望耗时（间隔数 * TARGET_BLOCK_INTERVAL）的比例进行缩放，
+ * 出块过快则目标值变小（难度变大），过慢则目标值变大（难度变小）
+ *
+ * 为避免时间戳异常导致难度剧烈波动，单次调整的比例限制在 [1/4, 4] 之间，且目标值不超过MAX_TARGET_BITS、不小于1
+ *
+ */
+public class DifficultyAdjuster {
+
+    private static final int MAX_ADJUST_FACTOR = 4;
+
+    /**
+     * 计算下一个区块应使用的难度目标
+     *
+     * @param window 按高度从低到高排列的最近区块头，最后一个为当前最新区块，
+     *               通常包含RETARGET_WINDOW + 1个区块头，链较短时可以更少
+     * @return 紧凑格式的难度目标
+     */
+    public static int getNextBits(List<BlockHeader> window) {
+        int intervals = window.size() - 1;
+        if (intervals < 1) {
+            return MiniChainConfig.INIT_BITS;
+        }
+
+        // 窗口内（除第一个区块外）各区块目标值的平均值作为基准
+        BigInteger targetSum = BigInteger.ZERO;
+        for (int i = 1; i < window.size(); ++i) {
+            targetSum = targetSum.add(MinerUtil.bitsToTarget(window.get(i).getBits()));
+        }
+        BigInteger averageTarget = targetSum.divide(BigInteger.valueOf(intervals));
+
+        long expectedTimespan = intervals * MiniChainConfig.TARGET_BLOCK_INTERVAL;
+        long actualTimespan = window.get(intervals).getTimestamp() - window.get(0).getTimestamp();
+        actualTimespan = Math.max(actualTimespan, expectedTimespan / MAX_ADJUST_FACTOR);
+        actualTimespan = Math.min(actualTimespan, expectedTimespan * MAX_ADJUST_FACTOR);
+
+        BigInteger nextTarget = averageTarget.multiply(BigInteger.valueOf(actualTimespan))
+                .divide(BigInteger.valueOf(expectedTimespan));
+        BigInteger maxTarget = MinerUtil.bitsToTarget(MiniChainConfig.MAX_TARGET_BITS);
+        if (nextTarget.compareTo(maxTarget) > 0) {
+            nextTarget = maxTarget;
+        }
+        // 目标值为0时任何哈希都不满足难度条件，链将无法继续出块
+        if (nextTarget.compareTo(BigInteger.ONE) < 0) {
+            nextTarget = BigInteger.ONE;
+        }
+        return MinerUtil.targetToBits(nextTarget);
+    }
+}
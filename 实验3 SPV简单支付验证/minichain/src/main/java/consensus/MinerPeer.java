@@ -3,12 +3,8 @@ package consensus;
 import config.MiniChainConfig;
 import data.*;
 import network.Network;
-import utils.MinerUtil;
-import utils.SecurityUtil;
-
-import java.security.PublicKey;
-import java.util.ArrayList;
-import java.util.List;
+import spv.SpvPeer;
+import utils.SignatureCache;
 import java.util.Random;
 
 /**
@@ -17,6 +13,10 @@ import java.util.Random;
  * 该线程的主要工作就是不断的进行交易打包、Merkle树根哈希值计算、构造区块，
  * 然后尝试使用不同的随机字段（nonce）进行区块的哈希值计算以生成新的区块添加到区块中
  *
+ * nonce的搜索由MiningEngine在多个线程上并行完成，线程数见MiniChainConfig.MINER_THREAD_NUM，
+ * 下一个区块的交易打包、验签和Merkle根哈希计算由BlockTemplateBuilder在挖矿的同时提前完成，
+ * 验签由SignatureVerifier在多个线程上并行完成，线程数见MiniChainConfig.VERIFIER_THREAD_NUM
+ *
  * 这里需要你实现的功能函数为：getBlockBody、getMerkleRootHash、mine和getBlock，具体的需求见上述方法前的注释，
  * 除此之外，该类中的其他方法、变量，以及其他类中的方法和变量，均无需修改，否则可能影响系统的正确运行
  *
@@ -27,10 +27,16 @@ public class MinerPeer extends Thread {
 
     private final BlockChain blockChain;
     private final Network network;
+    private final MiningEngine miningEngine;
+    private final SignatureVerifier signatureVerifier;
+    private final BlockTemplateBuilder blockTemplateBuilder;
 
     public MinerPeer(BlockChain blockChain, Network network) {
         this.blockChain = blockChain;
         this.network = network;
+        this.miningEngine = new MiningEngine(MiniChainConfig.MINER_THREAD_NUM);
+        this.signatureVerifier = new SignatureVerifier(MiniChainConfig.VERIFIER_THREAD_NUM);
+        this.blockTemplateBuilder = new BlockTemplateBuilder(this, network);
     }
 
     /**
@@ -38,60 +44,77 @@ public class MinerPeer extends Thread {
      */
     @Override
     public void run() {
+        // 区块模板（取交易、验签、计算Merkle根）由单独的线程提前准备，与挖矿并行进行
+        blockTemplateBuilder.start();
         while (true) {
-            // 锁住网络中的交易池
-            synchronized (network.getTransactionPool()) {
-                TransactionPool transactionPool = network.getTransactionPool();
-
-                while (!transactionPool.isFull()) {
-                    try {
-                        transactionPool.wait();
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
-
-                // 从交易池中获取一批次的交易
-                Transaction[] transactions = transactionPool.getAll();
+            BlockBody blockBody;
+            try {
+                blockBody = blockTemplateBuilder.takeTemplate();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                continue;
+            }
 
-                // 对该交易的签名进行验签，验签失败则退出（比较粗略）
-                if (!check(transactions)) {
-                    System.out.println("transactions error!");
-                    System.exit(-1);
-                }
+            // 以blockBody为参数，调用mine方法
+            Block block;
+            try {
+                block = mine(blockBody);
+            } catch (InterruptedException e) {
+                // 挖矿被中断，矿工线程结束
+                return;
+            } finally {
+                // 区块已上链（或被拒绝、挖矿被中断），其中交易的输入不再需要由交易池防止双花
+                network.getTransactionPool().release(blockBody.getTransactions());
+            }
+            if (block == null) {
+                // 区块被区块链拒绝，不在链上，轻节点没有需要验证的新区块
+                continue;
+            }
 
-                // 以交易为参数，调用getBlockBody方法
-                BlockBody blockBody = getBlockBody(transactions);
+            // 各账户的轻节点同步区块头，并验证新区块中向自己转账的交易
+            spvVerify();
 
-                // 以blockBody为参数，调用mine方法
-                Block block = mine(blockBody);
+            // 输出所有账户的余额总数
+            System.out.println("the sum of all account amount: " + blockChain.getAllAccountAmount() +
+                    ", total supply: " + blockChain.getTotalSupply());
+            System.out.println("signature cache: " + SignatureCache.getShared());
+        }
+    }
 
-                // 输出所有账户的余额总数
-                System.out.println("the sum of all account amount: " + blockChain.getAllAccountAmount());
 
-                transactionPool.notify();
+    /**
+     * 通知网络中的所有轻节点进行简单支付验证，只输出验证失败的情况
+     */
+    private void spvVerify() {
+        int failed = 0;
+        for (SpvPeer spvPeer : network.getSpvPeers()) {
+            if (!spvPeer.simplifiedPaymentVerify()) {
+                ++failed;
             }
         }
+        if (failed > 0) {
+            System.out.println("simplified payment verification failed on " + failed + " spv peers!");
+        }
     }
 
-
     /**
-     * 矿工检查每笔交易的签名是否正确，是否有被篡改
+     * 矿工检查每笔交易的签名是否正确，是否有被篡改，验签由SignatureVerifier在多个线程上并行完成
      * @param transactions
-     * @return
+     * @return 第一笔验签失败的交易的下标，全部通过时返回-1
+     * @throws InterruptedException 验签被中断，这批交易没有验证完
      */
-    private boolean check(Transaction[] transactions) {
-        for (int i = 0; i < transactions.length; ++i) {
-            Transaction transaction = transactions[i];
-            // 签名的数据是该交易的 inUtxos 和 outUtxos
-            byte[] data = SecurityUtil.utxos2Bytes(transaction.getInUtxos(), transaction.getOutUtxos());
-            byte[] sign = transaction.getSendSign();
-            PublicKey publicKey = transaction.getSendPublicKey();
-            if (!SecurityUtil.verify(data, sign, publicKey)) {
-                return false;
-            }
-        }
-        return true;
+    int check(Transaction[] transactions) throws InterruptedException {
+        return check(transactions, 0);
+    }
+
+    /**
+     * @param transactions 一批次的交易
+     * @param from 从该下标开始检查，之前的交易已检查通过
+     * @return 第一笔验签失败的交易的下标，全部通过时返回-1
+     * @throws InterruptedException 验签被中断，这批交易没有验证完
+     */
+    int check(Transaction[] transactions, int from) throws InterruptedException {
+        return signatureVerifier.verify(transactions, from);
     }
 
     /**
@@ -105,26 +128,13 @@ public class MinerPeer extends Thread {
      */
     public BlockBody getBlockBody(Transaction[] transactions) {
         assert transactions != null && transactions.length == MiniChainConfig.MAX_TRANSACTION_COUNT;
-        //
-        List<String> list = new ArrayList<>();
-        for (Transaction transaction: transactions) {
-            String txHash = SecurityUtil.sha256Digest(transaction.toString());
-            list.add(txHash);
-        }
-        // list大小为1时停止迭代
-        while (list.size() != 1) {
-            List<String> newList = new ArrayList<>();
-            for (int i = 0; i < list.size(); i += 2) {
-                String leftHash = list.get(i);
-                // 如果出现奇数个节点，即最后一个节点没有右结点与其构成一对，就将当前节点复制一份作为右节点
-                String rightHash = (i + 1 < list.size() ? list.get(i + 1) : leftHash);
-                String parentHash = SecurityUtil.sha256Digest(leftHash + rightHash);
-                newList.add(parentHash);
-            }
-            // 切换list，进行下一轮的计算
-            list = newList;
+        // 叶子节点为交易的32字节哈希值，Merkle树直接在原始字节上计算
+        byte[][] leaves = new byte[transactions.length][];
+        for (int i = 0; i < transactions.length; ++i) {
+            leaves[i] = transactions[i].getTxId();
         }
-        BlockBody blockBody = new BlockBody(list.get(0), transactions);
+        // 区块体保留整棵Merkle树，之后为轻节点生成Merkle证明时无需重新计算
+        BlockBody blockBody = new BlockBody(new MerkleTree(leaves), transactions);
         return blockBody;
     }
 
@@ -132,26 +142,32 @@ public class MinerPeer extends Thread {
      * 该方法即在循环中完成"挖矿"操作，其实就是通过不断的变换区块中的nonce字段，直至区块的哈希值满足难度条件，
      * 即可将该区块加入区块链中
      *
+     * 区块哈希只对区块头的定长二进制序列化计算，每次尝试只需改写其中的nonce字段，与区块中交易的多少无关
+     *
      * @param blockBody 区块体
+     * @return 挖出并已加入区块链的区块，区块被区块链拒绝时返回null
+     * @throws InterruptedException 挖矿线程被中断，不提交区块
      */
-    private Block mine(BlockBody blockBody) {
+    private Block mine(BlockBody blockBody) throws InterruptedException {
         Block block = getBlock(blockBody);
-        while (true) {
-            String blockHash = SecurityUtil.sha256Digest(block.toString());
-            if (blockHash.startsWith(MinerUtil.hashPrefixTarget())) {
-                System.out.println("Mined a new Block! Detail of the new Block : ");
-                System.out.println(block.toString());
-//                System.out.println(JSONObject.toJSONString(JSON.toJSON(block), true));
-                System.out.println("And the hash of this Block is : " + SecurityUtil.sha256Digest(block.toString()) +
-                                    ", you will see the hash value in next Block's preBlockHash field.");
-                System.out.println();
-                blockChain.addNewBlock(block);
-                break;
-            } else {
-                //todo
-                long nonce = Math.abs(new Random().nextLong());
-                block.getBlockHeader().setNonce(nonce);
-            }
+        // 由挖矿引擎在多个线程上并行搜索满足难度条件的nonce
+        if (!miningEngine.search(block.getBlockHeader())) {
+            System.out.println("mining interrupted, the block is discarded");
+            throw new InterruptedException();
+        }
+        String blockHash = block.getBlockHeader().getHash();
+
+        System.out.println("Mined a new Block! Detail of the new Block : ");
+        System.out.println(block.toString());
+//        System.out.println(JSONObject.toJSONString(JSON.toJSON(block), true));
+        System.out.println("And the hash of this Block is : " + blockHash +
+                            ", you will see the hash value in next Block's preBlockHash field.");
+        System.out.printf("Hash rate: %.0f H/s (%d hashes on %d threads)%n", miningEngine.getLastHashRate(),
+                            miningEngine.getLastHashCount(), miningEngine.getThreadNum());
+        System.out.println();
+        if (!blockChain.addNewBlock(block)) {
+            System.out.println("the mined block is rejected by the blockChain!");
+            return null;
         }
         return block;
     }
@@ -168,10 +184,10 @@ public class MinerPeer extends Thread {
      */
     public Block getBlock(BlockBody blockBody) {
         Block preBlock = blockChain.getLatestBlock();
-        String preBlockHash = SecurityUtil.sha256Digest(preBlock.toString());
+        String preBlockHash = preBlock.getBlockHeader().getHash();
 
         BlockHeader blockHeader = new BlockHeader(preBlockHash, blockBody.getMerkleRootHash(),
-                                                    Math.abs(new Random().nextLong()));
+                                                    blockChain.getNextBits(), Math.abs(new Random().nextLong()));
         Block block = new Block(blockHeader, blockBody);
         return block;
     }
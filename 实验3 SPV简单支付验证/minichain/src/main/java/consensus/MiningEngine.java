@@ -0,0 +1,184 @@
+package consensus;
+
+import data.BlockHeader;
+import utils.MinerUtil;
+import utils.NonceHasher;
+import utils.NonceHasherFactory;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 并行挖矿引擎
+ *
+ * 将64位的nonce空间划分为互不相交的若干区间，分配给固定大小线程池中的各个工作线程，
+ * 每个工作线程在自己的区间内顺序尝试nonce；第一个找到满足难度条件的nonce的线程通知其他线程停止，
+ * 搜索结束后引擎会统计所有线程的尝试次数，给出这一轮挖矿的总哈希速率
+ *
+ * 哈希计算由NonceHasherFactory选出的最快的NonceHasher完成（标量或Vector API多路并行），
+ * 工作线程的内循环不分配任何对象：哈希计算复用引擎内的缓冲区，难度比较直接使用哈希值的原始字；
+ * 某个工作线程的区间搜索完仍未找到时，它会滚动自己那份区块头中的时间戳，然后从区间起点重新搜索
+ *
+ */
+public class MiningEngine {
+
+    /**
+     * 工作线程每批交给哈希引擎尝试的nonce个数，每批之间检查一次其他线程是否已找到结果
+     */
+    private static final int BATCH_SIZE = 1024;
+
+    private final int threadNum;
+    private final long rangeSize;
+    private final ExecutorService executor;
+
+    private volatile long lastHashCount;
+    private volatile double lastHashRate;
+
+    public MiningEngine(int threadNum) {
+        // 每个工作线程负责的区间长度，按无符号数均分整个64位的nonce空间
+        this(threadNum, Long.divideUnsigned(-1L, threadNum));
+    }
+
+    /**
+     * @param threadNum 工作线程数
+     * @param rangeSize 每个工作线程负责的nonce区间长度，threadNum * rangeSize 不能超过2^64
+     */
+    public MiningEngine(int threadNum, long rangeSize) {
+        this.threadNum = threadNum;
+        this.rangeSize = rangeSize;
+        this.executor = Executors.newFixedThreadPool(threadNum, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "mining-worker-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * 并行搜索满足难度条件的nonce，该方法会阻塞直至某个工作线程找到结果，
+     * 返回true时区块头的nonce（以及滚动过的timestamp）已被设置为找到的结果
+     *
+     * @param blockHeader 待挖掘的区块头
+     * @return 是否找到结果；调用线程被中断且尚无结果时通知工作线程停止，恢复中断状态并返回false，区块头保持不变
+     */
+    public boolean search(BlockHeader blockHeader) {
+        final byte[] headerBytes = blockHeader.toBytes();
+        final long timestamp = blockHeader.getTimestamp();
+        final int[] targetWords = MinerUtil.bitsToTargetWords(blockHeader.getBits());
+        final AtomicBoolean found = new AtomicBoolean(false);
+        final AtomicLong resultNonce = new AtomicLong();
+        final AtomicLong resultTimestamp = new AtomicLong();
+        final AtomicLong hashCount = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(threadNum);
+        long startTime = System.nanoTime();
+
+        for (int i = 0; i < threadNum; ++i) {
+            final long rangeStart = rangeSize * i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long count = 0;
+                    try {
+                        count = searchRange(headerBytes.clone(), timestamp, targetWords, rangeStart,
+                                found, resultNonce, resultTimestamp);
+                    } finally {
+                        hashCount.addAndGet(count);
+                        done.countDown();
+                    }
+                }
+            });
+        }
+
+        boolean interrupted = false;
+        boolean stopped = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                // 抢先置位found使工作线程停止；置位失败说明已有线程找到结果，等它写入结果后照常返回
+                interrupted = true;
+                stopped = found.compareAndSet(false, true);
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        long elapsed = Math.max(System.nanoTime() - startTime, 1);
+        lastHashCount = hashCount.get();
+        lastHashRate = lastHashCount * 1e9 / elapsed;
+        if (stopped) {
+            return false;
+        }
+        blockHeader.setTimestamp(resultTimestamp.get());
+        blockHeader.setNonce(resultNonce.get());
+        return true;
+    }
+
+    /**
+     * 工作线程在 [rangeStart, rangeStart + rangeSize) 内顺序尝试nonce，区间耗尽后滚动时间戳继续
+     *
+     * @param headerBytes 本线程独占的区块头二进制数据
+     * @return 本线程实际尝试的次数
+     */
+    private long searchRange(byte[] headerBytes, long timestamp, int[] targetWords, long rangeStart,
+                             AtomicBoolean found, AtomicLong resultNonce, AtomicLong resultTimestamp) {
+        // 哈希引擎在reset时计算区块头前缀的中间状态，每批尝试只处理包含nonce的末尾分组
+        NonceHasher hasher = NonceHasherFactory.create();
+        hasher.reset(headerBytes, BlockHeader.NONCE_OFFSET);
+        long count = 0;
+        long offset = 0;
+        while (!found.get()) {
+            if (offset == rangeSize) {
+                // 区间已搜索完：滚动时间戳得到新的区块头，重新计算中间状态后从区间起点继续
+                timestamp = Math.max(System.currentTimeMillis(), timestamp + 1);
+                BlockHeader.putTimestamp(headerBytes, timestamp);
+                hasher.reset(headerBytes, BlockHeader.NONCE_OFFSET);
+                offset = 0;
+            }
+            // 区间长度可能超过Long.MAX_VALUE，按无符号数比较剩余个数
+            long remaining = rangeSize - offset;
+            int batch = Long.compareUnsigned(remaining, BATCH_SIZE) < 0 ? (int) remaining : BATCH_SIZE;
+            int index = hasher.scan(rangeStart + offset, batch, targetWords);
+            if (index >= 0) {
+                count += index + 1;
+                if (found.compareAndSet(false, true)) {
+                    resultTimestamp.set(timestamp);
+                    resultNonce.set(rangeStart + offset + index);
+                }
+                break;
+            }
+            offset += batch;
+            count += batch;
+        }
+        return count;
+    }
+
+    /**
+     * @return 最近一轮挖矿所有工作线程尝试的总次数
+     */
+    public long getLastHashCount() {
+        return lastHashCount;
+    }
+
+    /**
+     * @return 最近一轮挖矿的总哈希速率（次/秒）
+     */
+    public double getLastHashRate() {
+        return lastHashRate;
+    }
+
+    public int getThreadNum() {
+        return threadNum;
+    }
+}
@@ -0,0 +1,106 @@
+package consensus;
+
+import data.Transaction;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 并行批量验签服务
+ *
+ * 一批交易的验签分摊到固定大小线程池中的各个工作线程：工作线程按下标从小到大依次领取下一笔交易，
+ * 某笔交易验签失败后，其他线程不再领取下标更大的交易，已领取的下标更小的交易仍会验完，
+ * 因此返回的总是这批交易中第一笔验签失败的交易的下标
+ *
+ * ECDSA验签是每个区块最主要的CPU开销，验签时间随线程数近似线性下降；
+ * 入池时已验证过的交易会命中共用的验签结果缓存（见Transaction.verifySignature），不再重复验签
+ *
+ */
+public class SignatureVerifier {
+
+    private final int threadNum;
+    private final ExecutorService executor;
+
+    public SignatureVerifier(int threadNum) {
+        this.threadNum = threadNum;
+        this.executor = Executors.newFixedThreadPool(threadNum, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "verify-worker-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * 并行验证 transactions[from, transactions.length) 的签名，该方法会阻塞直至验证结束
+     *
+     * @param transactions 一批次的交易
+     * @param from 起始下标，之前的交易视为已验证通过
+     * @return 第一笔验签失败的交易的下标，全部通过时返回-1
+     * @throws InterruptedException 等待时被中断，这批交易没有验证完，不能视为验签通过
+     */
+    public int verify(final Transaction[] transactions, int from) throws InterruptedException {
+        final int count = transactions.length - from;
+        if (count <= 0) {
+            return -1;
+        }
+        final AtomicInteger next = new AtomicInteger(from);
+        final AtomicInteger failed = new AtomicInteger(Integer.MAX_VALUE);
+        int workers = Math.min(threadNum, count);
+        final CountDownLatch done = new CountDownLatch(workers);
+
+        for (int i = 0; i < workers; ++i) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        verifyNext(transactions, next, failed);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            // 被中断时通知所有工作线程停止，结果不完整，交由调用者丢弃这批交易
+            next.set(transactions.length);
+            throw e;
+        }
+        int index = failed.get();
+        return index == Integer.MAX_VALUE ? -1 : index;
+    }
+
+    /**
+     * 工作线程不断领取下一笔交易并验签，直至所有交易已被领取，或已有下标更小的交易验签失败
+     */
+    private static void verifyNext(Transaction[] transactions, AtomicInteger next, AtomicInteger failed) {
+        while (true) {
+            int index = next.getAndIncrement();
+            if (index >= transactions.length || index > failed.get()) {
+                return;
+            }
+            if (!transactions[index].verifySignature()) {
+                // 记录最小的失败下标
+                int current;
+                while (index < (current = failed.get()) && !failed.compareAndSet(current, index)) {
+                    // 重试
+                }
+                return;
+            }
+        }
+    }
+
+    public int getThreadNum() {
+        return threadNum;
+    }
+}
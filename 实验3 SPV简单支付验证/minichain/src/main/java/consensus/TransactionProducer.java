@@ -2,6 +2,7 @@ package consensus;
 
 import data.*;
 import network.Network;
+import script.Script;
 import utils.SecurityUtil;
 
 import java.util.*;
@@ -21,8 +22,9 @@ public class TransactionProducer extends Thread {
     public void run() {
         while (true) {
             // 从网络中获取交易池
-            synchronized (network.getTransactionPool()) {
-                TransactionPool transactionPool = network.getTransactionPool();
+            TransactionPool transactionPool = network.getTransactionPool();
+            Transaction randomOne;
+            synchronized (transactionPool) {
                 while (transactionPool.isFull()) {
                     try {
                         transactionPool.wait();
@@ -30,8 +32,16 @@ public class TransactionProducer extends Thread {
                         e.printStackTrace();
                     }
                 }
-                Transaction randomOne = getOneTransaction();
-                transactionPool.put(randomOne);
+                randomOne = getOneTransaction();
+            }
+            // 验签不持有交易池的锁，矿工取走交易、释放输入时不必等待验签；只有本线程向交易池放入交易，其间交易池不会变满。
+            // 验签通过的结果进入验签结果缓存，矿工打包区块时不必再次验签
+            if (!randomOne.verifySignature()) {
+                continue;
+            }
+            synchronized (transactionPool) {
+                // 验签期间输入可能已被新上链的区块花费，put会重新确认
+                transactionPool.put(randomOne, network.getBlockChain());
                 if (transactionPool.isFull()) {
                     transactionPool.notify();
                 }
@@ -58,13 +68,14 @@ public class TransactionProducer extends Thread {
             String aWalletAddress = aAccount.getWalletAddress();
             String bWalletAddress = bAccount.getWalletAddress();
 
-            // 获取A可用的Utxo并计算余额
-            UTXO[] aTrueUtxos = network.getBlockChain().getTrueUtxos(aWalletAddress);
-            int aAmount = aAccount.getAmount(aTrueUtxos);
+            // 查询A的余额（由区块链的utxo集合维护，不需要对utxo求和）
+            int aAmount = (int) Math.min(Integer.MAX_VALUE, network.getBlockChain().getBalance(aWalletAddress));
             // 如果A账户的余额为0，则无法构建交易，重新随机生成
             if (aAmount == 0) {
                 continue;
             }
+            // 获取A可用的Utxo，余额与utxo分两次查询，其间可能有新区块上链，可解锁的utxo总额不足时下面会重新随机
+            UTXO[] aTrueUtxos = network.getBlockChain().getTrueUtxos(aWalletAddress);
 
             // 随机生成交易数额 [1, aAmount] 之间
             int txAmount = random.nextInt(aAmount) + 1;
@@ -74,13 +85,16 @@ public class TransactionProducer extends Thread {
 
             // A账户需先解锁才能使用自己的utxo，解锁需要私钥签名和公钥去执行解锁脚本，这里先生成需要解锁的签名
             // 签名的数据我们约定为公钥的二进制数据
-            byte[] aUnlockSign = SecurityUtil.signature(aAccount.getPublicKey().getEncoded(), aAccount.getPrivateKey());
+            byte[] aPublicKeyEncoded = aAccount.getPublicKey().getEncoded();
+            byte[] aUnlockSign = SecurityUtil.signature(aPublicKeyEncoded, aAccount.getPrivateKey());
+            // 解锁脚本 <Sig> <PubK> 只编译一次，用于A的所有utxo
+            Script aUnlockScript = Script.unlocking(aUnlockSign, aPublicKeyEncoded);
 
             // 选择输入总额>=交易数额的 utxo
             int inAmount = 0;
             for (UTXO utxo : aTrueUtxos) {
                 // 解锁成功才能使用该utxo
-                if (utxo.unlockScript(aUnlockSign, aAccount.getPublicKey())) {
+                if (utxo.unlockScript(aUnlockScript, aPublicKeyEncoded)) {
                     inAmount += utxo.getAmount();
                     inUtxoList.add(utxo);
                     if (inAmount >= txAmount) {
@@ -105,10 +119,8 @@ public class TransactionProducer extends Thread {
             UTXO[] outUtxos = outUtxoList.toArray(new UTXO[0]);
 
             // A账户需对整个交易进行私钥签名，确保交易不会被篡改，因为交易会传输到网络中，而上述步骤可在本地离线环境中构造
-            // 获取要签名的数据，这个数据需要囊括交易信息
-            byte[] data = SecurityUtil.utxos2Bytes(inUtxos, outUtxos);
-            // A账户使用私钥签名
-            byte[] sign = SecurityUtil.signature(data, aAccount.getPrivateKey());
+            // 要签名的数据需要囊括交易信息，即输入和输出utxo的二进制编码（见SecurityUtil.utxos2Bytes），A账户使用私钥签名
+            byte[] sign = SecurityUtil.signUtxos(inUtxos, outUtxos, aAccount.getPrivateKey());
             // 交易时间戳
             long timestamp = System.currentTimeMillis();
             // 构造交易
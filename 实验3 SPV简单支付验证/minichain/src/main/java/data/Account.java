@@ -11,18 +11,34 @@ public class Account {
 
     private final PublicKey publicKey;
     private final PrivateKey privateKey;
+    /**
+     * 钱包地址由公钥决定，创建账户时计算一次
+     */
+    private final String walletAddress;
 
     public Account() {
-        KeyPair keyPair = SecurityUtil.secp256k1Generate();
+        this(SecurityUtil.secp256k1Generate());
+    }
+
+    /**
+     * 使用已有的密钥对创建账户
+     * @param keyPair 账户的公私钥
+     */
+    public Account(KeyPair keyPair) {
         this.privateKey = keyPair.getPrivate();
         this.publicKey = keyPair.getPublic();
+        this.walletAddress = computeWalletAddress();
+    }
+
+    public String getWalletAddress() {
+        return walletAddress;
     }
 
     /**
      * 根据账户的公钥计算钱包地址
      * @return
      */
-    public String getWalletAddress() {
+    private String computeWalletAddress() {
 
         // 公钥哈希：RIPEMD160(SHA256(PubK)
         byte[] publicKeyHash = SecurityUtil.ripemd160Digest(SecurityUtil.sha256Digest(publicKey.getEncoded()));
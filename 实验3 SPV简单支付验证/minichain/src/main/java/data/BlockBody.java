@@ -1,23 +1,44 @@
 package data;
 
+import spv.Proof;
+import utils.SecurityUtil;
+
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 对区块体的抽象，主要有两个字段：
  *    transactions: 从交易池中取得的一批次交易
  *
  *    merkleRootHash: 使用上述交易，计算得到的Merkle树根哈希值
+ *
+ * 区块体会保留交易的Merkle树，用于为轻节点生成Merkle证明；构造时没有传入Merkle树的（如创世区块），
+ * 在第一次需要时根据交易重新构建，同时建立交易哈希到下标的索引
  */
 public class BlockBody {
 
     private final Transaction[] transactions;
     private final String merkleRootHash;
 
+    private MerkleTree merkleTree;
+    private Map<String, Integer> txIndex;
+
     public BlockBody(String merkleRootHash, Transaction[] transactions) {
         this.merkleRootHash = merkleRootHash;
         this.transactions = transactions;
     }
 
+    /**
+     * @param merkleTree 根据transactions构建好的Merkle树
+     * @param transactions 一批次的交易
+     */
+    public BlockBody(MerkleTree merkleTree, Transaction[] transactions) {
+        this(merkleTree.getRoot() == null ? null : SecurityUtil.bytes2HexString(merkleTree.getRoot()), transactions);
+        this.merkleTree = merkleTree;
+    }
+
     public String getMerkleRootHash() {
         return merkleRootHash;
     }
@@ -26,6 +47,37 @@ public class BlockBody {
         return transactions;
     }
 
+    /**
+     * 查找交易在区块体中的Merkle路径
+     *
+     * @param txHash 交易哈希（十六进制）
+     * @return 交易的Merkle路径，见MerkleTree.getPath；交易不在该区块中时返回null
+     */
+    public synchronized List<Proof.Node> getMerklePath(String txHash) {
+        if (txIndex == null) {
+            buildIndex();
+        }
+        Integer index = txIndex.get(txHash);
+        if (index == null) {
+            return null;
+        }
+        return merkleTree.getPath(index);
+    }
+
+    private void buildIndex() {
+        if (merkleTree == null) {
+            byte[][] leaves = new byte[transactions.length][];
+            for (int i = 0; i < transactions.length; ++i) {
+                leaves[i] = transactions[i].getTxId();
+            }
+            merkleTree = new MerkleTree(leaves);
+        }
+        txIndex = new HashMap<>(transactions.length * 2);
+        for (int i = 0; i < transactions.length; ++i) {
+            txIndex.put(SecurityUtil.bytes2HexString(merkleTree.getLeaf(i)), i);
+        }
+    }
+
     @Override
     public String toString() {
         return "BlockBody{" +
@@ -1,81 +1,219 @@
 package data;
 
+import config.MiniChainConfig;
+import consensus.DifficultyAdjuster;
 import network.Network;
+import spv.BloomFilter;
+import spv.FilteredBlock;
+import spv.Proof;
+import utils.MinerUtil;
 import utils.SecurityUtil;
 
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Random;
-import java.util.Set;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.*;
 
 /**
  * 区块链的类抽象，创建该对象时会自动生成创世纪块，加入区块链中
+ *
+ * 矿工添加区块与交易生产者查询utxo在不同的线程中进行，访问区块列表的方法均需同步
+ *
+ * 区块按高度顺序保存（创世区块高度为0），另有区块哈希到高度的索引，按哈希或高度查找区块均为O(1)
+ *
+ * 区块上链时同时计算该区块的紧凑过滤器（BlockFilter）及过滤器头，与区块按相同的高度保存，供所有轻节点共用
+ *
+ * 区块上链时把区块中的交易应用到utxo集合（UtxoSet）上，查询某地址的utxo不需要遍历整条链；
+ * utxo集合同时维护各地址的余额及货币总量，查询余额不需要再对utxo求和
+ *
+ * 配置了MiniChainConfig.UTXO_STORE_DIR时utxo集合保存在内存映射文件中（UtxoStore），不占用Java堆，否则使用堆内的UtxoSet；
+ * 文件之上有一层有界的堆内缓存（UtxoCache），区块只修改缓存，每隔若干区块或缓存超过内存预算时批量写入文件；
+ * 区块本身不持久化，每次启动都生成新的创世区块，因此启动时清空原有的utxo文件
  */
 public class BlockChain {
 
-    private final LinkedList<Block> blocks;
+    private final ArrayList<Block> blocks;
+    private final Map<String, Integer> heightIndex;
+    private final ArrayList<BlockFilter> blockFilters;
+    private final ArrayList<byte[]> filterHeaders;
+    private final UtxoView utxoSet;
     private final Network network;
 
 
     public BlockChain(Network network) {
         this.network = network;
-        blocks = new LinkedList<>();
+        blocks = new ArrayList<>();
+        heightIndex = new HashMap<>();
+        blockFilters = new ArrayList<>();
+        filterHeaders = new ArrayList<>();
+        utxoSet = createUtxoView();
 
         // 创世区块交易为空
         BlockHeader genesisBlockHeader = new BlockHeader(null, null, Math.abs(new Random().nextLong()));
-        BlockBody genesisBlockBody = new BlockBody(null, new Transaction[]{});
+        BlockBody genesisBlockBody = new BlockBody((String) null, new Transaction[]{});
         Block genesisBlock = new Block(genesisBlockHeader, genesisBlockBody);
 
         System.out.println("Create the genesis Block! ");
-        System.out.println("And the hash of genesis Block is : " + SecurityUtil.sha256Digest(genesisBlock.toString()) +
+        System.out.println("And the hash of genesis Block is : " + genesisBlockHeader.getHash() +
                 ", you will see the hash value in next Block's preBlockHash field.");
         System.out.println();
-        blocks.add(genesisBlock);
+        append(genesisBlock);
+    }
+
+    private static UtxoView createUtxoView() {
+        if (MiniChainConfig.UTXO_STORE_DIR == null) {
+            return new UtxoSet();
+        }
+        try {
+            UtxoStore store = UtxoStore.create(Paths.get(MiniChainConfig.UTXO_STORE_DIR), MiniChainConfig.UTXO_STORE_CAPACITY);
+            return new UtxoCache(store, MiniChainConfig.UTXO_CACHE_SIZE, MiniChainConfig.UTXO_CACHE_FLUSH_INTERVAL);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     /**
-     * 遍历整个区块链获得某钱包地址相关的utxo，获得真正的utxo，即未被使用的utxo
+     * 获得某钱包地址真正的utxo，即未被使用的utxo，直接从区块上链时维护的utxo集合中查找，不再遍历整条链
      * @param walletAddress 钱包地址
      * @return
      */
-    public UTXO[] getTrueUtxos(String walletAddress) {
-        // 使用哈希表存储结果，保证每个utxo唯一
-        Set<UTXO> trueUtxoSet = new HashSet<>();
-        // 遍历每个区块
-        for (Block block : blocks) {
-            BlockBody blockBody = block.getBlockBody();
-            Transaction[] transactions = blockBody.getTransactions();
-            // 遍历区块中的所有交易
-            for (Transaction transaction : transactions) {
-                UTXO[] inUtxos = transaction.getInUtxos();
-                UTXO[] outUtxos = transaction.getOutUtxos();
-                // 交易中的inUtxo是已使用的utxo，故需要删除
-                for (UTXO utxo : inUtxos) {
-                    if (utxo.getWalletAddress().equals(walletAddress)) {
-                        trueUtxoSet.remove(utxo);
-                    }
+    public synchronized UTXO[] getTrueUtxos(String walletAddress) {
+        return utxoSet.getUtxos(walletAddress);
+    }
+
+    /**
+     * @param walletAddress 钱包地址
+     * @return 该地址的余额，即其所有未花费utxo的总额
+     */
+    public synchronized long getBalance(String walletAddress) {
+        return utxoSet.getBalance(walletAddress);
+    }
+
+    /**
+     * 一次查询多个地址的余额，结果来自同一时刻的链状态
+     *
+     * @param walletAddresses 钱包地址
+     * @return 各地址的余额，与参数按下标对应
+     */
+    public synchronized long[] getBalances(String[] walletAddresses) {
+        return utxoSet.getBalances(walletAddresses);
+    }
+
+    /**
+     * @return 链上所有未花费utxo的总额，交易不会凭空产生或销毁货币，该值只在发放新币时增加
+     */
+    public synchronized long getTotalSupply() {
+        return utxoSet.getTotalAmount();
+    }
+
+    /**
+     * 向区块链中添加新的满足难度条件的区块，添加前会校验：
+     *    1. 区块的preBlockHash是否为当前最新区块的哈希
+     *    2. 区块头中的难度目标是否与难度调整的结果一致
+     *    3. 区块哈希是否满足该难度目标
+     *    4. 区块中的交易能否按顺序应用到当前的utxo集合上（见BlockValidator）：输入存在且与链上的utxo一致、不重复花费
+     *    5. 每笔交易的输入总额不小于输出总额；没有输入的交易发放新币，只允许出现在初始分配的区块（高度1，见Network.theyHaveADayDream）中
+     * 校验不通过的区块不会修改utxo集合
+     *
+     * @param block 新的满足难度条件的区块
+     * @return 校验通过并成功添加则返回true
+     */
+    public synchronized boolean addNewBlock(Block block) {
+        BlockHeader blockHeader = block.getBlockHeader();
+        if (!getLatestBlock().getBlockHeader().getHash().equals(blockHeader.getPreBlockHash())) {
+            System.out.println("reject block: preBlockHash does not match the latest block");
+            return false;
+        }
+        int expectedBits = getNextBits();
+        if (blockHeader.getBits() != expectedBits) {
+            System.out.println("reject block: bits " + Integer.toHexString(blockHeader.getBits()) +
+                    ", expected " + Integer.toHexString(expectedBits));
+            return false;
+        }
+        if (!MinerUtil.hashMeetsTarget(SecurityUtil.sha256Digest(blockHeader.toBytes()), expectedBits)) {
+            System.out.println("reject block: hash does not meet the target");
+            return false;
+        }
+        String reason = checkTransactions(block.getBlockBody().getTransactions(), blocks.size() == 1);
+        if (reason != null) {
+            System.out.println("reject block: " + reason);
+            return false;
+        }
+        append(block);
+        return true;
+    }
+
+    /**
+     * 交易池在持有自身的锁时调用，确认交易的输入仍未被链上的区块花费
+     *
+     * @param transaction 待入池的交易
+     * @return 交易可以应用到当前的utxo集合上（输入存在且一致、输入总额不小于输出总额）时返回true
+     */
+    public synchronized boolean isSpendable(Transaction transaction) {
+        return checkTransactions(new Transaction[]{transaction}, false) == null;
+    }
+
+    /**
+     * @param transactions 按顺序应用的交易
+     * @param allowIssuance 是否允许没有输入的交易发放新币
+     * @return 交易不能按顺序应用到当前utxo集合上时返回原因，否则返回null
+     */
+    private String checkTransactions(Transaction[] transactions, boolean allowIssuance) {
+        String reason = BlockValidator.validate(utxoSet, transactions);
+        if (reason != null) {
+            return reason;
+        }
+        // 输入的数额已确认与链上的utxo一致，直接对输入求和
+        for (Transaction transaction : transactions) {
+            UTXO[] inUtxos = transaction.getInUtxos();
+            if (inUtxos.length == 0) {
+                if (!allowIssuance) {
+                    return "transaction without inputs";
                 }
-                // 交易中的outUtxo是新产生的utxo，可作为后续交易使用
-                for (UTXO utxo : outUtxos) {
-                    if (utxo.getWalletAddress().equals(walletAddress)) {
-                        trueUtxoSet.add(utxo);
-                    }
+                continue;
+            }
+            long inAmount = 0;
+            for (UTXO utxo : inUtxos) {
+                inAmount += utxo.getAmount();
+            }
+            long outAmount = 0;
+            for (UTXO utxo : transaction.getOutUtxos()) {
+                if (utxo.getAmount() < 0) {
+                    return "negative output amount " + utxo.getAmount();
                 }
+                outAmount += utxo.getAmount();
+            }
+            if (inAmount < outAmount) {
+                return "outputs " + outAmount + " exceed inputs " + inAmount;
             }
         }
-        // 转化为数组形式返回
-        UTXO[] trueUtxos = new UTXO[trueUtxoSet.size()];
-        trueUtxoSet.toArray(trueUtxos);
-        return trueUtxos;
+        return null;
+    }
+
+    private void append(Block block) {
+        String blockHash = block.getBlockHeader().getHash();
+        // 先写utxo集合，写入失败时区块不上链
+        utxoSet.apply(block.getBlockBody().getTransactions(), blocks.size());
+        BlockFilter blockFilter = BlockFilter.build(blockHash, block.getBlockBody().getTransactions());
+        byte[] prevFilterHeader = filterHeaders.isEmpty() ? new byte[32] : filterHeaders.get(filterHeaders.size() - 1);
+        heightIndex.put(blockHash, blocks.size());
+        blocks.add(block);
+        blockFilters.add(blockFilter);
+        filterHeaders.add(blockFilter.getFilterHeader(prevFilterHeader));
     }
 
     /**
-     * 向区块链中添加新的满足难度条件的区块
+     * 根据最近RETARGET_WINDOW个出块间隔计算下一个区块应使用的难度目标，见DifficultyAdjuster
      *
-     * @param block 新的满足难度条件的区块
+     * @return 紧凑格式的难度目标
      */
-    public void addNewBlock(Block block) {
-        blocks.offer(block);
+    public synchronized int getNextBits() {
+        int from = Math.max(0, blocks.size() - 1 - MiniChainConfig.RETARGET_WINDOW);
+        List<BlockHeader> window = new ArrayList<>(blocks.size() - from);
+        for (int i = from; i < blocks.size(); ++i) {
+            window.add(blocks.get(i).getBlockHeader());
+        }
+        return DifficultyAdjuster.getNextBits(window);
     }
 
     /**
@@ -83,22 +221,141 @@ public class BlockChain {
      *
      * @return 区块链的最后一个区块
      */
-    public Block getLatestBlock() {
-        return blocks.peekLast();
+    public synchronized Block getLatestBlock() {
+        return blocks.get(blocks.size() - 1);
     }
 
+    /**
+     * @param blockHash 区块哈希
+     * @return 区块的高度，区块不在链上时返回-1
+     */
+    public synchronized int getHeight(String blockHash) {
+        Integer height = heightIndex.get(blockHash);
+        return height == null ? -1 : height;
+    }
+
+    /**
+     * @param height 区块高度
+     * @return 该高度的区块，超出当前链高时返回null
+     */
+    public synchronized Block getBlock(int height) {
+        return height >= 0 && height < blocks.size() ? blocks.get(height) : null;
+    }
+
+    /**
+     * 轻节点同步区块头，只返回区块头而不返回区块体
+     *
+     * @param fromHeight 起始高度（包含）
+     * @return 从fromHeight到当前最新区块的所有区块头，按高度从低到高排列
+     */
+    public synchronized List<BlockHeader> getBlockHeaders(int fromHeight) {
+        List<BlockHeader> blockHeaders = new ArrayList<>(Math.max(0, blocks.size() - fromHeight));
+        for (int i = Math.max(0, fromHeight); i < blocks.size(); ++i) {
+            blockHeaders.add(blocks.get(i).getBlockHeader());
+        }
+        return blockHeaders;
+    }
 
-    public int getAllAccountAmount() {
+    /**
+     * 轻节点同步区块的紧凑过滤器，过滤器在区块上链时已计算好，所有轻节点共用
+     *
+     * @param fromHeight 起始高度（包含）
+     * @param toHeight 结束高度（不包含），超出当前链高时只返回到最新区块
+     * @return 按高度从低到高排列的区块过滤器
+     */
+    public synchronized List<BlockFilter> getBlockFilters(int fromHeight, int toHeight) {
+        int from = Math.max(0, fromHeight);
+        int to = Math.min(toHeight, blockFilters.size());
+        return from < to ? new ArrayList<>(blockFilters.subList(from, to)) : Collections.<BlockFilter>emptyList();
+    }
+
+    /**
+     * @param height 区块高度
+     * @return 该高度区块的过滤器头，超出当前链高时返回null
+     */
+    public synchronized byte[] getFilterHeader(int height) {
+        return height >= 0 && height < filterHeaders.size() ? filterHeaders.get(height) : null;
+    }
+
+    /**
+     * 按轻节点加载的布隆过滤器过滤一段区块，每个区块只返回区块头、与过滤器匹配的交易及其Merkle证明
+     *
+     * @param fromHeight 起始高度（包含）
+     * @param toHeight 结束高度（不包含），超出当前链高时只返回到最新区块
+     * @param bloomFilter 轻节点的布隆过滤器
+     * @return 按高度从低到高排列的过滤后的区块，没有匹配交易的区块也会返回（只有区块头）
+     */
+    public List<FilteredBlock> getFilteredBlocks(int fromHeight, int toHeight, BloomFilter bloomFilter) {
+        List<Block> range;
+        synchronized (this) {
+            int from = Math.max(0, fromHeight);
+            int to = Math.min(toHeight, blocks.size());
+            range = from < to ? new ArrayList<>(blocks.subList(from, to)) : Collections.<Block>emptyList();
+        }
+        // 区块一旦上链就不再改变，过滤不需要持有区块链的锁，多个轻节点的请求可以同时进行
+        List<FilteredBlock> filteredBlocks = new ArrayList<>(range.size());
+        for (int i = 0; i < range.size(); ++i) {
+            Block block = range.get(i);
+            int height = Math.max(0, fromHeight) + i;
+            String blockHash = block.getBlockHeader().getHash();
+            List<Transaction> matched = new ArrayList<>();
+            List<Proof> proofs = new ArrayList<>();
+            for (Transaction transaction : block.getBlockBody().getTransactions()) {
+                if (!bloomFilter.matches(transaction)) {
+                    continue;
+                }
+                String txHash = SecurityUtil.bytes2HexString(transaction.getTxId());
+                List<Proof.Node> path = block.getBlockBody().getMerklePath(txHash);
+                matched.add(transaction);
+                proofs.add(new Proof(txHash, block.getBlockHeader().getMerkleRootHash(), blockHash, height, path));
+            }
+            filteredBlocks.add(new FilteredBlock(block.getBlockHeader(), height, matched, proofs));
+        }
+        return filteredBlocks;
+    }
+
+    /**
+     * 为轻节点生成交易的Merkle证明
+     *
+     * 按哈希找到区块、在区块体中按交易哈希找到叶子均为O(1)，区块体保留了整棵Merkle树，
+     * 生成路径只需取出每一层的兄弟节点，为O(log n)
+     *
+     * @param blockHash 交易所在区块的哈希
+     * @param txHash 交易哈希（十六进制），见Transaction.getTxId
+     * @return 交易的Merkle证明，区块不在链上或交易不在该区块中时返回null
+     */
+    public Proof getMerkleProof(String blockHash, String txHash) {
+        Block block;
+        int height;
+        synchronized (this) {
+            height = getHeight(blockHash);
+            if (height < 0) {
+                return null;
+            }
+            block = blocks.get(height);
+        }
+        // 区块一旦上链就不再改变，生成路径不需要持有区块链的锁
+        List<Proof.Node> path = block.getBlockBody().getMerklePath(txHash);
+        if (path == null) {
+            return null;
+        }
+        return new Proof(txHash, block.getBlockHeader().getMerkleRootHash(), blockHash, height, path);
+    }
+
+
+    /**
+     * @return 网络中所有账户的余额之和，直接读取utxo集合维护的余额
+     */
+    public synchronized long getAllAccountAmount() {
         Account[] accounts = network.getAccounts();
-        int sumAmount = 0;
+        String[] walletAddresses = new String[accounts.length];
         for (int i = 0; i < accounts.length; ++i) {
-            UTXO[] trueUtxo = getTrueUtxos(accounts[i].getWalletAddress());
-            sumAmount += accounts[i].getAmount(trueUtxo);
+            walletAddresses[i] = accounts[i].getWalletAddress();
+        }
+        long sumAmount = 0;
+        for (long balance : utxoSet.getBalances(walletAddresses)) {
+            sumAmount += balance;
         }
         return sumAmount;
     }
-
-    public LinkedList<Block> getBlocks() {
-        return blocks;
-    }
 }
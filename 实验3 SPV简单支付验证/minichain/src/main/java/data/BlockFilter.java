@@ -0,0 +1,315 @@
+package data;
+
+import utils.SecurityUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 区块的紧凑过滤器（与比特币BIP158中的basic filter相同，Golomb-Rice编码的集合）
+ *
+ * 过滤器包含区块中所有交易输出和被花费的输入的锁定脚本数据（即UTXO中的公钥哈希）：
+ *    1. 每个元素用SipHash-2-4（密钥为区块哈希的前16字节）哈希后映射到 [0, N * M) 中，N为元素个数
+ *    2. 排序后对相邻元素的差值做参数为P的Golomb-Rice编码：商用一元编码（q个1后接一个0），余数用P个比特
+ *
+ * 每个元素只占约P + 2个比特，过滤器在区块上链时计算一次，所有轻节点共用，全节点不需要为每个轻节点单独过滤；
+ * 轻节点下载过滤器后在本地判断区块是否与自己相关，全节点也无从得知轻节点关心哪些地址
+ *
+ * 相邻区块的过滤器通过过滤器头串联：filterHeader = SHA256(SHA256(filter) || 上一个filterHeader)，
+ * 轻节点保存自己计算的过滤器头，再次下载同一高度的过滤器时可以发现全节点前后提供的过滤器不一致
+ *
+ */
+public class BlockFilter {
+
+    /**
+     * Golomb-Rice编码参数与假阳性率的倒数，与BIP158一致
+     */
+    public static final int P = 19;
+    public static final long M = 784931;
+
+    private final byte[] key;
+    private final int n;
+    private final byte[] encoded;
+
+    private BlockFilter(byte[] key, int n, byte[] encoded) {
+        this.key = key;
+        this.n = n;
+        this.encoded = encoded;
+    }
+
+    /**
+     * 为区块构建过滤器
+     *
+     * @param blockHash 区块哈希（十六进制），其前16字节作为SipHash的密钥
+     * @param transactions 区块中的交易
+     * @return 区块的过滤器
+     */
+    public static BlockFilter build(String blockHash, Transaction[] transactions) {
+        Set<ByteBuffer> elements = new HashSet<>();
+        for (Transaction transaction : transactions) {
+            for (UTXO utxo : transaction.getInUtxos()) {
+                elements.add(ByteBuffer.wrap(utxo.getPublicKeyHash()));
+            }
+            for (UTXO utxo : transaction.getOutUtxos()) {
+                elements.add(ByteBuffer.wrap(utxo.getPublicKeyHash()));
+            }
+        }
+        byte[][] items = new byte[elements.size()][];
+        int i = 0;
+        for (ByteBuffer element : elements) {
+            items[i++] = element.array();
+        }
+        return build(Arrays.copyOf(SecurityUtil.hexString2Bytes(blockHash), 16), items);
+    }
+
+    /**
+     * @param key 16字节的SipHash密钥
+     * @param items 互不相同的元素
+     */
+    public static BlockFilter build(byte[] key, byte[][] items) {
+        long[] values = hashedSet(key, items, items.length);
+        Arrays.sort(values);
+        BitWriter writer = new BitWriter();
+        long last = 0;
+        for (long value : values) {
+            long delta = value - last;
+            // 商用一元编码：q个1后接一个0
+            for (long q = delta >>> P; q > 0; --q) {
+                writer.writeBit(1);
+            }
+            writer.writeBit(0);
+            writer.writeBits(delta, P);
+            last = value;
+        }
+        return new BlockFilter(key, items.length, writer.toByteArray());
+    }
+
+    /**
+     * @param item 待检查的元素（公钥哈希）
+     * @return 元素可能在过滤器中则返回true（假阳性率约为1/M），一定不在时返回false
+     */
+    public boolean match(byte[] item) {
+        return matchAny(Arrays.asList(item));
+    }
+
+    /**
+     * 查询的元素排序后与过滤器的解码结果做一次归并，整个过滤器只需解码一遍
+     *
+     * @param items 待检查的元素
+     * @return 任一元素可能在过滤器中则返回true
+     */
+    public boolean matchAny(Collection<byte[]> items) {
+        if (n == 0 || items.isEmpty()) {
+            return false;
+        }
+        long[] queries = hashedSet(key, items.toArray(new byte[items.size()][]), n);
+        Arrays.sort(queries);
+        BitReader reader = new BitReader(encoded);
+        long value = 0;
+        int q = 0;
+        for (int i = 0; i < n; ++i) {
+            long quotient = 0;
+            while (reader.readBit() == 1) {
+                ++quotient;
+            }
+            value += (quotient << P) | reader.readBits(P);
+            while (queries[q] < value) {
+                if (++q == queries.length) {
+                    return false;
+                }
+            }
+            if (queries[q] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param prevFilterHeader 上一个区块的过滤器头，创世区块为32个0字节
+     * @return 本区块的过滤器头
+     */
+    public byte[] getFilterHeader(byte[] prevFilterHeader) {
+        byte[] filterHash = SecurityUtil.sha256Digest(SecurityUtil.sha256Digest(toBytes()));
+        byte[] data = new byte[filterHash.length + prevFilterHeader.length];
+        System.arraycopy(filterHash, 0, data, 0, filterHash.length);
+        System.arraycopy(prevFilterHeader, 0, data, filterHash.length, prevFilterHeader.length);
+        return SecurityUtil.sha256Digest(SecurityUtil.sha256Digest(data));
+    }
+
+    /**
+     * @return 过滤器的序列化：元素个数N（CompactSize编码）后接Golomb-Rice编码的比特流
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(9 + encoded.length);
+        if (n < 0xfd) {
+            out.write(n);
+        } else if (n <= 0xffff) {
+            out.write(0xfd);
+            out.write(n);
+            out.write(n >>> 8);
+        } else {
+            out.write(0xfe);
+            for (int i = 0; i < 4; ++i) {
+                out.write(n >>> (8 * i));
+            }
+        }
+        out.write(encoded, 0, encoded.length);
+        return out.toByteArray();
+    }
+
+    public int getN() {
+        return n;
+    }
+
+    /**
+     * 将每个元素哈希映射到 [0, n * M)：取SipHash的64位结果与 n * M 乘积的高64位
+     */
+    private static long[] hashedSet(byte[] key, byte[][] items, int n) {
+        long f = n * M;
+        long k0 = readLong(key, 0);
+        long k1 = readLong(key, 8);
+        long[] values = new long[items.length];
+        for (int i = 0; i < items.length; ++i) {
+            values[i] = multiplyHighUnsigned(sipHash24(k0, k1, items[i]), f);
+        }
+        return values;
+    }
+
+    private static long multiplyHighUnsigned(long x, long y) {
+        long x0 = x & 0xffffffffL, x1 = x >>> 32;
+        long y0 = y & 0xffffffffL, y1 = y >>> 32;
+        long p00 = x0 * y0;
+        long p01 = x0 * y1;
+        long p10 = x1 * y0;
+        long p11 = x1 * y1;
+        long middle = (p00 >>> 32) + (p01 & 0xffffffffL) + (p10 & 0xffffffffL);
+        return p11 + (p01 >>> 32) + (p10 >>> 32) + (middle >>> 32);
+    }
+
+    /**
+     * SipHash-2-4
+     *
+     * @param k0 密钥的前8字节（小端序）
+     * @param k1 密钥的后8字节（小端序）
+     * @param data 数据
+     * @return 64位哈希值
+     */
+    public static long sipHash24(long k0, long k1, byte[] data) {
+        long v0 = k0 ^ 0x736f6d6570736575L;
+        long v1 = k1 ^ 0x646f72616e646f6dL;
+        long v2 = k0 ^ 0x6c7967656e657261L;
+        long v3 = k1 ^ 0x7465646279746573L;
+        int blocks = data.length / 8;
+        for (int i = 0; i < blocks; ++i) {
+            long m = readLong(data, 8 * i);
+            v3 ^= m;
+            for (int r = 0; r < 2; ++r) {
+                v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+                v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+                v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+                v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+            }
+            v0 ^= m;
+        }
+        // 最后一个块：剩余的字节加上最高字节为数据长度
+        long m = ((long) data.length) << 56;
+        for (int i = 8 * blocks; i < data.length; ++i) {
+            m |= (data[i] & 0xffL) << (8 * (i - 8 * blocks));
+        }
+        v3 ^= m;
+        for (int r = 0; r < 2; ++r) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        v0 ^= m;
+        v2 ^= 0xff;
+        for (int r = 0; r < 4; ++r) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        return v0 ^ v1 ^ v2 ^ v3;
+    }
+
+    private static long readLong(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 7; i >= 0; --i) {
+            value = (value << 8) | (data[offset + i] & 0xffL);
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "BlockFilter{" +
+                "n=" + n +
+                ", size=" + encoded.length +
+                '}';
+    }
+
+    /**
+     * 按比特从高到低写入字节数组
+     */
+    private static class BitWriter {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private int current = 0;
+        private int count = 0;
+
+        void writeBit(int bit) {
+            current = (current << 1) | bit;
+            if (++count == 8) {
+                out.write(current);
+                current = 0;
+                count = 0;
+            }
+        }
+
+        void writeBits(long value, int bits) {
+            for (int i = bits - 1; i >= 0; --i) {
+                writeBit((int) (value >>> i) & 1);
+            }
+        }
+
+        byte[] toByteArray() {
+            if (count > 0) {
+                out.write(current << (8 - count));
+                current = 0;
+                count = 0;
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static class BitReader {
+
+        private final byte[] data;
+        private int position = 0;
+
+        BitReader(byte[] data) {
+            this.data = data;
+        }
+
+        int readBit() {
+            int bit = (data[position >>> 3] >>> (7 - (position & 7))) & 1;
+            ++position;
+            return bit;
+        }
+
+        long readBits(int bits) {
+            long value = 0;
+            for (int i = 0; i < bits; ++i) {
+                value = (value << 1) | readBit();
+            }
+            return value;
+        }
+    }
+}
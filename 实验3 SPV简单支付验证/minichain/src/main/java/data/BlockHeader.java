@@ -1,6 +1,9 @@
 package data;
 
 import config.MiniChainConfig;
+import utils.SecurityUtil;
+
+import java.nio.ByteBuffer;
 
 /**
  * 对区块头的抽象（参考比特币中的区块头结构），主要有以下字段：
@@ -12,27 +15,79 @@ import config.MiniChainConfig;
  *
  *    timestamp: 时间戳，创建区块头对象时会自动填充，无需提供该参数
  *
- *    difficulty: 挖矿难度，默认为系统配置中的难度值，无需提供该参数
+ *    bits: 紧凑格式的挖矿难度目标，默认为系统配置中的难度目标，展开方式见MinerUtil.bitsToTarget
  *
  *    nonce: 随机字段，创建新的区块头对象时需要提供该参数
  *
+ * 工作量证明只对区块头的定长二进制序列化（见toBytes方法）计算哈希，与区块体中交易的数量和大小无关
+ *
  */
 public class BlockHeader {
 
+    /**
+     * 区块头二进制序列化的长度：version(4) + preBlockHash(32) + merkleRootHash(32) + timestamp(8) + bits(4) + nonce(8)
+     */
+    public static final int HEADER_SIZE = 88;
+
+    /**
+     * nonce 在区块头二进制序列化中的偏移量，nonce 位于末尾，挖矿时只需改写最后8个字节
+     */
+    public static final int NONCE_OFFSET = HEADER_SIZE - 8;
+
+    /**
+     * timestamp 在区块头二进制序列化中的偏移量，nonce空间耗尽时挖矿线程会改写时间戳
+     */
+    public static final int TIMESTAMP_OFFSET = 68;
+
+    /**
+     * preBlockHash、merkleRootHash 在区块头二进制序列化中的偏移量
+     */
+    public static final int PRE_BLOCK_HASH_OFFSET = 4;
+    public static final int MERKLE_ROOT_HASH_OFFSET = 36;
+
+    public static final int HASH_SIZE = 32;
+
     private final int version = 1;
     private final String preBlockHash;
     private final String merkleRootHash;
-    private final long timestamp;
-    private final int difficulty = MiniChainConfig.DIFFICULTY;
+    private long timestamp;
+    private final int bits;
     private long nonce;
 
     public BlockHeader(String preBlockHash, String merkleRootHash, long nonce) {
+        this(preBlockHash, merkleRootHash, MiniChainConfig.INIT_BITS, nonce);
+    }
+
+    public BlockHeader(String preBlockHash, String merkleRootHash, int bits, long nonce) {
+        this(preBlockHash, merkleRootHash, System.currentTimeMillis(), bits, nonce);
+    }
+
+    private BlockHeader(String preBlockHash, String merkleRootHash, long timestamp, int bits, long nonce) {
         this.preBlockHash = preBlockHash;
         this.merkleRootHash = merkleRootHash;
-        this.timestamp = System.currentTimeMillis();
+        this.timestamp = timestamp;
+        this.bits = bits;
         this.nonce = nonce;
     }
 
+    /**
+     * 从二进制序列化中还原区块头，与toBytes方法互逆（全0的哈希还原为全0的十六进制字符串，而不是null）
+     *
+     * @param data 保存区块头二进制序列化的数组
+     * @param offset 区块头在数组中的起始位置
+     * @return 还原的区块头
+     */
+    public static BlockHeader fromBytes(byte[] data, int offset) {
+        ByteBuffer buffer = ByteBuffer.wrap(data, offset, HEADER_SIZE);
+        buffer.getInt();
+        String preBlockHash = getHash(buffer);
+        String merkleRootHash = getHash(buffer);
+        long timestamp = buffer.getLong();
+        int bits = buffer.getInt();
+        long nonce = buffer.getLong();
+        return new BlockHeader(preBlockHash, merkleRootHash, timestamp, bits, nonce);
+    }
+
     public int getVersion() {
         return version;
     }
@@ -49,8 +104,12 @@ public class BlockHeader {
         return timestamp;
     }
 
-    public int getDifficulty() {
-        return difficulty;
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public int getBits() {
+        return bits;
     }
 
     public long getNonce() {
@@ -61,6 +120,73 @@ public class BlockHeader {
         this.nonce = nonce;
     }
 
+    /**
+     * 区块头的定长二进制序列化（大端序），作为工作量证明的唯一原像，
+     * 创世区块的preBlockHash和merkleRootHash为null，此时以32个0字节填充
+     *
+     * @return 长度为HEADER_SIZE的字节数组
+     */
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+        buffer.putInt(version);
+        putHash(buffer, preBlockHash);
+        putHash(buffer, merkleRootHash);
+        buffer.putLong(timestamp);
+        buffer.putInt(bits);
+        buffer.putLong(nonce);
+        return buffer.array();
+    }
+
+    /**
+     * 区块的哈希值，即对区块头二进制序列化计算的SHA256哈希值
+     *
+     * @return 十六进制形式的区块哈希
+     */
+    public String getHash() {
+        return SecurityUtil.bytes2HexString(SecurityUtil.sha256Digest(toBytes()));
+    }
+
+    /**
+     * 直接改写区块头二进制序列化中的nonce字段，挖矿时无需重新序列化整个区块头
+     *
+     * @param headerBytes toBytes方法得到的区块头二进制数据
+     * @param nonce 新的nonce
+     */
+    public static void putNonce(byte[] headerBytes, long nonce) {
+        putLong(headerBytes, NONCE_OFFSET, nonce);
+    }
+
+    /**
+     * 直接改写区块头二进制序列化中的timestamp字段
+     *
+     * @param headerBytes toBytes方法得到的区块头二进制数据
+     * @param timestamp 新的时间戳
+     */
+    public static void putTimestamp(byte[] headerBytes, long timestamp) {
+        putLong(headerBytes, TIMESTAMP_OFFSET, timestamp);
+    }
+
+    private static void putLong(byte[] headerBytes, int offset, long value) {
+        for (int i = offset + 7; i >= offset; --i) {
+            headerBytes[i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static void putHash(ByteBuffer buffer, String hash) {
+        if (hash == null) {
+            buffer.put(new byte[HASH_SIZE]);
+        } else {
+            buffer.put(SecurityUtil.hexString2Bytes(hash));
+        }
+    }
+
+    private static String getHash(ByteBuffer buffer) {
+        byte[] hash = new byte[HASH_SIZE];
+        buffer.get(hash);
+        return SecurityUtil.bytes2HexString(hash);
+    }
+
     @Override
     public String toString() {
         return "BlockHeader{" +
@@ -68,7 +194,7 @@ public class BlockHeader {
                 ", preBlockHash='" + preBlockHash + '\'' +
                 ", merkleRootHash='" + merkleRootHash + '\'' +
                 ", timestamp=" + timestamp +
-                ", difficulty=" + difficulty +
+                ", bits=" + Integer.toHexString(bits) +
                 ", nonce=" + nonce +
                 '}';
     }
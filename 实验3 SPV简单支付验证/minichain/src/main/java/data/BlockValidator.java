@@ -0,0 +1,80 @@
+package data;
+
+import utils.SecurityUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 校验一批交易能否按顺序应用到某个utxo集合（UtxoView）上，校验不修改utxo集合：
+ *    1. 每个输入都必须已绑定outpoint，且在utxo集合中或由同一批次中前面的交易产生
+ *    2. 输入的数额、钱包地址与集合中保存的一致
+ *    3. 同一outpoint在一个批次中只能被花费一次
+ *    4. 输出的outpoint不能已存在于集合中，也不能由同一批次中前面的交易产生
+ *
+ * utxo集合的各实现在修改之前先调用check，校验失败时状态保持不变；BlockChain在区块上链前调用validate，拒绝不合法的区块
+ *
+ */
+final class BlockValidator {
+
+    private BlockValidator() {
+    }
+
+    /**
+     * @param view 当前的utxo集合
+     * @param transactions 按顺序应用的交易
+     * @return 不能应用时返回原因，否则返回null
+     */
+    static String validate(UtxoView view, Transaction[] transactions) {
+        // 本批次中已花费的outpoint，以及本批次产生的outpoint -> created中的下标
+        OutPointMap spent = new OutPointMap();
+        OutPointMap createdIndex = new OutPointMap();
+        List<UTXO> created = new ArrayList<>();
+        for (Transaction transaction : transactions) {
+            for (UTXO utxo : transaction.getInUtxos()) {
+                if (!utxo.hasOutPoint()) {
+                    return "input without outpoint";
+                }
+                byte[] txId = utxo.getTxId();
+                int outputIndex = utxo.getOutputIndex();
+                if (spent.put(txId, outputIndex, 0) != OutPointMap.NO_VALUE) {
+                    return "input " + outPoint(utxo) + " is spent twice";
+                }
+                long index = createdIndex.get(txId, outputIndex);
+                UTXO stored = index == OutPointMap.NO_VALUE ? view.get(txId, outputIndex) : created.get((int) index);
+                if (stored == null) {
+                    return "input " + outPoint(utxo) + " does not exist";
+                }
+                if (stored.getAmount() != utxo.getAmount() || !stored.getWalletAddress().equals(utxo.getWalletAddress())) {
+                    return "input " + outPoint(utxo) + " does not match the stored utxo";
+                }
+            }
+            for (UTXO utxo : transaction.getOutUtxos()) {
+                byte[] txId = utxo.getTxId();
+                int outputIndex = utxo.getOutputIndex();
+                if (createdIndex.containsKey(txId, outputIndex) || view.get(txId, outputIndex) != null) {
+                    return "output " + outPoint(utxo) + " already exists";
+                }
+                createdIndex.put(txId, outputIndex, created.size());
+                created.add(utxo);
+            }
+        }
+        return null;
+    }
+
+    private static String outPoint(UTXO utxo) {
+        return SecurityUtil.bytes2HexString(utxo.getTxId()) + ":" + utxo.getOutputIndex();
+    }
+
+    /**
+     * 与validate相同，不能应用时抛出异常
+     *
+     * @throws IllegalArgumentException 交易不能按顺序应用到view上
+     */
+    static void check(UtxoView view, Transaction[] transactions) {
+        String reason = validate(view, transactions);
+        if (reason != null) {
+            throw new IllegalArgumentException(reason);
+        }
+    }
+}
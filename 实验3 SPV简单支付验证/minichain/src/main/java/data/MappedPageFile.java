@@ -0,0 +1,348 @@
+package data;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * 按页组织的内存映射文件，带重做日志（redo journal），供UtxoStore使用
+ *
+ * 文件按1GB分段映射（单个MappedByteBuffer最大2GB），读操作直接访问映射区，不经过Java堆；
+ * 一个批次内的写操作不直接写映射区，而是写入该页在堆内的副本（脏页），读操作优先读脏页，commit时：
+ *    1. 把所有脏页按页号顺序写入日志文件：魔数 + 页数 + (页号 + 页内容) * n + CRC32，并force到磁盘；
+ *       日志经一个固定大小的缓冲区逐页写入，CRC32随写入累积，不在堆上拼出整个日志
+ *    2. 把脏页复制到映射区，force映射区
+ *    3. 清空日志文件
+ * 打开文件时若日志完整（CRC正确），说明上次在第2步之后崩溃，重新写入日志中的页即可（重复写入结果相同）；
+ * 日志不完整说明在第1步中崩溃，此时映射区尚未被修改，丢弃日志即可。因此一个批次的修改要么全部生效，要么全部不生效
+ *
+ * 批量构建新文件时可以使用直接写模式（setDirect），写操作直接写映射区，不记日志
+ *
+ * 调用方保证每个字段都不跨页（字段的偏移按其长度对齐，记录长度整除页大小），该类不是线程安全的
+ */
+class MappedPageFile implements Closeable {
+
+    static final int PAGE_SIZE = 4096;
+    private static final int PAGE_SHIFT = 12;
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+    private static final long JOURNAL_MAGIC = 0x4d43484a524e4c31L;
+    private static final int JOURNAL_HEADER_SIZE = 8 + 4;
+    private static final int JOURNAL_ENTRY_SIZE = 8 + PAGE_SIZE;
+    /**
+     * 读写日志所用缓冲区可容纳的页数
+     */
+    private static final int JOURNAL_BUFFER_PAGES = 64;
+
+    private final FileChannel channel;
+    private final FileChannel journal;
+    private final MappedByteBuffer[] segments;
+    private final long size;
+    /**
+     * 页号 -> 脏页，按页号排序，commit时顺序写入
+     */
+    private final TreeMap<Long, byte[]> dirtyPages = new TreeMap<>();
+    private boolean direct = false;
+
+    /**
+     * 打开（不存在时创建）文件，文件不足size时扩展，并根据日志恢复上次未完成的commit
+     *
+     * @param file 数据文件
+     * @param journalFile 日志文件
+     * @param size 文件大小，必须是页大小的整数倍
+     */
+    MappedPageFile(Path file, Path journalFile, long size) throws IOException {
+        if (size % PAGE_SIZE != 0) {
+            throw new IllegalArgumentException("size must be a multiple of " + PAGE_SIZE);
+        }
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "rw")) {
+            if (randomAccessFile.length() < size) {
+                randomAccessFile.setLength(size);
+            }
+        }
+        this.size = size;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.journal = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        recover();
+        int segmentCount = (int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+        this.segments = new MappedByteBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; ++i) {
+            long position = (long) i << SEGMENT_SHIFT;
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.min(size - position, 1L << SEGMENT_SHIFT));
+        }
+    }
+
+    /**
+     * 日志完整时重新写入其中的页，否则丢弃日志；日志按固定大小的缓冲区分段读取，先校验CRC，再逐页重放
+     */
+    private void recover() throws IOException {
+        long length = journal.size();
+        if (length == 0) {
+            return;
+        }
+        if (length >= JOURNAL_HEADER_SIZE + 8) {
+            ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER_SIZE);
+            readFully(journal, header, 0);
+            long magic = header.getLong(0);
+            int pageCount = header.getInt(8);
+            long expectedLength = JOURNAL_HEADER_SIZE + (long) pageCount * JOURNAL_ENTRY_SIZE + 8;
+            if (magic == JOURNAL_MAGIC && pageCount >= 0 && expectedLength == length && checksumMatches(length)) {
+                ByteBuffer buffer = ByteBuffer.allocate(JOURNAL_BUFFER_PAGES * JOURNAL_ENTRY_SIZE);
+                long position = JOURNAL_HEADER_SIZE;
+                for (int i = 0; i < pageCount; i += JOURNAL_BUFFER_PAGES) {
+                    int pages = Math.min(JOURNAL_BUFFER_PAGES, pageCount - i);
+                    buffer.clear();
+                    buffer.limit(pages * JOURNAL_ENTRY_SIZE);
+                    readFully(journal, buffer, position);
+                    position += buffer.limit();
+                    for (int j = 0; j < pages; ++j) {
+                        long pageNo = buffer.getLong(j * JOURNAL_ENTRY_SIZE);
+                        ByteBuffer page = buffer.duplicate();
+                        page.limit((j + 1) * JOURNAL_ENTRY_SIZE);
+                        page.position(j * JOURNAL_ENTRY_SIZE + 8);
+                        writeFully(channel, page, pageNo << PAGE_SHIFT);
+                    }
+                }
+                channel.force(true);
+            }
+        }
+        journal.truncate(0);
+        journal.force(true);
+    }
+
+    /**
+     * @param length 日志长度，最后8字节为之前所有内容的CRC32
+     */
+    private boolean checksumMatches(long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(JOURNAL_BUFFER_PAGES * JOURNAL_ENTRY_SIZE);
+        CRC32 crc32 = new CRC32();
+        long position = 0;
+        while (position < length - 8) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), length - 8 - position));
+            readFully(journal, buffer, position);
+            crc32.update(buffer.array(), 0, buffer.limit());
+            position += buffer.limit();
+        }
+        ByteBuffer trailer = ByteBuffer.allocate(8);
+        readFully(journal, trailer, position);
+        return crc32.getValue() == trailer.getLong(0);
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * @param direct 为true时写操作直接写映射区、不记日志，用于构建尚未启用的新文件
+     */
+    void setDirect(boolean direct) {
+        if (!dirtyPages.isEmpty()) {
+            throw new IllegalStateException("uncommitted pages");
+        }
+        this.direct = direct;
+    }
+
+    byte getByte(long position) {
+        byte[] page = dirtyPages.isEmpty() ? null : dirtyPages.get(position >>> PAGE_SHIFT);
+        if (page != null) {
+            return page[(int) (position & (PAGE_SIZE - 1))];
+        }
+        return segments[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & SEGMENT_MASK));
+    }
+
+    int getInt(long position) {
+        byte[] page = dirtyPages.isEmpty() ? null : dirtyPages.get(position >>> PAGE_SHIFT);
+        if (page != null) {
+            int offset = (int) (position & (PAGE_SIZE - 1));
+            return (page[offset] & 0xff) << 24 | (page[offset + 1] & 0xff) << 16
+                    | (page[offset + 2] & 0xff) << 8 | (page[offset + 3] & 0xff);
+        }
+        return segments[(int) (position >>> SEGMENT_SHIFT)].getInt((int) (position & SEGMENT_MASK));
+    }
+
+    long getLong(long position) {
+        return (long) getInt(position) << 32 | (getInt(position + 4) & 0xffffffffL);
+    }
+
+    void getBytes(long position, byte[] dst, int offset, int length) {
+        byte[] page = dirtyPages.isEmpty() ? null : dirtyPages.get(position >>> PAGE_SHIFT);
+        if (page != null) {
+            System.arraycopy(page, (int) (position & (PAGE_SIZE - 1)), dst, offset, length);
+            return;
+        }
+        ByteBuffer segment = segments[(int) (position >>> SEGMENT_SHIFT)].duplicate();
+        segment.position((int) (position & SEGMENT_MASK));
+        segment.get(dst, offset, length);
+    }
+
+    void putByte(long position, byte value) {
+        if (direct) {
+            segments[(int) (position >>> SEGMENT_SHIFT)].put((int) (position & SEGMENT_MASK), value);
+            return;
+        }
+        dirtyPage(position)[(int) (position & (PAGE_SIZE - 1))] = value;
+    }
+
+    void putInt(long position, int value) {
+        if (direct) {
+            segments[(int) (position >>> SEGMENT_SHIFT)].putInt((int) (position & SEGMENT_MASK), value);
+            return;
+        }
+        byte[] page = dirtyPage(position);
+        int offset = (int) (position & (PAGE_SIZE - 1));
+        page[offset] = (byte) (value >>> 24);
+        page[offset + 1] = (byte) (value >>> 16);
+        page[offset + 2] = (byte) (value >>> 8);
+        page[offset + 3] = (byte) value;
+    }
+
+    void putLong(long position, long value) {
+        putInt(position, (int) (value >>> 32));
+        putInt(position + 4, (int) value);
+    }
+
+    void putBytes(long position, byte[] src, int offset, int length) {
+        if (direct) {
+            ByteBuffer segment = segments[(int) (position >>> SEGMENT_SHIFT)].duplicate();
+            segment.position((int) (position & SEGMENT_MASK));
+            segment.put(src, offset, length);
+            return;
+        }
+        System.arraycopy(src, offset, dirtyPage(position), (int) (position & (PAGE_SIZE - 1)), length);
+    }
+
+    /**
+     * @return 该位置所在页的堆内副本，第一次修改该页时从映射区复制
+     */
+    private byte[] dirtyPage(long position) {
+        long pageNo = position >>> PAGE_SHIFT;
+        byte[] page = dirtyPages.get(pageNo);
+        if (page == null) {
+            page = new byte[PAGE_SIZE];
+            ByteBuffer segment = segments[(int) (position >>> SEGMENT_SHIFT)].duplicate();
+            segment.position((int) ((pageNo << PAGE_SHIFT) & SEGMENT_MASK));
+            segment.get(page);
+            dirtyPages.put(pageNo, page);
+        }
+        return page;
+    }
+
+    /**
+     * @return 当前批次修改过的页数
+     */
+    int getDirtyPageCount() {
+        return dirtyPages.size();
+    }
+
+    /**
+     * 原子地提交当前批次的所有修改，见类注释
+     */
+    void commit() throws IOException {
+        if (direct) {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+            return;
+        }
+        if (dirtyPages.isEmpty()) {
+            return;
+        }
+        // 1. 写日志，缓冲区写满时写入文件并累积CRC32，脏页不会在堆上再复制一份
+        journal.truncate(0);
+        ByteBuffer log = ByteBuffer.allocate(JOURNAL_BUFFER_PAGES * JOURNAL_ENTRY_SIZE);
+        CRC32 crc32 = new CRC32();
+        long journalLength = 0;
+        log.putLong(JOURNAL_MAGIC);
+        log.putInt(dirtyPages.size());
+        for (Map.Entry<Long, byte[]> entry : dirtyPages.entrySet()) {
+            if (log.remaining() < JOURNAL_ENTRY_SIZE) {
+                journalLength = appendJournal(log, crc32, journalLength);
+            }
+            log.putLong(entry.getKey());
+            log.put(entry.getValue());
+        }
+        journalLength = appendJournal(log, crc32, journalLength);
+        log.putLong(crc32.getValue());
+        appendJournal(log, null, journalLength);
+        journal.force(true);
+
+        // 2. 写映射区
+        boolean[] touched = new boolean[segments.length];
+        for (Map.Entry<Long, byte[]> entry : dirtyPages.entrySet()) {
+            long position = entry.getKey() << PAGE_SHIFT;
+            int segment = (int) (position >>> SEGMENT_SHIFT);
+            ByteBuffer buffer = segments[segment].duplicate();
+            buffer.position((int) (position & SEGMENT_MASK));
+            buffer.put(entry.getValue());
+            touched[segment] = true;
+        }
+        for (int i = 0; i < segments.length; ++i) {
+            if (touched[i]) {
+                segments[i].force();
+            }
+        }
+
+        // 3. 清空日志
+        journal.truncate(0);
+        journal.force(true);
+        dirtyPages.clear();
+    }
+
+    /**
+     * 丢弃当前批次的所有修改
+     */
+    void rollback() {
+        dirtyPages.clear();
+    }
+
+    /**
+     * 把缓冲区中的内容写入日志的position处并清空缓冲区
+     *
+     * @param crc32 不为null时用写入的内容更新
+     * @return 写入之后日志的长度
+     */
+    private long appendJournal(ByteBuffer buffer, CRC32 crc32, long position) throws IOException {
+        buffer.flip();
+        int length = buffer.limit();
+        if (crc32 != null) {
+            crc32.update(buffer.array(), 0, length);
+        }
+        writeFully(journal, buffer, position);
+        buffer.clear();
+        return position + length;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        dirtyPages.clear();
+        journal.close();
+        channel.close();
+    }
+}
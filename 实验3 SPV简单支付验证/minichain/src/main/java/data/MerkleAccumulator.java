@@ -0,0 +1,94 @@
+package data;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 增量Merkle树
+ *
+ * 叶子逐个加入，每加入一个叶子，就把所有已能配对的节点立即向上合并，每层只有最右侧的一个节点可能在等待配对
+ * （即"前沿"），加入叶子的均摊代价为O(1)次哈希
+ *
+ * 需要根哈希时，只需沿前沿自底向上补齐最右侧的节点（奇数个节点时最后一个与自身配对，与MerkleTree一致），
+ * 为O(log n)次哈希，得到的MerkleTree与一次性对所有叶子构建的结果完全相同，同样可以生成Merkle证明
+ *
+ * 该类不是线程安全的，由交易池在持有自身锁时调用
+ *
+ */
+public class MerkleAccumulator {
+
+    /**
+     * levels.get(i) 为第i层中已经确定的节点（两个子节点都已存在），levels.get(0)为叶子层
+     */
+    private final List<List<byte[]>> levels = new ArrayList<>();
+
+    public MerkleAccumulator() {
+        levels.add(new ArrayList<byte[]>());
+    }
+
+    /**
+     * 加入一个叶子，并向上合并所有已能配对的节点
+     *
+     * @param leaf 叶子节点（交易哈希），32字节
+     */
+    public void add(byte[] leaf) {
+        levels.get(0).add(leaf);
+        MessageDigest digest = MerkleTree.getDigest();
+        for (int i = 0; levels.get(i).size() % 2 == 0; ++i) {
+            List<byte[]> level = levels.get(i);
+            if (i + 1 == levels.size()) {
+                levels.add(new ArrayList<byte[]>());
+            }
+            byte[] parent = MerkleTree.hashPair(digest, level.get(level.size() - 2), level.get(level.size() - 1));
+            levels.get(i + 1).add(parent);
+        }
+    }
+
+    /**
+     * 补齐每层最右侧尚未确定的节点，得到包含当前所有叶子的Merkle树，不影响之后继续加入叶子
+     *
+     * @return 与 new MerkleTree(所有叶子) 相同的Merkle树
+     */
+    public MerkleTree toMerkleTree() {
+        MessageDigest digest = MerkleTree.getDigest();
+        List<byte[][]> result = new ArrayList<>(levels.size() + 1);
+        // carry为由下一层补齐得到的、本层最右侧的节点
+        byte[] carry = null;
+        for (int i = 0; ; ++i) {
+            List<byte[]> completed = i < levels.size() ? levels.get(i) : new ArrayList<byte[]>();
+            int size = completed.size() + (carry == null ? 0 : 1);
+            byte[][] level = completed.toArray(new byte[size][]);
+            if (carry != null) {
+                level[size - 1] = carry;
+            }
+            result.add(level);
+            if (size <= 1) {
+                break;
+            }
+            if (completed.size() % 2 == 1) {
+                // 本层已确定节点的最后一个还没有配对：与carry配对，没有carry时与自身配对
+                byte[] last = completed.get(completed.size() - 1);
+                carry = MerkleTree.hashPair(digest, last, carry == null ? last : carry);
+            } else if (carry != null) {
+                carry = MerkleTree.hashPair(digest, carry, carry);
+            }
+        }
+        return MerkleTree.fromLevels(result.toArray(new byte[result.size()][][]));
+    }
+
+    /**
+     * @return 已加入的叶子数
+     */
+    public int size() {
+        return levels.get(0).size();
+    }
+
+    /**
+     * 清空所有叶子
+     */
+    public void clear() {
+        levels.clear();
+        levels.add(new ArrayList<byte[]>());
+    }
+}
@@ -0,0 +1,184 @@
+package data;
+
+import spv.Proof;
+import utils.SecurityUtil;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 二进制Merkle树
+ *
+ * 叶子为交易的32字节SHA256哈希值，父节点为 SHA256(左子节点 || 右子节点)，直接拼接原始字节而不是十六进制字符串；
+ * 某一层节点数为奇数时，最后一个节点与自身配对（与比特币相同）
+ *
+ * 每个线程复用自己的MessageDigest对象（见SecurityUtil.sha256Engine）；某一层的节点数较多时，该层的哈希计算会拆分到ForkJoinPool的多个线程上并行完成
+ *
+ * 树的每一层都会保留下来，生成某个叶子的Merkle证明（从叶子到根路径上的兄弟节点）只需O(log n)
+ *
+ */
+public class MerkleTree {
+
+    /**
+     * 某一层的父节点数不少于该值时并行计算，每个子任务至少计算这么多个父节点
+     */
+    private static final int PARALLEL_THRESHOLD = 1024;
+
+    /**
+     * levels[0]为叶子层，最后一层只有根节点
+     */
+    private final byte[][][] levels;
+
+    /**
+     * 根据叶子节点构建Merkle树
+     *
+     * @param leaves 叶子节点（交易哈希），每个为32字节；没有叶子时根为null
+     */
+    public MerkleTree(byte[][] leaves) {
+        List<byte[][]> levelList = new ArrayList<>();
+        byte[][] level = leaves;
+        levelList.add(level);
+        // 逐层向上计算，直至只剩根节点
+        while (level.length > 1) {
+            level = nextLevel(level);
+            levelList.add(level);
+        }
+        levels = levelList.toArray(new byte[levelList.size()][][]);
+    }
+
+    /**
+     * @param levels 已计算好的各层节点，见MerkleAccumulator
+     */
+    private MerkleTree(byte[][][] levels) {
+        this.levels = levels;
+    }
+
+    static MerkleTree fromLevels(byte[][][] levels) {
+        return new MerkleTree(levels);
+    }
+
+    public byte[] getRoot() {
+        byte[][] top = levels[levels.length - 1];
+        return top.length == 0 ? null : top[0];
+    }
+
+    public int getLeafCount() {
+        return levels[0].length;
+    }
+
+    public byte[] getLeaf(int index) {
+        return levels[0][index];
+    }
+
+    /**
+     * 生成某个叶子的Merkle路径：自底向上每一层的兄弟节点及其相对位置，
+     * 没有兄弟节点（奇数个节点中的最后一个）时兄弟节点就是其自身，位于右侧
+     *
+     * @param index 叶子的下标
+     * @return 从叶子的兄弟节点到根的子节点，共 (层数 - 1) 个节点
+     */
+    public List<Proof.Node> getPath(int index) {
+        if (index < 0 || index >= getLeafCount()) {
+            throw new IndexOutOfBoundsException("leaf index " + index + ", leaf count " + getLeafCount());
+        }
+        List<Proof.Node> path = new ArrayList<>(levels.length - 1);
+        for (int i = 0; i < levels.length - 1; ++i) {
+            byte[][] level = levels[i];
+            if ((index & 1) == 0) {
+                byte[] sibling = index + 1 < level.length ? level[index + 1] : level[index];
+                path.add(new Proof.Node(SecurityUtil.bytes2HexString(sibling), Proof.Orientation.RIGHT));
+            } else {
+                path.add(new Proof.Node(SecurityUtil.bytes2HexString(level[index - 1]), Proof.Orientation.LEFT));
+            }
+            index >>>= 1;
+        }
+        return path;
+    }
+
+    /**
+     * 根据叶子和Merkle路径自底向上计算根哈希，与区块头中的merkleRootHash比较即可验证叶子是否在树中
+     *
+     * @param leaf 叶子节点（交易哈希）
+     * @param path 见getPath方法
+     * @return 计算得到的根哈希
+     */
+    public static byte[] computeRoot(byte[] leaf, List<Proof.Node> path) {
+        MessageDigest digest = SecurityUtil.sha256Engine();
+        byte[] hash = leaf;
+        for (Proof.Node node : path) {
+            byte[] sibling = SecurityUtil.hexString2Bytes(node.getTxHash());
+            if (node.getOrientation() == Proof.Orientation.LEFT) {
+                hash = hashPair(digest, sibling, hash);
+            } else {
+                hash = hashPair(digest, hash, sibling);
+            }
+        }
+        return hash;
+    }
+
+    private static byte[][] nextLevel(byte[][] level) {
+        byte[][] parents = new byte[(level.length + 1) / 2][];
+        if (parents.length < PARALLEL_THRESHOLD) {
+            hashRange(level, parents, 0, parents.length);
+        } else {
+            ForkJoinPool.commonPool().invoke(new LevelTask(level, parents, 0, parents.length));
+        }
+        return parents;
+    }
+
+    /**
+     * 计算 parents[from, to) 这些父节点
+     */
+    private static void hashRange(byte[][] level, byte[][] parents, int from, int to) {
+        MessageDigest digest = SecurityUtil.sha256Engine();
+        for (int i = from; i < to; ++i) {
+            byte[] left = level[2 * i];
+            // 如果出现奇数个节点，即最后一个节点没有右结点与其构成一对，就将当前节点复制一份作为右节点
+            byte[] right = 2 * i + 1 < level.length ? level[2 * i + 1] : left;
+            parents[i] = hashPair(digest, left, right);
+        }
+    }
+
+    static MessageDigest getDigest() {
+        return SecurityUtil.sha256Engine();
+    }
+
+    static byte[] hashPair(MessageDigest digest, byte[] left, byte[] right) {
+        digest.update(left);
+        digest.update(right);
+        return digest.digest();
+    }
+
+    /**
+     * 将一层的哈希计算二分拆解为多个子任务
+     */
+    private static class LevelTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final byte[][] level;
+        private final byte[][] parents;
+        private final int from;
+        private final int to;
+
+        LevelTask(byte[][] level, byte[][] parents, int from, int to) {
+            this.level = level;
+            this.parents = parents;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                hashRange(level, parents, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new LevelTask(level, parents, from, middle), new LevelTask(level, parents, middle, to));
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package data;
+
+import java.util.Arrays;
+
+/**
+ * 以outpoint（txid + 输出下标）为键、long为值的哈希表
+ *
+ * 开放定址、线性探测，键和值分别打包在基本类型数组中：每个槽位占 4个long（32字节txid） + 1个int（输出下标） + 1个long（值），
+ * 不装箱、不为每个条目创建对象；每个槽位44字节，负载因子保持在3/8到3/4之间，每个条目约占59 ~ 117字节，内存占用可预估
+ *
+ * 删除时把后续探测链上的条目向前移动（backward shift），不使用墓碑标记，表不会因反复增删而退化
+ *
+ * txid本身是SHA256哈希值，取其前8字节与输出下标混合后作为槽位，该类不是线程安全的
+ *
+ */
+public class OutPointMap {
+
+    /**
+     * 键不存在时get/put/remove的返回值，因此值不能为负数
+     */
+    public static final long NO_VALUE = -1;
+
+    private static final int EMPTY = -1;
+    private static final int TXID_LONGS = 4;
+
+    private long[] txIds;
+    private int[] indexes;
+    private long[] values;
+    private int mask;
+    private int size = 0;
+
+    public OutPointMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize 预计的条目数，不超过该值时不会扩容
+     */
+    public OutPointMap(int expectedSize) {
+        long needed = expectedSize * 4L / 3 + 1;
+        int capacity = 4;
+        while (capacity < needed && capacity < 1 << 30) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        txIds = new long[capacity * TXID_LONGS];
+        indexes = new int[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+        Arrays.fill(indexes, EMPTY);
+    }
+
+    /**
+     * @return 键对应的值，不存在时返回NO_VALUE
+     */
+    public long get(byte[] txId, int index) {
+        int slot = find(readLong(txId, 0), readLong(txId, 8), readLong(txId, 16), readLong(txId, 24), index);
+        return slot < 0 ? NO_VALUE : values[slot];
+    }
+
+    public boolean containsKey(byte[] txId, int index) {
+        return get(txId, index) != NO_VALUE;
+    }
+
+    /**
+     * @param value 非负的值
+     * @return 原来的值，原来不存在时返回NO_VALUE
+     */
+    public long put(byte[] txId, int index, long value) {
+        if (value < 0 || index < 0) {
+            throw new IllegalArgumentException("negative value or output index");
+        }
+        long k0 = readLong(txId, 0), k1 = readLong(txId, 8), k2 = readLong(txId, 16), k3 = readLong(txId, 24);
+        int slot = find(k0, k1, k2, k3, index);
+        if (slot >= 0) {
+            long previous = values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        if ((size + 1) * 4L > (mask + 1) * 3L) {
+            resize();
+        }
+        slot = slot(k0, index);
+        while (indexes[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        store(slot, k0, k1, k2, k3, index, value);
+        ++size;
+        return NO_VALUE;
+    }
+
+    /**
+     * @return 被删除的值，不存在时返回NO_VALUE
+     */
+    public long remove(byte[] txId, int index) {
+        int slot = find(readLong(txId, 0), readLong(txId, 8), readLong(txId, 16), readLong(txId, 24), index);
+        if (slot < 0) {
+            return NO_VALUE;
+        }
+        long removed = values[slot];
+        // 向前移动探测链上后续的条目：某条目的初始槽位不在 (空位, 该条目] 的循环区间内时，移到空位上
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (indexes[next] == EMPTY) {
+                break;
+            }
+            int home = slot(txIds[next * TXID_LONGS], indexes[next]);
+            boolean reachable = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+            if (!reachable) {
+                int base = next * TXID_LONGS;
+                store(hole, txIds[base], txIds[base + 1], txIds[base + 2], txIds[base + 3], indexes[next], values[next]);
+                hole = next;
+            }
+        }
+        indexes[hole] = EMPTY;
+        --size;
+        return removed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(indexes, EMPTY);
+        size = 0;
+    }
+
+    /**
+     * @return 槽位数，每个槽位占 5 * 8 + 4 = 44字节
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    private int find(long k0, long k1, long k2, long k3, int index) {
+        int slot = slot(k0, index);
+        while (indexes[slot] != EMPTY) {
+            int base = slot * TXID_LONGS;
+            if (indexes[slot] == index && txIds[base] == k0 && txIds[base + 1] == k1
+                    && txIds[base + 2] == k2 && txIds[base + 3] == k3) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void store(int slot, long k0, long k1, long k2, long k3, int index, long value) {
+        int base = slot * TXID_LONGS;
+        txIds[base] = k0;
+        txIds[base + 1] = k1;
+        txIds[base + 2] = k2;
+        txIds[base + 3] = k3;
+        indexes[slot] = index;
+        values[slot] = value;
+    }
+
+    private void resize() {
+        long[] oldTxIds = txIds;
+        int[] oldIndexes = indexes;
+        long[] oldValues = values;
+        allocate(oldIndexes.length * 2);
+        for (int i = 0; i < oldIndexes.length; ++i) {
+            if (oldIndexes[i] == EMPTY) {
+                continue;
+            }
+            int base = i * TXID_LONGS;
+            int slot = slot(oldTxIds[base], oldIndexes[i]);
+            while (indexes[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            store(slot, oldTxIds[base], oldTxIds[base + 1], oldTxIds[base + 2], oldTxIds[base + 3],
+                    oldIndexes[i], oldValues[i]);
+        }
+    }
+
+    /**
+     * txid的前8字节与输出下标混合（MurmurHash3的fmix64），同一交易的各个输出分散到不同的槽位
+     */
+    private int slot(long k0, int index) {
+        long h = k0 ^ (index * 0x9e3779b97f4a7c15L);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    private static long readLong(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; ++i) {
+            value = (value << 8) | (data[offset + i] & 0xffL);
+        }
+        return value;
+    }
+}
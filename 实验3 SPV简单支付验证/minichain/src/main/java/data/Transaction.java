@@ -1,12 +1,28 @@
 package data;
 
 import utils.SecurityUtil;
+import utils.SignatureCache;
 
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.security.PublicKey;
 import java.util.Arrays;
 
 /**
  * 对交易的抽象
+ *
+ * 交易的规范二进制编码（多字节整数均为大端序）：
+ *    输入个数（2字节） + 各输入（outpoint + utxo） + 输出个数（2字节） + 各输出utxo（utxo的编码见UTXO）
+ *    + 签名长度（2字节） + 签名 + 公钥长度（2字节） + 公钥（X.509编码） + 时间戳（8字节）
+ *
+ * 输入、输出个数及签名、公钥的长度超出编码的范围时，构造交易抛出IllegalArgumentException，
+ * 输出个数还需小于UTXO.NULL_INDEX，使每个输出下标都能编码为outpoint
+ *
+ * 交易哈希（txid）为该编码的SHA256哈希值，在构造交易时计算，交易创建后不再改变；
+ * 随后把各个输出绑定为outpoint (txid, 下标)，输出已属于其他交易时使用其副本，不修改调用方传入的数组
+ *
+ * 构造时复制输入、输出数组及签名，get方法也返回副本，交易创建后其内容不能再被修改，与txid保持一致；
+ * 否则修改后的交易仍会以原txid命中验签结果缓存
  */
 public class Transaction {
 
@@ -17,24 +33,47 @@ public class Transaction {
     private final PublicKey sendPublicKey; // 交易发送方的公钥，方便矿工和其他节点进行验签，确保交易未被篡改
     private final long timestamp;
 
+    private final byte[] txId;
+
     public Transaction(UTXO[] inUtxos, UTXO[] outUtxos, byte[] sendSign, PublicKey sendPublicKey, long timestamp) {
-        this.inUtxos = inUtxos;
-        this.outUtxos = outUtxos;
-        this.sendSign = sendSign;
+        this.inUtxos = inUtxos.clone();
+        this.sendSign = sendSign.clone();
         this.sendPublicKey = sendPublicKey;
         this.timestamp = timestamp;
+        UTXO[] outputs = outUtxos.clone();
+        this.txId = SecurityUtil.sha256Digest(toBytes(this.inUtxos, outputs));
+        bindOutputs(txId, outputs);
+        this.outUtxos = outputs;
+    }
+
+    /**
+     * 把输出绑定到本交易，已属于其他交易的输出替换为副本
+     */
+    private static void bindOutputs(byte[] txId, UTXO[] outUtxos) {
+        for (int i = 0; i < outUtxos.length; ++i) {
+            if (!outUtxos[i].bind(txId, i)) {
+                outUtxos[i] = outUtxos[i].copy();
+                outUtxos[i].bind(txId, i);
+            }
+        }
     }
 
+    /**
+     * @return 输入数组的副本
+     */
     public UTXO[] getInUtxos() {
-        return inUtxos;
+        return inUtxos.clone();
     }
 
+    /**
+     * @return 输出数组的副本
+     */
     public UTXO[] getOutUtxos() {
-        return outUtxos;
+        return outUtxos.clone();
     }
 
     public byte[] getSendSign() {
-        return sendSign;
+        return sendSign.clone();
     }
 
     public PublicKey getSendPublicKey() {
@@ -45,6 +84,107 @@ public class Transaction {
         return timestamp;
     }
 
+    /**
+     * 交易的哈希（txid），即Merkle树的叶子节点
+     *
+     * @return 交易二进制编码的32字节SHA256哈希值，调用方不能修改返回的数组
+     */
+    public byte[] getTxId() {
+        return txId;
+    }
+
+    /**
+     * 验证交易发送方对输入和输出的签名（签名数据见SecurityUtil.utxos2Bytes），
+     * 先查询共用的验签结果缓存，交易入池时验签通过后，打包区块时不会再做ECDSA验签
+     *
+     * @return 签名是否正确
+     */
+    public boolean verifySignature() {
+        SignatureCache signatureCache = SignatureCache.getShared();
+        if (signatureCache.contains(getTxId(), sendPublicKey, sendSign)) {
+            return true;
+        }
+        if (!SecurityUtil.verifyUtxos(inUtxos, outUtxos, sendSign, sendPublicKey)) {
+            return false;
+        }
+        signatureCache.add(getTxId(), sendPublicKey, sendSign);
+        return true;
+    }
+
+    /**
+     * @return 交易的规范二进制编码
+     */
+    public byte[] toBytes() {
+        return toBytes(inUtxos, outUtxos);
+    }
+
+    private byte[] toBytes(UTXO[] inUtxos, UTXO[] outUtxos) {
+        byte[] publicKeyEncoded = sendPublicKey.getEncoded();
+        checkLength("input count", inUtxos.length, 0xffff);
+        checkLength("output count", outUtxos.length, UTXO.NULL_INDEX);
+        checkLength("signature length", sendSign.length, 0xffff);
+        checkLength("public key length", publicKeyEncoded.length, 0xffff);
+        int size = 2 + 2 + 2 + sendSign.length + 2 + publicKeyEncoded.length + 8;
+        for (UTXO utxo : inUtxos) {
+            size += UTXO.OUTPOINT_SIZE + utxo.encodedSize();
+        }
+        for (UTXO utxo : outUtxos) {
+            size += utxo.encodedSize();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putShort((short) inUtxos.length);
+        for (UTXO utxo : inUtxos) {
+            utxo.writeOutPointTo(buffer);
+            utxo.writeTo(buffer);
+        }
+        buffer.putShort((short) outUtxos.length);
+        for (UTXO utxo : outUtxos) {
+            utxo.writeTo(buffer);
+        }
+        buffer.putShort((short) sendSign.length);
+        buffer.put(sendSign);
+        buffer.putShort((short) publicKeyEncoded.length);
+        buffer.put(publicKeyEncoded);
+        buffer.putLong(timestamp);
+        return buffer.array();
+    }
+
+    private static void checkLength(String field, int length, int max) {
+        if (length > max) {
+            throw new IllegalArgumentException(field + " out of range: " + length + " > " + max);
+        }
+    }
+
+    /**
+     * 从规范二进制编码还原交易
+     *
+     * @param data 见toBytes
+     * @return 还原的交易，其txid与原交易相同
+     */
+    public static Transaction fromBytes(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        UTXO[] inUtxos = new UTXO[buffer.getShort() & 0xffff];
+        for (int i = 0; i < inUtxos.length; ++i) {
+            inUtxos[i] = UTXO.readInputFrom(buffer);
+        }
+        UTXO[] outUtxos = new UTXO[buffer.getShort() & 0xffff];
+        for (int i = 0; i < outUtxos.length; ++i) {
+            outUtxos[i] = UTXO.readFrom(buffer);
+        }
+        byte[] sendSign = new byte[buffer.getShort() & 0xffff];
+        buffer.get(sendSign);
+        byte[] publicKeyEncoded = new byte[buffer.getShort() & 0xffff];
+        buffer.get(publicKeyEncoded);
+        long timestamp = buffer.getLong();
+        PublicKey sendPublicKey;
+        try {
+            sendPublicKey = SecurityUtil.decodePublicKey(publicKeyEncoded);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("invalid public key in transaction", e);
+        }
+        return new Transaction(inUtxos, outUtxos, sendSign, sendPublicKey, timestamp);
+    }
+
     @Override
     public String toString() {
         return "\nTransaction{" +
@@ -4,13 +4,26 @@ import java.util.*;
 
 /**
  * 交易池
+ *
+ * utxoSet 按outpoint记录交易池中以及已被取走但尚未上链的交易所使用的输入，防止这些utxo被再次花费；
+ * 矿工取走的一批交易上链后，需调用release释放这些输入
+ *
+ * 交易池不验签，调用者需在放入前验签（见TransactionProducer），以免持有交易池的锁时执行ECDSA验签
+ *
+ * 交易入池时在持有交易池的锁时确认其输入仍在链上的utxo集合中：矿工先把区块加入链，之后才调用release，
+ * 因此输入要么已从链上的utxo集合中删除，要么仍被交易池记录，不会在两者之间被再次花费
+ *
+ * 交易入池时即把交易哈希加入增量Merkle树（MerkleAccumulator），交易池满时Merkle根只需O(log n)次哈希即可得到，
+ * 矿工不必在取走交易之后再从头计算
  */
 public class TransactionPool {
 
     private final List<Transaction> transactions;
     private final int capacity;
 
-    private final Set<UTXO> utxoSet = new HashSet<>();
+    private final OutPointMap utxoSet = new OutPointMap();
+
+    private final MerkleAccumulator merkleAccumulator = new MerkleAccumulator();
 
 
     public TransactionPool(int capacity) {
@@ -18,27 +31,65 @@ public class TransactionPool {
         this.capacity = capacity;
     }
 
-    public void put(Transaction transaction) {
-        // 检查交易池本次交易中是否出现双花交易，临时哈希表暂存本次
-        for (UTXO utxo: transaction.getInUtxos()) {
-            // 如果包含已使用的utxo，则拒绝本次交易进入交易池
-            if (utxoSet.contains(utxo)) {
+    /**
+     * 需在持有交易池的锁时调用；交易的输入已被链上的区块花费，或与交易池中的交易双花时不放入
+     *
+     * @param transaction 已验签的交易
+     * @param blockChain 区块链，用于确认输入仍未被花费
+     */
+    public void put(Transaction transaction, BlockChain blockChain) {
+        if (!blockChain.isSpendable(transaction)) {
+            return;
+        }
+        // 检查本次交易是否与交易池中的交易双花，同时存入本次所有的输入UTXO
+        UTXO[] inUtxos = transaction.getInUtxos();
+        for (int i = 0; i < inUtxos.length; ++i) {
+            UTXO utxo = inUtxos[i];
+            // 没有outpoint的输入无法判断是否双花；包含已使用的utxo（或本交易重复使用同一utxo），则拒绝本次交易进入交易池
+            if (!utxo.hasOutPoint() || utxoSet.put(utxo.getTxId(), utxo.getOutputIndex(), 0) != OutPointMap.NO_VALUE) {
+                // 撤销本次交易已存入的输入
+                for (int j = 0; j < i; ++j) {
+                    utxoSet.remove(inUtxos[j].getTxId(), inUtxos[j].getOutputIndex());
+                }
                 return;
             }
         }
-        // 存入本次所有的输入UTXO
-        utxoSet.addAll(Arrays.asList(transaction.getInUtxos()));
         transactions.add(transaction);
+        merkleAccumulator.add(transaction.getTxId());
     }
 
     public Transaction[] getAll() {
         Transaction[] ret = new Transaction[capacity];
         transactions.toArray(ret);
         transactions.clear();
-        utxoSet.clear();
+        merkleAccumulator.clear();
         return ret;
     }
 
+    /**
+     * 获取交易池中当前所有交易构成的Merkle树，需在getAll之前调用
+     *
+     * @return 叶子顺序与getAll返回的交易顺序一致的Merkle树
+     */
+    public MerkleTree getMerkleTree() {
+        return merkleAccumulator.toMerkleTree();
+    }
+
+    /**
+     * 释放一批已上链（或被丢弃）的交易所使用的输入
+     *
+     * @param releasedTransactions getAll取走的交易
+     */
+    public synchronized void release(Transaction[] releasedTransactions) {
+        for (Transaction transaction : releasedTransactions) {
+            for (UTXO utxo : transaction.getInUtxos()) {
+                if (utxo.hasOutPoint()) {
+                    utxoSet.remove(utxo.getTxId(), utxo.getOutputIndex());
+                }
+            }
+        }
+    }
+
     public boolean isFull() {
         return transactions.size() >= capacity;
     }
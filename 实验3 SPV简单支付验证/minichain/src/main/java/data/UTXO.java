@@ -1,16 +1,58 @@
 package data;
 
+import script.Script;
+import script.ScriptInterpreter;
 import utils.SecurityUtil;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.PublicKey;
 import java.util.Arrays;
-import java.util.Stack;
 
+/**
+ * 未花费的交易输出
+ *
+ * 每个utxo带有编译好的锁定脚本（见Script），默认为P2PKH：OP_DUP OP_HASH160 <PubHash> OP_EQUALVERIFY OP_CHECKSIG，
+ * 也可以使用多重签名等自定义的锁定脚本，此时公钥哈希字段保存锁定脚本的HASH160
+ *
+ * 二进制编码（见Transaction.toBytes，交易签名数据也使用该编码，见SecurityUtil.utxos2Bytes）：
+ *    钱包地址长度（1字节） + 钱包地址（ASCII，Base58编码） + 数额（4字节，大端序） + 公钥哈希长度（1字节） + 公钥哈希
+ *    + 自定义锁定脚本长度（2字节，P2PKH为0） + 自定义锁定脚本
+ *
+ * utxo由outpoint（产生它的交易的txid + 在该交易输出中的下标）唯一标识，equals/hashCode只比较outpoint，
+ * 从磁盘或网络还原的utxo与链上的utxo相等：
+ *    1. 交易的输出在构造交易时绑定outpoint（见Transaction），输出的编码中不包含outpoint，由所在交易推出
+ *    2. 交易的输入在编码中先写出outpoint（txid 32字节 + 下标2字节），再写utxo本身
+ * 尚未绑定outpoint的utxo（如测试中单独构造的utxo）只与自身相等，作为输入时编码为全0的txid与下标0xffff
+ *
+ * 编码中的长度字段都有固定的宽度，构造时检查各字段不超出范围（钱包地址只能是ASCII字符），
+ * 超出时抛出IllegalArgumentException，而不是在编码时截断，否则不同的utxo可能得到相同的编码
+ */
 public class UTXO {
 
+    /**
+     * 输入的outpoint编码的字节数
+     */
+    public static final int OUTPOINT_SIZE = 32 + 2;
+    /**
+     * 未绑定的utxo编码使用的下标，一笔交易的输出下标都小于该值
+     */
+    public static final int NULL_INDEX = 0xffff;
+
     private final String walletAddress;
     private final int amount;
     private final byte[] publicKeyHash;
+    private final Script lockingScript;
+    /**
+     * 是否为由公钥哈希生成的P2PKH锁定脚本，是则编码中不需要保存锁定脚本
+     */
+    private final boolean payToPublicKeyHash;
+
+    /**
+     * outpoint，在所在交易的构造函数中绑定，随交易一起发布
+     */
+    private byte[] txId;
+    private int outputIndex = -1;
 
     /**
      * 构建一个UTXO
@@ -19,51 +61,203 @@ public class UTXO {
      * @param publicKey 交易获得方的公钥（公钥是公开的）
      */
     public UTXO(String walletAddress, int amount, PublicKey publicKey) {
+        // 对公钥进行哈希摘要: RIPEMD160(SHA256(PubK)，作为解锁脚本数据
+        this(walletAddress, amount, SecurityUtil.ripemd160Digest(
+                SecurityUtil.sha256Digest(publicKey.getEncoded())));
+    }
+
+    /**
+     * 构建一个使用自定义锁定脚本的UTXO，如多重签名
+     * @param walletAddress 交易获得方的钱包地址
+     * @param amount 比特币数额
+     * @param lockingScript 锁定脚本
+     */
+    public UTXO(String walletAddress, int amount, Script lockingScript) {
+        checkAddress(walletAddress);
+        if (lockingScript.size() > 0xffff) {
+            throw new IllegalArgumentException("locking script too long: " + lockingScript.size());
+        }
         this.walletAddress = walletAddress;
         this.amount = amount;
-        // 对公钥进行哈希摘要: RIPEMD160(SHA256(PubK)，作为解锁脚本数据
-        publicKeyHash = SecurityUtil.ripemd160Digest(
-                SecurityUtil.sha256Digest(publicKey.getEncoded()));
+        this.publicKeyHash = SecurityUtil.ripemd160Digest(SecurityUtil.sha256Digest(lockingScript.toBytes()));
+        this.lockingScript = lockingScript;
+        this.payToPublicKeyHash = false;
+    }
+
+    private UTXO(String walletAddress, int amount, byte[] publicKeyHash) {
+        this(walletAddress, amount, publicKeyHash, Script.payToPublicKeyHash(publicKeyHash), true);
+    }
+
+    private UTXO(String walletAddress, int amount, byte[] publicKeyHash, Script lockingScript,
+                 boolean payToPublicKeyHash) {
+        checkAddress(walletAddress);
+        if (publicKeyHash.length > 0xff) {
+            throw new IllegalArgumentException("public key hash too long: " + publicKeyHash.length);
+        }
+        this.walletAddress = walletAddress;
+        this.amount = amount;
+        this.publicKeyHash = publicKeyHash;
+        this.lockingScript = lockingScript;
+        this.payToPublicKeyHash = payToPublicKeyHash;
+    }
+
+    /**
+     * 钱包地址的编码为1字节长度 + ASCII字符
+     */
+    private static void checkAddress(String walletAddress) {
+        if (walletAddress.length() > 0xff) {
+            throw new IllegalArgumentException("wallet address too long: " + walletAddress.length());
+        }
+        for (int i = 0; i < walletAddress.length(); ++i) {
+            if (walletAddress.charAt(i) >= 0x80) {
+                throw new IllegalArgumentException("wallet address is not ASCII: " + walletAddress);
+            }
+        }
+    }
+
+    /**
+     * 把该utxo绑定为交易txId的第outputIndex个输出
+     *
+     * @return 绑定成功，或已绑定为相同的outpoint时返回true；已属于其他交易时返回false，此时应使用copy()
+     */
+    boolean bind(byte[] txId, int outputIndex) {
+        if (outputIndex < 0 || outputIndex >= NULL_INDEX) {
+            throw new IllegalArgumentException("output index out of range: " + outputIndex);
+        }
+        if (this.txId == null) {
+            this.txId = txId;
+            this.outputIndex = outputIndex;
+            return true;
+        }
+        return this.outputIndex == outputIndex && Arrays.equals(this.txId, txId);
+    }
+
+    /**
+     * @return 内容相同、尚未绑定outpoint的utxo
+     */
+    UTXO copy() {
+        return new UTXO(walletAddress, amount, publicKeyHash, lockingScript, payToPublicKeyHash);
+    }
+
+    /**
+     * @return 二进制编码的字节数
+     */
+    public int encodedSize() {
+        return 1 + walletAddress.length() + 4 + 1 + publicKeyHash.length + 2
+                + (payToPublicKeyHash ? 0 : lockingScript.size());
+    }
+
+    /**
+     * 将该utxo的二进制编码写入buffer
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.put((byte) walletAddress.length());
+        buffer.put(walletAddress.getBytes(StandardCharsets.US_ASCII));
+        buffer.putInt(amount);
+        buffer.put((byte) publicKeyHash.length);
+        buffer.put(publicKeyHash);
+        if (payToPublicKeyHash) {
+            buffer.putShort((short) 0);
+        } else {
+            buffer.putShort((short) lockingScript.size());
+            buffer.put(lockingScript.toBytes());
+        }
+    }
+
+    /**
+     * 将作为交易输入时的outpoint写入buffer，未绑定时写入全0的txid与下标0xffff
+     */
+    public void writeOutPointTo(ByteBuffer buffer) {
+        if (txId == null) {
+            buffer.put(new byte[32]);
+            buffer.putShort((short) NULL_INDEX);
+        } else {
+            buffer.put(txId);
+            buffer.putShort((short) outputIndex);
+        }
+    }
+
+    /**
+     * 从buffer的当前位置读取一个交易输入：outpoint + utxo的二进制编码
+     */
+    static UTXO readInputFrom(ByteBuffer buffer) {
+        byte[] txId = new byte[32];
+        buffer.get(txId);
+        int outputIndex = buffer.getShort() & 0xffff;
+        UTXO utxo = readFrom(buffer);
+        if (outputIndex != NULL_INDEX || !Arrays.equals(txId, new byte[32])) {
+            utxo.bind(txId, outputIndex);
+        }
+        return utxo;
+    }
+
+    /**
+     * 由持久化的字段还原已绑定outpoint的utxo，见UtxoStore
+     *
+     * @param script 自定义锁定脚本，P2PKH为空数组
+     */
+    static UTXO restore(String walletAddress, int amount, byte[] publicKeyHash, byte[] script,
+                        byte[] txId, int outputIndex) {
+        return restore(walletAddress, amount, publicKeyHash, script.length == 0 ? null : Script.compile(script),
+                txId, outputIndex);
+    }
+
+    /**
+     * 由保存的字段还原已绑定outpoint的utxo，见UtxoSet
+     *
+     * @param lockingScript 自定义锁定脚本，P2PKH为null
+     */
+    static UTXO restore(String walletAddress, int amount, byte[] publicKeyHash, Script lockingScript,
+                        byte[] txId, int outputIndex) {
+        UTXO utxo = lockingScript == null ? new UTXO(walletAddress, amount, publicKeyHash)
+                : new UTXO(walletAddress, amount, publicKeyHash, lockingScript, false);
+        utxo.bind(txId, outputIndex);
+        return utxo;
     }
 
     /**
-     * 模拟utxo的解锁脚本，只有使用对应的私钥签名和公钥，正确解锁才能使用该utxo作为交易输入
+     * 从buffer的当前位置读取一个utxo的二进制编码
+     */
+    static UTXO readFrom(ByteBuffer buffer) {
+        byte[] address = new byte[buffer.get() & 0xff];
+        buffer.get(address);
+        int amount = buffer.getInt();
+        byte[] publicKeyHash = new byte[buffer.get() & 0xff];
+        buffer.get(publicKeyHash);
+        byte[] script = new byte[buffer.getShort() & 0xffff];
+        buffer.get(script);
+        String walletAddress = new String(address, StandardCharsets.US_ASCII);
+        if (script.length == 0) {
+            return new UTXO(walletAddress, amount, publicKeyHash);
+        }
+        return new UTXO(walletAddress, amount, Script.compile(script));
+    }
+
+    /**
+     * 执行utxo的解锁脚本，只有使用对应的私钥签名和公钥，正确解锁才能使用该utxo作为交易输入
      * @param sign 账户私钥签名，这里我们这么约定:签名数据为公钥二进制数据
      * @param publicKey 公钥
      * @return
      */
     public boolean unlockScript(byte[] sign, PublicKey publicKey) {
-        Stack<byte[]> stack = new Stack<>();
-        // <sig> 签名入栈
-        // 栈内: <Sig>
-        stack.push(sign);
-        // <PubK> 公钥入栈
-        // 栈内: <Sig> <PubK>
-        stack.push(publicKey.getEncoded());
-        // DUP 复制一份栈顶数据, peek()为java栈容器获取栈顶元素的函数
-        // 栈内: <Sig> <PubK> <PubK>
-        stack.push(stack.peek());
-        // HASH160 弹出栈顶元素，进行哈希摘要: RIPEMD160(SHA256(PubK)，并将其入栈
-        // 栈内: <Sig> <PubK> <PubHash>
-        byte[] data = stack.pop();  // 栈顶元素就是PubK
-        stack.push(SecurityUtil.ripemd160Digest(SecurityUtil.sha256Digest(data)));
-        // <PubHash> utxo先前保存的公钥哈希入栈
-        // 栈内: <Sig> <PubK> <PubHash> <PubHash>
-        stack.push(publicKeyHash);
-        // EQUALVERIFY 比较栈顶的两个公钥哈希是否相同，不相同则解锁失败
-        // 栈内: <Sig> <PubK>
-        byte[] publicKeyHash1 = stack.pop();    // 出栈并返回栈顶元素
-        byte[] publicKeyHash2 = stack.pop();
-        if (!Arrays.equals(publicKeyHash1, publicKeyHash2)) {   // 一一比较比特数组内的每一个数据是否相等
-            return false;
-        }
-        // CHECKSIG 检查签名是否正确，正确则入栈 TRUE;
-        // 栈内:
-        byte[] publicKeyEncoded = stack.pop(); // 这里弹出的是二进制，在这里无法用来验签，故仍用 PublicKey形式的公钥验签
-        byte[] sign1 = stack.pop();
-        // 比特币网络中因为其脚本支持操作少的特性，需要入栈再检查，这里验证正确我们就直接返回了
-        // 栈内: TRUE (验证正确情况下）
-        return SecurityUtil.verify(publicKey.getEncoded(), sign1, publicKey);
+        byte[] publicKeyEncoded = publicKey.getEncoded();
+        // 解锁脚本: <Sig> <PubK>
+        return unlockScript(Script.unlocking(sign, publicKeyEncoded), publicKeyEncoded);
+    }
+
+    /**
+     * 依次执行解锁脚本和本utxo的锁定脚本，对P2PKH：
+     *    <Sig> <PubK> 入栈，DUP 复制公钥，HASH160 计算公钥哈希，<PubHash> 入栈，
+     *    EQUALVERIFY 比较两个公钥哈希，CHECKSIG 用公钥验证签名
+     *
+     * 同一个编译好的解锁脚本可以用于多个utxo，公钥的哈希和解码只会进行一次
+     *
+     * @param unlocking 编译好的解锁脚本
+     * @param message 解锁签名的签名数据，这里约定为公钥的二进制数据
+     * @return 是否解锁成功
+     */
+    public boolean unlockScript(Script unlocking, byte[] message) {
+        return ScriptInterpreter.get().verify(unlocking, lockingScript, message);
     }
 
     public String getWalletAddress() {
@@ -78,10 +272,67 @@ public class UTXO {
         return publicKeyHash;
     }
 
+    public Script getLockingScript() {
+        return lockingScript;
+    }
+
+    /**
+     * @return 锁定脚本是否为由公钥哈希生成的P2PKH脚本
+     */
+    boolean isPayToPublicKeyHash() {
+        return payToPublicKeyHash;
+    }
+
+    /**
+     * @return 是否已绑定outpoint
+     */
+    public boolean hasOutPoint() {
+        return txId != null;
+    }
+
+    /**
+     * @return 产生该utxo的交易的txid，未绑定时为null，调用方不能修改返回的数组
+     */
+    public byte[] getTxId() {
+        return txId;
+    }
+
+    /**
+     * @return 在产生它的交易的输出中的下标，未绑定时为-1
+     */
+    public int getOutputIndex() {
+        return outputIndex;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof UTXO)) {
+            return false;
+        }
+        UTXO other = (UTXO) o;
+        return txId != null && other.txId != null && outputIndex == other.outputIndex && Arrays.equals(txId, other.txId);
+    }
+
+    /**
+     * 未绑定outpoint时为对象的默认哈希值，因此绑定前的utxo不要放入哈希表
+     */
+    @Override
+    public int hashCode() {
+        if (txId == null) {
+            return System.identityHashCode(this);
+        }
+        return ((txId[0] & 0xff) << 24 | (txId[1] & 0xff) << 16 | (txId[2] & 0xff) << 8 | (txId[3] & 0xff))
+                * 31 + outputIndex;
+    }
+
     @Override
     public String toString() {
         return "\n\tUTXO{" +
-                "walletAddress='" + walletAddress + '\'' +
+                "outPoint=" + (txId == null ? "null" : SecurityUtil.bytes2HexString(txId) + ":" + outputIndex) +
+                ", walletAddress='" + walletAddress + '\'' +
                 ", amount=" + amount +
                 ", publicKeyHash=" + SecurityUtil.bytes2HexString(publicKeyHash) +
                 '}';
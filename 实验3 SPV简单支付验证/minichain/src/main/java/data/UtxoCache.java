@@ -0,0 +1,361 @@
+package data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * UtxoStore之上的堆内缓存，类似比特币的dbcache，区块的应用只修改内存，按批次写入文件
+ *
+ * 每个缓存条目是一个outpoint，有两个标记：
+ *    FRESH: utxo在上次刷新之后产生，文件中没有，被花费时直接删除条目，从不写入文件
+ *    SPENT: 文件中存在的utxo在上次刷新之后被花费，刷新时从文件中删除
+ * 两个标记都没有的条目是从文件读入的干净条目，供重复查询使用
+ *
+ * 每应用flushInterval个区块，或缓存估算占用的内存超过memoryBudget时，把所有FRESH和SPENT条目作为一个批次写入UtxoStore
+ * （删除按索引槽位排序，见UtxoStore.write），文件中的区块高度随之推进；超过内存预算时刷新后同时清空干净条目。
+ * 刷新时每个FRESH或SPENT条目会在UtxoStore中产生若干堆内脏页（索引、记录、链表前后的记录、地址表项），
+ * 这部分内存也计入估算，一个批次的脏页同样受内存预算限制
+ * 崩溃后重新打开UtxoStore，得到的是最后一次刷新时的状态
+ *
+ * 条目的组织与UtxoSet相同：OutPointMap索引到槽位，FRESH条目按地址串成双向链表；
+ * 每个地址另记录自上次刷新以来余额的变化，查询时与文件中的结果合并
+ *
+ * 该类不是线程安全的，由BlockChain在持有自身的锁时访问
+ *
+ */
+public class UtxoCache implements UtxoView, Closeable {
+
+    private static final int NONE = -1;
+    private static final byte FRESH = 1;
+    private static final byte SPENT = 2;
+
+    /**
+     * 每个条目除utxo的公钥哈希与脚本外估算占用的内存（utxo对象、txid、索引及数组中的位置）
+     */
+    private static final int ENTRY_OVERHEAD = 256;
+
+    /**
+     * 每个FRESH或SPENT条目刷新时在UtxoStore中最多修改的页数：索引（向前移动可能跨页）、记录、链表前后的记录、地址表项
+     */
+    private static final int STORE_PAGES_PER_ENTRY = 5;
+    private static final long DIRTY_ENTRY_COST = (long) STORE_PAGES_PER_ENTRY * MappedPageFile.PAGE_SIZE;
+
+    private final UtxoStore store;
+    private final long memoryBudget;
+    private final int flushInterval;
+
+    private final OutPointMap slotIndex = new OutPointMap();
+    private UTXO[] slots = new UTXO[16];
+    private byte[] flags = new byte[16];
+    private int[] next = new int[16];
+    private int[] prev = new int[16];
+    private int used = 0;
+    private int freeHead = NONE;
+    private long memoryUsage = 0;
+
+    /**
+     * 钱包地址 -> 该地址FRESH条目的链表及自上次刷新以来的余额变化
+     */
+    private final Map<String, AddressDelta> addresses = new HashMap<>();
+    private long sizeDelta = 0;
+    private long amountDelta = 0;
+    private int height;
+    private int unflushedBlocks = 0;
+
+    /**
+     * @param store 持久化的utxo集合，之后只通过该缓存访问
+     * @param memoryBudget 缓存估算占用内存的上限（字节）
+     * @param flushInterval 每应用多少个区块刷新一次
+     */
+    public UtxoCache(UtxoStore store, long memoryBudget, int flushInterval) {
+        this.store = store;
+        this.memoryBudget = memoryBudget;
+        this.flushInterval = flushInterval;
+        this.height = store.getHeight();
+    }
+
+    @Override
+    public void apply(Transaction[] transactions, int height) {
+        BlockValidator.check(this, transactions);
+        for (Transaction transaction : transactions) {
+            for (UTXO utxo : transaction.getInUtxos()) {
+                spend(utxo);
+            }
+            for (UTXO utxo : transaction.getOutUtxos()) {
+                create(utxo);
+            }
+        }
+        this.height = height;
+        if (++unflushedBlocks >= flushInterval || memoryUsage > memoryBudget) {
+            flush();
+        }
+    }
+
+    private void spend(UTXO utxo) {
+        long value = slotIndex.get(utxo.getTxId(), utxo.getOutputIndex());
+        if (value == OutPointMap.NO_VALUE) {
+            // 已由BlockValidator确认其在文件中存在，按文件中保存的utxo（而不是交易中的输入）记账，与UtxoSet、UtxoStore一致
+            UTXO stored = store.get(utxo.getTxId(), utxo.getOutputIndex());
+            int slot = allocate(stored, SPENT);
+            slotIndex.put(stored.getTxId(), stored.getOutputIndex(), slot);
+            addBalance(stored, -1);
+            return;
+        }
+        int slot = (int) value;
+        addBalance(slots[slot], -1);
+        if (flags[slot] == FRESH) {
+            // 刷新前产生又被花费，不写入文件
+            slotIndex.remove(utxo.getTxId(), utxo.getOutputIndex());
+            unlinkFresh(slot);
+            release(slot);
+        } else {
+            flags[slot] = SPENT;
+            memoryUsage += DIRTY_ENTRY_COST;
+        }
+    }
+
+    private void create(UTXO utxo) {
+        if (slotIndex.containsKey(utxo.getTxId(), utxo.getOutputIndex())) {
+            // BlockValidator已确认outpoint不在集合中，只可能是被花费后尚未刷新的outpoint以相同的txid再次产生
+            throw new IllegalStateException("outpoint is recreated before the spend is flushed");
+        }
+        int slot = allocate(utxo, FRESH);
+        slotIndex.put(utxo.getTxId(), utxo.getOutputIndex(), slot);
+        AddressDelta delta = delta(utxo.getWalletAddress());
+        prev[slot] = delta.tail;
+        next[slot] = NONE;
+        if (delta.tail == NONE) {
+            delta.head = slot;
+        } else {
+            next[delta.tail] = slot;
+        }
+        delta.tail = slot;
+        ++delta.count;
+        addBalance(utxo, 1);
+    }
+
+    /**
+     * 按加入或删除一个utxo更新地址余额、utxo个数及总额的变化
+     */
+    private void addBalance(UTXO utxo, int sign) {
+        delta(utxo.getWalletAddress()).balance += sign * (long) utxo.getAmount();
+        sizeDelta += sign;
+        amountDelta += sign * (long) utxo.getAmount();
+    }
+
+    private AddressDelta delta(String walletAddress) {
+        AddressDelta delta = addresses.get(walletAddress);
+        if (delta == null) {
+            delta = new AddressDelta();
+            addresses.put(walletAddress, delta);
+        }
+        return delta;
+    }
+
+    private void unlinkFresh(int slot) {
+        AddressDelta delta = addresses.get(slots[slot].getWalletAddress());
+        if (prev[slot] == NONE) {
+            delta.head = next[slot];
+        } else {
+            next[prev[slot]] = next[slot];
+        }
+        if (next[slot] == NONE) {
+            delta.tail = prev[slot];
+        } else {
+            prev[next[slot]] = prev[slot];
+        }
+        --delta.count;
+    }
+
+    private int allocate(UTXO utxo, byte flag) {
+        int slot;
+        if (freeHead != NONE) {
+            slot = freeHead;
+            freeHead = next[slot];
+        } else {
+            if (used == slots.length) {
+                slots = Arrays.copyOf(slots, used * 2);
+                flags = Arrays.copyOf(flags, used * 2);
+                next = Arrays.copyOf(next, used * 2);
+                prev = Arrays.copyOf(prev, used * 2);
+            }
+            slot = used++;
+        }
+        slots[slot] = utxo;
+        flags[slot] = flag;
+        memoryUsage += footprint(slot);
+        return slot;
+    }
+
+    private void release(int slot) {
+        memoryUsage -= footprint(slot);
+        slots[slot] = null;
+        next[slot] = freeHead;
+        freeHead = slot;
+    }
+
+    /**
+     * @return 条目估算占用的内存，FRESH和SPENT条目另加刷新时UtxoStore中脏页的大小
+     */
+    private long footprint(int slot) {
+        UTXO utxo = slots[slot];
+        long size = ENTRY_OVERHEAD + utxo.getPublicKeyHash().length + utxo.getLockingScript().size();
+        return flags[slot] == 0 ? size : size + DIRTY_ENTRY_COST;
+    }
+
+    /**
+     * 把所有FRESH和SPENT条目作为一个批次写入文件；FRESH条目变为干净条目，SPENT条目被删除，
+     * 刷新后仍超过内存预算时清空缓存
+     */
+    public void flush() {
+        List<UTXO> spends = new ArrayList<>();
+        List<UTXO> creates = new ArrayList<>();
+        for (int slot = 0; slot < used; ++slot) {
+            if (slots[slot] != null && flags[slot] == SPENT) {
+                spends.add(slots[slot]);
+            }
+        }
+        // 按地址链表的顺序加入，文件中每个地址的utxo保持产生的顺序
+        for (AddressDelta delta : addresses.values()) {
+            for (int slot = delta.head; slot != NONE; slot = next[slot]) {
+                creates.add(slots[slot]);
+            }
+        }
+        if (!spends.isEmpty() || !creates.isEmpty() || height != store.getHeight()) {
+            store.write(spends, creates, height);
+        }
+
+        for (int slot = 0; slot < used; ++slot) {
+            if (slots[slot] == null) {
+                continue;
+            }
+            if (flags[slot] == SPENT) {
+                slotIndex.remove(slots[slot].getTxId(), slots[slot].getOutputIndex());
+                release(slot);
+            } else if (flags[slot] == FRESH) {
+                memoryUsage -= DIRTY_ENTRY_COST;
+                flags[slot] = 0;
+            }
+        }
+        addresses.clear();
+        sizeDelta = 0;
+        amountDelta = 0;
+        unflushedBlocks = 0;
+        if (memoryUsage > memoryBudget) {
+            clear();
+        }
+    }
+
+    private void clear() {
+        slotIndex.clear();
+        slots = new UTXO[16];
+        flags = new byte[16];
+        next = new int[16];
+        prev = new int[16];
+        used = 0;
+        freeHead = NONE;
+        memoryUsage = 0;
+    }
+
+    @Override
+    public UTXO get(byte[] txId, int outputIndex) {
+        long value = slotIndex.get(txId, outputIndex);
+        if (value != OutPointMap.NO_VALUE) {
+            int slot = (int) value;
+            return flags[slot] == SPENT ? null : slots[slot];
+        }
+        UTXO utxo = store.get(txId, outputIndex);
+        if (utxo != null && memoryUsage < memoryBudget) {
+            slotIndex.put(txId, outputIndex, allocate(utxo, (byte) 0));
+        }
+        return utxo;
+    }
+
+    @Override
+    public UTXO[] getUtxos(String walletAddress) {
+        UTXO[] stored = store.getUtxos(walletAddress);
+        AddressDelta delta = addresses.get(walletAddress);
+        if (delta == null) {
+            return stored;
+        }
+        List<UTXO> utxos = new ArrayList<>(stored.length + delta.count);
+        for (UTXO utxo : stored) {
+            long value = slotIndex.get(utxo.getTxId(), utxo.getOutputIndex());
+            if (value == OutPointMap.NO_VALUE || flags[(int) value] != SPENT) {
+                utxos.add(utxo);
+            }
+        }
+        for (int slot = delta.head; slot != NONE; slot = next[slot]) {
+            utxos.add(slots[slot]);
+        }
+        return utxos.toArray(new UTXO[0]);
+    }
+
+    @Override
+    public long getBalance(String walletAddress) {
+        AddressDelta delta = addresses.get(walletAddress);
+        return store.getBalance(walletAddress) + (delta == null ? 0 : delta.balance);
+    }
+
+    @Override
+    public long[] getBalances(String[] walletAddresses) {
+        long[] balances = new long[walletAddresses.length];
+        for (int i = 0; i < walletAddresses.length; ++i) {
+            balances[i] = getBalance(walletAddresses[i]);
+        }
+        return balances;
+    }
+
+    @Override
+    public long getTotalAmount() {
+        return store.getTotalAmount() + amountDelta;
+    }
+
+    @Override
+    public long size() {
+        return store.size() + sizeDelta;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return 缓存条目估算占用的内存（字节），包括FRESH和SPENT条目刷新时在UtxoStore中产生的脏页
+     */
+    public long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    /**
+     * @return 尚未写入文件的区块数
+     */
+    public int getUnflushedBlocks() {
+        return unflushedBlocks;
+    }
+
+    /**
+     * 刷新后关闭文件
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        store.close();
+    }
+
+    /**
+     * 一个地址自上次刷新以来的FRESH链表及余额变化
+     */
+    private static class AddressDelta {
+        int head = NONE;
+        int tail = NONE;
+        int count = 0;
+        long balance = 0;
+    }
+}
@@ -0,0 +1,362 @@
+package data;
+
+import script.Script;
+
+import java.util.Arrays;
+
+/**
+ * 链上当前所有未花费的utxo，按outpoint索引，并按钱包地址分组
+ *
+ * 区块上链时按交易顺序依次应用：删除交易的输入（被花费的utxo），加入交易的输出（新产生的utxo），
+ * 与从创世区块开始遍历整条链得到的结果相同；查询某地址的utxo只需一次哈希查找，与链的高度无关
+ *
+ * 不保存utxo对象，每个utxo占用一个槽位，各字段保存在按槽位下标的基本类型数组中：txid、输出下标、数额、
+ * 地址号、锁定条件号，以及同一地址的链表next/prev；outpoint到槽位的索引为OutPointMap。
+ * 被释放的槽位通过next数组串成空闲链表复用，查询时才由这些字段还原utxo对象（与链上的utxo按outpoint相等）
+ *
+ * 钱包地址与锁定条件（公钥哈希，以及自定义锁定脚本）分别在地址表、锁定条件表中只保存一份：
+ *    地址表：地址号 -> 地址、该地址utxo链表的首尾槽位、utxo个数、余额，地址本身由开放定址的哈希表索引
+ *    锁定条件表：锁定条件号 -> 公钥哈希、自定义脚本（P2PKH为null）、引用计数，引用计数为0时释放
+ * 两张表的大小与地址、密钥的个数有关，与utxo的个数无关
+ *
+ * 加入和删除utxo时同时按差值更新该地址的余额及所有未花费utxo的总额，查询余额、总额均为O(1)
+ *
+ * 该类不是线程安全的，由BlockChain在持有自身的锁时访问
+ *
+ */
+public class UtxoSet implements UtxoView {
+
+    private static final int NONE = -1;
+    private static final int TXID_SIZE = 32;
+
+    private final OutPointMap slotIndex = new OutPointMap();
+    private byte[] txIds = new byte[16 * TXID_SIZE];
+    private int[] outputIndexes = new int[16];
+    private int[] amounts = new int[16];
+    private int[] addressIds = new int[16];
+    private int[] lockIds = new int[16];
+    private int[] next = new int[16];
+    private int[] prev = new int[16];
+    private int used = 0;
+    private int freeHead = NONE;
+    private long totalAmount = 0;
+    private int height = -1;
+
+    /**
+     * 地址表，按地址号；addressTable为开放定址的哈希表，保存地址号 + 1（0为空）。地址加入后不再删除
+     */
+    private String[] addresses = new String[16];
+    private int[] heads = new int[16];
+    private int[] tails = new int[16];
+    private int[] counts = new int[16];
+    private long[] balances = new long[16];
+    private int addressCount = 0;
+    private int[] addressTable = new int[32];
+
+    /**
+     * 锁定条件表，按锁定条件号；lockTable为开放定址的哈希表，保存锁定条件号 + 1（0为空）。
+     * 已释放的项通过lockRefs串成空闲链表
+     */
+    private byte[][] lockHashes = new byte[16][];
+    private Script[] lockScripts = new Script[16];
+    private int[] lockRefs = new int[16];
+    private int lockUsed = 0;
+    private int lockCount = 0;
+    private int lockFreeHead = NONE;
+    private int[] lockTable = new int[32];
+
+    @Override
+    public void apply(Transaction[] transactions, int height) {
+        BlockValidator.check(this, transactions);
+        for (Transaction transaction : transactions) {
+            applyChecked(transaction);
+        }
+        this.height = height;
+    }
+
+    /**
+     * 应用一笔交易：先删除其输入，再加入其输出（输出在构造交易时已绑定outpoint）
+     *
+     * @throws IllegalArgumentException 输入不存在或与保存的utxo不一致，或输出已存在，此时集合保持不变
+     */
+    public void apply(Transaction transaction) {
+        BlockValidator.check(this, new Transaction[]{transaction});
+        applyChecked(transaction);
+    }
+
+    private void applyChecked(Transaction transaction) {
+        for (UTXO utxo : transaction.getInUtxos()) {
+            unlink((int) slotIndex.remove(utxo.getTxId(), utxo.getOutputIndex()));
+        }
+        for (UTXO utxo : transaction.getOutUtxos()) {
+            slotIndex.put(utxo.getTxId(), utxo.getOutputIndex(), link(utxo));
+        }
+    }
+
+    @Override
+    public UTXO[] getUtxos(String walletAddress) {
+        int address = findAddress(walletAddress, false);
+        if (address == NONE) {
+            return new UTXO[0];
+        }
+        UTXO[] result = new UTXO[counts[address]];
+        int i = 0;
+        for (int slot = heads[address]; slot != NONE; slot = next[slot]) {
+            result[i++] = toUtxo(slot);
+        }
+        return result;
+    }
+
+    @Override
+    public UTXO get(byte[] txId, int outputIndex) {
+        long slot = slotIndex.get(txId, outputIndex);
+        return slot == OutPointMap.NO_VALUE ? null : toUtxo((int) slot);
+    }
+
+    @Override
+    public long getBalance(String walletAddress) {
+        int address = findAddress(walletAddress, false);
+        return address == NONE ? 0 : balances[address];
+    }
+
+    @Override
+    public long[] getBalances(String[] walletAddresses) {
+        long[] balances = new long[walletAddresses.length];
+        for (int i = 0; i < walletAddresses.length; ++i) {
+            balances[i] = getBalance(walletAddresses[i]);
+        }
+        return balances;
+    }
+
+    @Override
+    public long getTotalAmount() {
+        return totalAmount;
+    }
+
+    public boolean contains(UTXO utxo) {
+        return utxo.hasOutPoint() && slotIndex.containsKey(utxo.getTxId(), utxo.getOutputIndex());
+    }
+
+    @Override
+    public long size() {
+        return slotIndex.size();
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 由槽位中的字段还原utxo
+     */
+    private UTXO toUtxo(int slot) {
+        byte[] txId = Arrays.copyOfRange(txIds, slot * TXID_SIZE, (slot + 1) * TXID_SIZE);
+        int lock = lockIds[slot];
+        return UTXO.restore(addresses[addressIds[slot]], amounts[slot], lockHashes[lock], lockScripts[lock],
+                txId, outputIndexes[slot]);
+    }
+
+    /**
+     * 分配一个槽位存放utxo的字段，并接到其地址链表的末尾
+     */
+    private int link(UTXO utxo) {
+        int slot;
+        if (freeHead != NONE) {
+            slot = freeHead;
+            freeHead = next[slot];
+        } else {
+            if (used == outputIndexes.length) {
+                int capacity = used * 2;
+                txIds = Arrays.copyOf(txIds, capacity * TXID_SIZE);
+                outputIndexes = Arrays.copyOf(outputIndexes, capacity);
+                amounts = Arrays.copyOf(amounts, capacity);
+                addressIds = Arrays.copyOf(addressIds, capacity);
+                lockIds = Arrays.copyOf(lockIds, capacity);
+                next = Arrays.copyOf(next, capacity);
+                prev = Arrays.copyOf(prev, capacity);
+            }
+            slot = used++;
+        }
+        System.arraycopy(utxo.getTxId(), 0, txIds, slot * TXID_SIZE, TXID_SIZE);
+        outputIndexes[slot] = utxo.getOutputIndex();
+        amounts[slot] = utxo.getAmount();
+        lockIds[slot] = acquireLock(utxo);
+        int address = findAddress(utxo.getWalletAddress(), true);
+        addressIds[slot] = address;
+        prev[slot] = tails[address];
+        next[slot] = NONE;
+        if (tails[address] == NONE) {
+            heads[address] = slot;
+        } else {
+            next[tails[address]] = slot;
+        }
+        tails[address] = slot;
+        ++counts[address];
+        balances[address] += utxo.getAmount();
+        totalAmount += utxo.getAmount();
+        return slot;
+    }
+
+    /**
+     * 从地址链表中摘除槽位，并放回空闲链表
+     */
+    private void unlink(int slot) {
+        int address = addressIds[slot];
+        balances[address] -= amounts[slot];
+        totalAmount -= amounts[slot];
+        if (prev[slot] == NONE) {
+            heads[address] = next[slot];
+        } else {
+            next[prev[slot]] = next[slot];
+        }
+        if (next[slot] == NONE) {
+            tails[address] = prev[slot];
+        } else {
+            prev[next[slot]] = prev[slot];
+        }
+        --counts[address];
+        releaseLock(lockIds[slot]);
+        next[slot] = freeHead;
+        freeHead = slot;
+    }
+
+    private static int spread(int h) {
+        h *= 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @param create 地址不存在时是否加入地址表
+     * @return 地址号，不存在且不加入时返回NONE
+     */
+    private int findAddress(String walletAddress, boolean create) {
+        int mask = addressTable.length - 1;
+        for (int i = spread(walletAddress.hashCode()) & mask; ; i = (i + 1) & mask) {
+            int id = addressTable[i] - 1;
+            if (id == NONE) {
+                if (!create) {
+                    return NONE;
+                }
+                return addAddress(walletAddress, i);
+            }
+            if (addresses[id].equals(walletAddress)) {
+                return id;
+            }
+        }
+    }
+
+    private int addAddress(String walletAddress, int tableSlot) {
+        int id = addressCount++;
+        if (id == addresses.length) {
+            addresses = Arrays.copyOf(addresses, id * 2);
+            heads = Arrays.copyOf(heads, id * 2);
+            tails = Arrays.copyOf(tails, id * 2);
+            counts = Arrays.copyOf(counts, id * 2);
+            balances = Arrays.copyOf(balances, id * 2);
+        }
+        addresses[id] = walletAddress;
+        heads[id] = NONE;
+        tails[id] = NONE;
+        addressTable[tableSlot] = id + 1;
+        if (addressCount * 4 > addressTable.length * 3) {
+            int[] table = new int[addressTable.length * 2];
+            int mask = table.length - 1;
+            for (int i = 0; i < addressCount; ++i) {
+                int j = spread(addresses[i].hashCode()) & mask;
+                while (table[j] != 0) {
+                    j = (j + 1) & mask;
+                }
+                table[j] = i + 1;
+            }
+            addressTable = table;
+        }
+        return id;
+    }
+
+    private static int lockHash(byte[] publicKeyHash, boolean payToPublicKeyHash) {
+        return spread(Arrays.hashCode(publicKeyHash) * 31 + (payToPublicKeyHash ? 1 : 0));
+    }
+
+    /**
+     * @return utxo的锁定条件号，不存在时加入锁定条件表；引用计数加1
+     */
+    private int acquireLock(UTXO utxo) {
+        byte[] publicKeyHash = utxo.getPublicKeyHash();
+        boolean payToPublicKeyHash = utxo.isPayToPublicKeyHash();
+        int mask = lockTable.length - 1;
+        int i = lockHash(publicKeyHash, payToPublicKeyHash) & mask;
+        for (; lockTable[i] != 0; i = (i + 1) & mask) {
+            int id = lockTable[i] - 1;
+            if ((lockScripts[id] == null) == payToPublicKeyHash && Arrays.equals(lockHashes[id], publicKeyHash)) {
+                ++lockRefs[id];
+                return id;
+            }
+        }
+        int id;
+        if (lockFreeHead != NONE) {
+            id = lockFreeHead;
+            lockFreeHead = lockRefs[id];
+        } else {
+            id = lockUsed++;
+            if (id == lockHashes.length) {
+                lockHashes = Arrays.copyOf(lockHashes, id * 2);
+                lockScripts = Arrays.copyOf(lockScripts, id * 2);
+                lockRefs = Arrays.copyOf(lockRefs, id * 2);
+            }
+        }
+        lockHashes[id] = publicKeyHash;
+        lockScripts[id] = payToPublicKeyHash ? null : utxo.getLockingScript();
+        lockRefs[id] = 1;
+        lockTable[i] = id + 1;
+        if (++lockCount * 4 > lockTable.length * 3) {
+            rehashLocks(lockTable.length * 2);
+        }
+        return id;
+    }
+
+    /**
+     * 引用计数减1，为0时从锁定条件表中删除，并向前移动探测链上后续的条目
+     */
+    private void releaseLock(int id) {
+        if (--lockRefs[id] > 0) {
+            return;
+        }
+        int mask = lockTable.length - 1;
+        int hole = lockHash(lockHashes[id], lockScripts[id] == null) & mask;
+        while (lockTable[hole] != id + 1) {
+            hole = (hole + 1) & mask;
+        }
+        for (int i = (hole + 1) & mask; lockTable[i] != 0; i = (i + 1) & mask) {
+            int other = lockTable[i] - 1;
+            int home = lockHash(lockHashes[other], lockScripts[other] == null) & mask;
+            boolean reachable = hole <= i ? hole < home && home <= i : hole < home || home <= i;
+            if (!reachable) {
+                lockTable[hole] = lockTable[i];
+                hole = i;
+            }
+        }
+        lockTable[hole] = 0;
+        lockHashes[id] = null;
+        lockScripts[id] = null;
+        lockRefs[id] = lockFreeHead;
+        lockFreeHead = id;
+        --lockCount;
+    }
+
+    private void rehashLocks(int size) {
+        int[] table = new int[size];
+        int mask = size - 1;
+        for (int id = 0; id < lockUsed; ++id) {
+            if (lockHashes[id] == null) {
+                continue;
+            }
+            int i = lockHash(lockHashes[id], lockScripts[id] == null) & mask;
+            while (table[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            table[i] = id + 1;
+        }
+        lockTable = table;
+    }
+}
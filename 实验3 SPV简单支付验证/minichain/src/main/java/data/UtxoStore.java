@@ -0,0 +1,819 @@
+package data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 基于内存映射文件的utxo集合，utxo不占用Java堆
+ *
+ * 数据文件（utxo-<代>.dat）由固定长度的几个区域组成，按页对齐，任何字段都不跨页：
+ *    1. 文件头（1页）：容量、utxo个数、地址个数、货币总量、已应用的区块高度、空闲记录链表等
+ *    2. outpoint索引：开放定址的哈希表，每项8字节：记录号 + 1（0为空） + 哈希指纹，删除时向前移动后续条目
+ *    3. utxo记录：每条128字节：txid、输出下标、数额、地址项号、同地址链表的next/prev、公钥哈希、自定义脚本的位置
+ *    4. 地址表：开放定址的哈希表，每项128字节：钱包地址、该地址utxo链表的首尾记录号、utxo个数、余额
+ * 自定义锁定脚本（如多重签名）长度不定，追加写入utxo-<代>.blob，记录中只保存其偏移和长度；P2PKH脚本由公钥哈希生成，不需要保存
+ *
+ * 每个区块的修改作为一个批次提交（见MappedPageFile）：修改先写入堆内的脏页，提交时先写blob并force，
+ * 再写重做日志并force，最后写回映射区；任何时刻崩溃，重新打开后状态都停留在某个区块之后。
+ * 打开时只映射文件、必要时重放一次日志，不需要把utxo读入内存，启动时间与utxo个数无关
+ *
+ * 记录或地址表将满时，按两倍容量重建为新的一代文件（只复制仍有utxo的地址，同时压缩blob中已花费的脚本），
+ * 新文件构建完成并force后切换到新文件，再原子地替换CURRENT文件中记录的代号，最后尽量删除旧文件（删除失败时下次open再删除）
+ *
+ * 哈希表的槽位由随机盐混合得到（地址使用SipHash-2-4），外部无法构造落在同一探测链上的大量键；该类不是线程安全的
+ *
+ */
+public class UtxoStore implements UtxoView, Closeable {
+
+    private static final long MAGIC = 0x4d4348555458534fL;
+    private static final int VERSION = 1;
+    private static final int NONE = -1;
+
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 8;
+    private static final int H_INDEX_SLOTS = 12;
+    private static final int H_RECORD_CAPACITY = 16;
+    private static final int H_ADDRESS_SLOTS = 20;
+    private static final int H_SIZE = 24;
+    private static final int H_ADDRESS_COUNT = 32;
+    private static final int H_FREE_HEAD = 36;
+    private static final int H_HIGH_WATER = 40;
+    private static final int H_HEIGHT = 44;
+    private static final int H_TOTAL_AMOUNT = 48;
+    private static final int H_BLOB_LENGTH = 56;
+    private static final int H_SALT0 = 64;
+    private static final int H_SALT1 = 72;
+
+    private static final int INDEX_ENTRY_SIZE = 8;
+
+    private static final int RECORD_SIZE = 128;
+    private static final int R_TXID = 0;
+    private static final int R_OUTPUT_INDEX = 32;
+    private static final int R_AMOUNT = 36;
+    private static final int R_ADDRESS = 40;
+    private static final int R_NEXT = 44;
+    private static final int R_PREV = 48;
+    private static final int R_SCRIPT_LENGTH = 52;
+    private static final int R_SCRIPT_OFFSET = 56;
+    private static final int R_PKH_LENGTH = 64;
+    private static final int R_PKH = 65;
+    private static final int MAX_PKH_LENGTH = RECORD_SIZE - R_PKH;
+
+    private static final int ADDRESS_ENTRY_SIZE = 128;
+    private static final int A_LENGTH = 0;
+    private static final int A_ADDRESS = 1;
+    private static final int A_HEAD = 96;
+    private static final int A_TAIL = 100;
+    private static final int A_COUNT = 104;
+    private static final int A_BALANCE = 112;
+    private static final int MAX_ADDRESS_LENGTH = A_HEAD - A_ADDRESS;
+
+    private static final String CURRENT = "CURRENT";
+
+    private final Path directory;
+    private long generation;
+    private MappedPageFile file;
+    private FileChannel blob;
+    private int indexSlots;
+    private int recordCapacity;
+    private int addressSlots;
+    private long indexOffset;
+    private long recordsOffset;
+    private long addressesOffset;
+    private long salt0;
+    private long salt1;
+
+    /**
+     * 当前批次追加的自定义脚本，提交时写入blob文件
+     */
+    private final ByteArrayOutputStream pendingScripts = new ByteArrayOutputStream();
+    private final byte[] scratch = new byte[MAX_ADDRESS_LENGTH];
+
+    private UtxoStore(Path directory, long generation, MappedPageFile file, FileChannel blob) {
+        this.directory = directory;
+        this.generation = generation;
+        this.file = file;
+        this.blob = blob;
+        readLayout();
+    }
+
+    /**
+     * 打开目录中的utxo集合，目录为空时创建，崩溃后打开会恢复到最后一个完整提交的区块
+     *
+     * @param directory 数据目录
+     * @param capacity 新建时的初始容量（utxo个数），之后按需扩容
+     */
+    public static UtxoStore open(Path directory, int capacity) throws IOException {
+        Files.createDirectories(directory);
+        Path current = directory.resolve(CURRENT);
+        if (!Files.exists(current)) {
+            return create(directory, capacity);
+        }
+        long generation = Long.parseLong(new String(Files.readAllBytes(current), StandardCharsets.US_ASCII).trim());
+        deleteOtherGenerations(directory, generation);
+        Path dataFile = dataFile(directory, generation);
+        MappedPageFile file = new MappedPageFile(dataFile, journalFile(directory, generation), Files.size(dataFile));
+        if (file.getLong(H_MAGIC) != MAGIC || file.getInt(H_VERSION) != VERSION) {
+            file.close();
+            throw new IOException("not a utxo store: " + dataFile);
+        }
+        FileChannel blob = FileChannel.open(blobFile(directory, generation), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // 丢弃最后一次未完成提交追加的脚本
+        blob.truncate(file.getLong(H_BLOB_LENGTH));
+        return new UtxoStore(directory, generation, file, blob);
+    }
+
+    /**
+     * 在目录中创建一个空的utxo集合，原有的数据被删除
+     *
+     * @param directory 数据目录
+     * @param capacity 初始容量（utxo个数），之后按需扩容
+     */
+    public static UtxoStore create(Path directory, int capacity) throws IOException {
+        Files.createDirectories(directory);
+        long generation = currentGeneration(directory) + 1;
+        UtxoStore store = build(directory, generation, capacity, capacity);
+        store.finishBuild(-1);
+        switchGeneration(directory, generation);
+        return store;
+    }
+
+    /**
+     * 以直接写模式创建新一代的空文件
+     */
+    private static UtxoStore build(Path directory, long generation, int recordCapacity, int addressCapacity)
+            throws IOException {
+        recordCapacity = Math.max(16, recordCapacity);
+        int indexSlots = tableSize(recordCapacity);
+        int addressSlots = tableSize(Math.max(16, addressCapacity));
+        long size = roundToPage(addressesOffset(indexSlots, recordCapacity) + (long) addressSlots * ADDRESS_ENTRY_SIZE);
+
+        Path dataFile = dataFile(directory, generation);
+        Files.deleteIfExists(dataFile);
+        Files.deleteIfExists(journalFile(directory, generation));
+        Files.deleteIfExists(blobFile(directory, generation));
+        MappedPageFile file = new MappedPageFile(dataFile, journalFile(directory, generation), size);
+        file.setDirect(true);
+        SecureRandom random = new SecureRandom();
+        file.putLong(H_MAGIC, MAGIC);
+        file.putInt(H_VERSION, VERSION);
+        file.putInt(H_INDEX_SLOTS, indexSlots);
+        file.putInt(H_RECORD_CAPACITY, recordCapacity);
+        file.putInt(H_ADDRESS_SLOTS, addressSlots);
+        file.putInt(H_FREE_HEAD, NONE);
+        file.putLong(H_SALT0, random.nextLong());
+        file.putLong(H_SALT1, random.nextLong());
+        FileChannel blob = FileChannel.open(blobFile(directory, generation), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new UtxoStore(directory, generation, file, blob);
+    }
+
+    /**
+     * 结束直接写模式：写入blob及文件头并force
+     */
+    private void finishBuild(int height) throws IOException {
+        long blobLength = writePendingScripts(0);
+        file.putLong(H_BLOB_LENGTH, blobLength);
+        file.putInt(H_HEIGHT, height);
+        file.commit();
+        file.setDirect(false);
+    }
+
+    private void readLayout() {
+        indexSlots = file.getInt(H_INDEX_SLOTS);
+        recordCapacity = file.getInt(H_RECORD_CAPACITY);
+        addressSlots = file.getInt(H_ADDRESS_SLOTS);
+        salt0 = file.getLong(H_SALT0);
+        salt1 = file.getLong(H_SALT1);
+        indexOffset = MappedPageFile.PAGE_SIZE;
+        recordsOffset = roundToPage(indexOffset + (long) indexSlots * INDEX_ENTRY_SIZE);
+        addressesOffset = addressesOffset(indexSlots, recordCapacity);
+    }
+
+    private static long addressesOffset(int indexSlots, int recordCapacity) {
+        long recordsOffset = roundToPage(MappedPageFile.PAGE_SIZE + (long) indexSlots * INDEX_ENTRY_SIZE);
+        return roundToPage(recordsOffset + (long) recordCapacity * RECORD_SIZE);
+    }
+
+    /**
+     * @return 负载因子不超过3/4的哈希表槽位数（2的幂）
+     */
+    private static int tableSize(int capacity) {
+        long needed = capacity * 4L / 3 + 1;
+        int slots = 16;
+        while (slots < needed) {
+            slots <<= 1;
+        }
+        return slots;
+    }
+
+    private static long roundToPage(long position) {
+        return (position + MappedPageFile.PAGE_SIZE - 1) / MappedPageFile.PAGE_SIZE * MappedPageFile.PAGE_SIZE;
+    }
+
+    @Override
+    public void apply(Transaction[] transactions, int height) {
+        BlockValidator.check(this, transactions);
+        List<UTXO> spends = new ArrayList<>();
+        Set<UTXO> creates = new LinkedHashSet<>();
+        for (Transaction transaction : transactions) {
+            for (UTXO utxo : transaction.getInUtxos()) {
+                // 同一区块中产生又被花费的utxo不写入文件
+                if (utxo.hasOutPoint() && !creates.remove(utxo)) {
+                    spends.add(utxo);
+                }
+            }
+            for (UTXO utxo : transaction.getOutUtxos()) {
+                creates.add(utxo);
+            }
+        }
+        write(spends, creates, height);
+    }
+
+    /**
+     * 作为一个批次原子地写入：先删除spends，再加入creates，最后记录区块高度
+     *
+     * @param spends 被花费的utxo（只用到其outpoint），必须存在于文件中且不重复
+     * @param creates 新产生的utxo，必须已绑定outpoint，不能已存在于文件中，也不能重复
+     * @param height 写入后所处的区块高度
+     * @throws IllegalArgumentException spends或creates不满足上述条件，此时文件保持不变
+     */
+    public void write(Collection<UTXO> spends, Collection<UTXO> creates, int height) {
+        checkBatch(spends, creates);
+        try {
+            // 扩容在批次开始前完成，失败时旧文件保持不变，不需要回滚
+            ensureCapacity(creates.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            long blobStart = file.getLong(H_BLOB_LENGTH);
+            // 按索引槽位顺序删除，同一批次的删除依次访问索引页，减少缺页；删除的先后不影响结果
+            UTXO[] spent = spends.toArray(new UTXO[0]);
+            long[] order = new long[spent.length];
+            for (int i = 0; i < spent.length; ++i) {
+                long home = hashOutPoint(spent[i].getTxId(), spent[i].getOutputIndex()) & (indexSlots - 1);
+                order[i] = home << 32 | i;
+            }
+            Arrays.sort(order);
+            for (long key : order) {
+                UTXO utxo = spent[(int) key];
+                spend(utxo.getTxId(), utxo.getOutputIndex());
+            }
+            for (UTXO utxo : creates) {
+                create(utxo, blobStart);
+            }
+            file.putInt(H_HEIGHT, height);
+            if (pendingScripts.size() > 0) {
+                file.putLong(H_BLOB_LENGTH, writePendingScripts(blobStart));
+            }
+            file.commit();
+        } catch (IOException e) {
+            rollback();
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            rollback();
+            throw e;
+        }
+    }
+
+    /**
+     * 修改文件之前校验一个批次，不满足write的条件时抛出异常
+     */
+    private void checkBatch(Collection<UTXO> spends, Collection<UTXO> creates) {
+        OutPointMap batch = new OutPointMap(spends.size() + creates.size());
+        for (UTXO utxo : spends) {
+            if (!utxo.hasOutPoint() || !contains(utxo.getTxId(), utxo.getOutputIndex())) {
+                throw new IllegalArgumentException("spent utxo does not exist");
+            }
+            if (batch.put(utxo.getTxId(), utxo.getOutputIndex(), 0) != OutPointMap.NO_VALUE) {
+                throw new IllegalArgumentException("utxo is spent twice in one batch");
+            }
+        }
+        for (UTXO utxo : creates) {
+            if (!utxo.hasOutPoint()) {
+                throw new IllegalArgumentException("created utxo has no outpoint");
+            }
+            if (batch.put(utxo.getTxId(), utxo.getOutputIndex(), 1) != OutPointMap.NO_VALUE
+                    || contains(utxo.getTxId(), utxo.getOutputIndex())) {
+                throw new IllegalArgumentException("created utxo already exists");
+            }
+        }
+    }
+
+    private void rollback() {
+        file.rollback();
+        pendingScripts.reset();
+    }
+
+    /**
+     * 把本批次的脚本追加到blob文件并force，之后才能提交引用这些脚本的记录
+     *
+     * @return 追加后blob文件的长度
+     */
+    private long writePendingScripts(long blobStart) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(pendingScripts.toByteArray());
+        long position = blobStart;
+        while (buffer.hasRemaining()) {
+            position += blob.write(buffer, position);
+        }
+        if (position > blobStart) {
+            blob.force(true);
+        }
+        pendingScripts.reset();
+        return position;
+    }
+
+    /**
+     * 本批次之后记录或地址表可能超过容量时，先按两倍容量重建
+     */
+    private void ensureCapacity(int creates) throws IOException {
+        long size = file.getLong(H_SIZE);
+        int addressCount = file.getInt(H_ADDRESS_COUNT);
+        boolean recordsFull = size + creates > recordCapacity;
+        boolean addressesFull = (addressCount + (long) creates) * 4 > addressSlots * 3L;
+        if (recordsFull || addressesFull) {
+            rebuild((int) Math.min(Integer.MAX_VALUE / 2, Math.max(recordCapacity * 2L, size + creates)),
+                    (int) Math.min(Integer.MAX_VALUE / 2, Math.max(addressCount * 2L, addressCount + (long) creates)));
+        }
+    }
+
+    /**
+     * 重建为新一代的文件，只保留仍有utxo的地址，每个地址的utxo保持原有顺序
+     */
+    private void rebuild(int newRecordCapacity, int newAddressCapacity) throws IOException {
+        long newGeneration = generation + 1;
+        UtxoStore target = build(directory, newGeneration, newRecordCapacity, newAddressCapacity);
+        try {
+            for (int entry = 0; entry < addressSlots; ++entry) {
+                long position = addressPosition(entry);
+                if (file.getByte(position + A_LENGTH) == 0 || file.getInt(position + A_COUNT) == 0) {
+                    continue;
+                }
+                String walletAddress = readAddress(entry);
+                for (int slot = file.getInt(position + A_HEAD); slot != NONE; slot = file.getInt(recordPosition(slot) + R_NEXT)) {
+                    target.create(readUtxo(slot, walletAddress), 0);
+                }
+            }
+            target.finishBuild(getHeight());
+        } catch (IOException | RuntimeException e) {
+            // 新一代尚未启用，当前文件不受影响，未完成的文件下次open时删除
+            closeQuietly(target);
+            throw e;
+        }
+
+        // 先切换到新文件，再修改CURRENT；CURRENT写入失败时切换回旧文件，之后的提交不会写入不被打开的一代
+        long oldGeneration = generation;
+        MappedPageFile oldFile = file;
+        FileChannel oldBlob = blob;
+        generation = newGeneration;
+        file = target.file;
+        blob = target.blob;
+        readLayout();
+        try {
+            writeCurrent(directory, newGeneration);
+        } catch (IOException | RuntimeException e) {
+            generation = oldGeneration;
+            file = oldFile;
+            blob = oldBlob;
+            readLayout();
+            closeQuietly(target);
+            throw e;
+        }
+
+        // 旧文件已不再使用，关闭或删除失败（如Windows下仍被映射的文件无法删除）时留给下次open清理
+        closeQuietly(oldFile);
+        closeQuietly(oldBlob);
+        deleteOtherGenerations(directory, newGeneration);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // 只用于释放已不再使用的文件
+        }
+    }
+
+    /**
+     * 原子地把CURRENT指向新的一代，并删除其他代的文件
+     */
+    private static void switchGeneration(Path directory, long generation) throws IOException {
+        writeCurrent(directory, generation);
+        deleteOtherGenerations(directory, generation);
+    }
+
+    /**
+     * 通过临时文件及原子重命名修改CURRENT，崩溃后CURRENT要么是旧的代号，要么是新的代号
+     */
+    private static void writeCurrent(Path directory, long generation) throws IOException {
+        Path temp = directory.resolve(CURRENT + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(Long.toString(generation).getBytes(StandardCharsets.US_ASCII)));
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(CURRENT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static long currentGeneration(Path directory) throws IOException {
+        Path current = directory.resolve(CURRENT);
+        if (!Files.exists(current)) {
+            return 0;
+        }
+        return Long.parseLong(new String(Files.readAllBytes(current), StandardCharsets.US_ASCII).trim());
+    }
+
+    /**
+     * 尽量删除其他代的文件，删除失败的文件不影响当前一代的使用，下次打开时再删除
+     */
+    private static void deleteOtherGenerations(Path directory, long generation) {
+        String keep = "utxo-" + generation + ".";
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "utxo-*")) {
+            for (Path path : stream) {
+                if (!path.getFileName().toString().startsWith(keep)) {
+                    try {
+                        Files.deleteIfExists(path);
+                    } catch (IOException ignored) {
+                        // 文件可能仍被映射（Windows），留给下次open清理
+                    }
+                }
+            }
+        } catch (IOException ignored) {
+            // 同上
+        }
+    }
+
+    private static Path dataFile(Path directory, long generation) {
+        return directory.resolve("utxo-" + generation + ".dat");
+    }
+
+    private static Path journalFile(Path directory, long generation) {
+        return directory.resolve("utxo-" + generation + ".journal");
+    }
+
+    private static Path blobFile(Path directory, long generation) {
+        return directory.resolve("utxo-" + generation + ".blob");
+    }
+
+    /**
+     * 加入一个utxo，调用者保证outpoint不存在（见checkBatch）
+     */
+    private void create(UTXO utxo, long blobStart) {
+        byte[] txId = utxo.getTxId();
+        int outputIndex = utxo.getOutputIndex();
+        long hash = hashOutPoint(txId, outputIndex);
+        if (findEntry(txId, outputIndex, hash) != NONE) {
+            throw new IllegalStateException("duplicate outpoint");
+        }
+        byte[] publicKeyHash = utxo.getPublicKeyHash();
+        if (publicKeyHash.length > MAX_PKH_LENGTH) {
+            throw new IllegalArgumentException("public key hash too long: " + publicKeyHash.length);
+        }
+        int address = findAddress(utxo.getWalletAddress(), true);
+        int slot = allocateRecord();
+        long record = recordPosition(slot);
+        file.putBytes(record + R_TXID, txId, 0, 32);
+        file.putInt(record + R_OUTPUT_INDEX, outputIndex);
+        file.putInt(record + R_AMOUNT, utxo.getAmount());
+        file.putInt(record + R_ADDRESS, address);
+        if (utxo.isPayToPublicKeyHash()) {
+            file.putInt(record + R_SCRIPT_LENGTH, 0);
+        } else {
+            byte[] script = utxo.getLockingScript().toBytes();
+            file.putInt(record + R_SCRIPT_LENGTH, script.length);
+            file.putLong(record + R_SCRIPT_OFFSET, blobStart + pendingScripts.size());
+            pendingScripts.write(script, 0, script.length);
+        }
+        file.putByte(record + R_PKH_LENGTH, (byte) publicKeyHash.length);
+        file.putBytes(record + R_PKH, publicKeyHash, 0, publicKeyHash.length);
+
+        // 接到地址链表的末尾
+        long addressEntry = addressPosition(address);
+        int tail = file.getInt(addressEntry + A_TAIL);
+        file.putInt(record + R_PREV, tail);
+        file.putInt(record + R_NEXT, NONE);
+        if (tail == NONE) {
+            file.putInt(addressEntry + A_HEAD, slot);
+        } else {
+            file.putInt(recordPosition(tail) + R_NEXT, slot);
+        }
+        file.putInt(addressEntry + A_TAIL, slot);
+        file.putInt(addressEntry + A_COUNT, file.getInt(addressEntry + A_COUNT) + 1);
+        file.putLong(addressEntry + A_BALANCE, file.getLong(addressEntry + A_BALANCE) + utxo.getAmount());
+
+        insertEntry(slot, hash);
+        file.putLong(H_SIZE, file.getLong(H_SIZE) + 1);
+        file.putLong(H_TOTAL_AMOUNT, file.getLong(H_TOTAL_AMOUNT) + utxo.getAmount());
+    }
+
+    /**
+     * 删除一个utxo
+     *
+     * @return outpoint不存在时返回false
+     */
+    private boolean spend(byte[] txId, int outputIndex) {
+        int entry = findEntry(txId, outputIndex, hashOutPoint(txId, outputIndex));
+        if (entry == NONE) {
+            return false;
+        }
+        int slot = file.getInt(indexPosition(entry)) - 1;
+        removeEntry(entry);
+
+        long record = recordPosition(slot);
+        int amount = file.getInt(record + R_AMOUNT);
+        int prev = file.getInt(record + R_PREV);
+        int next = file.getInt(record + R_NEXT);
+        long addressEntry = addressPosition(file.getInt(record + R_ADDRESS));
+        if (prev == NONE) {
+            file.putInt(addressEntry + A_HEAD, next);
+        } else {
+            file.putInt(recordPosition(prev) + R_NEXT, next);
+        }
+        if (next == NONE) {
+            file.putInt(addressEntry + A_TAIL, prev);
+        } else {
+            file.putInt(recordPosition(next) + R_PREV, prev);
+        }
+        file.putInt(addressEntry + A_COUNT, file.getInt(addressEntry + A_COUNT) - 1);
+        file.putLong(addressEntry + A_BALANCE, file.getLong(addressEntry + A_BALANCE) - amount);
+
+        // 放回空闲记录链表
+        file.putInt(record + R_NEXT, file.getInt(H_FREE_HEAD));
+        file.putInt(H_FREE_HEAD, slot);
+        file.putLong(H_SIZE, file.getLong(H_SIZE) - 1);
+        file.putLong(H_TOTAL_AMOUNT, file.getLong(H_TOTAL_AMOUNT) - amount);
+        return true;
+    }
+
+    private int allocateRecord() {
+        int slot = file.getInt(H_FREE_HEAD);
+        if (slot != NONE) {
+            file.putInt(H_FREE_HEAD, file.getInt(recordPosition(slot) + R_NEXT));
+            return slot;
+        }
+        slot = file.getInt(H_HIGH_WATER);
+        file.putInt(H_HIGH_WATER, slot + 1);
+        return slot;
+    }
+
+    private long hashOutPoint(byte[] txId, int outputIndex) {
+        return mix(readLong(txId, 0) ^ salt0 ^ (outputIndex * 0x9e3779b97f4a7c15L));
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @return outpoint在索引中的项号，不存在时返回NONE
+     */
+    private int findEntry(byte[] txId, int outputIndex, long hash) {
+        int mask = indexSlots - 1;
+        int fingerprint = (int) (hash >>> 32);
+        long k0 = readLong(txId, 0), k1 = readLong(txId, 8), k2 = readLong(txId, 16), k3 = readLong(txId, 24);
+        for (int entry = (int) hash & mask; ; entry = (entry + 1) & mask) {
+            long position = indexPosition(entry);
+            int reference = file.getInt(position);
+            if (reference == 0) {
+                return NONE;
+            }
+            if (file.getInt(position + 4) != fingerprint) {
+                continue;
+            }
+            long record = recordPosition(reference - 1);
+            if (file.getInt(record + R_OUTPUT_INDEX) == outputIndex && file.getLong(record + R_TXID) == k0
+                    && file.getLong(record + R_TXID + 8) == k1 && file.getLong(record + R_TXID + 16) == k2
+                    && file.getLong(record + R_TXID + 24) == k3) {
+                return entry;
+            }
+        }
+    }
+
+    private void insertEntry(int slot, long hash) {
+        int mask = indexSlots - 1;
+        int entry = (int) hash & mask;
+        while (file.getInt(indexPosition(entry)) != 0) {
+            entry = (entry + 1) & mask;
+        }
+        file.putInt(indexPosition(entry), slot + 1);
+        file.putInt(indexPosition(entry) + 4, (int) (hash >>> 32));
+    }
+
+    /**
+     * 删除索引项，并向前移动探测链上后续的条目（与OutPointMap相同）
+     */
+    private void removeEntry(int entry) {
+        int mask = indexSlots - 1;
+        int hole = entry;
+        int next = entry;
+        while (true) {
+            next = (next + 1) & mask;
+            long position = indexPosition(next);
+            int reference = file.getInt(position);
+            if (reference == 0) {
+                break;
+            }
+            long record = recordPosition(reference - 1);
+            long hash = mix(file.getLong(record + R_TXID) ^ salt0
+                    ^ (file.getInt(record + R_OUTPUT_INDEX) * 0x9e3779b97f4a7c15L));
+            int home = (int) hash & mask;
+            boolean reachable = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+            if (!reachable) {
+                file.putInt(indexPosition(hole), reference);
+                file.putInt(indexPosition(hole) + 4, file.getInt(position + 4));
+                hole = next;
+            }
+        }
+        file.putInt(indexPosition(hole), 0);
+        file.putInt(indexPosition(hole) + 4, 0);
+    }
+
+    /**
+     * @param create 地址不存在时是否加入地址表
+     * @return 地址在地址表中的项号，不存在且不加入时返回NONE
+     */
+    private int findAddress(String walletAddress, boolean create) {
+        byte[] bytes = walletAddress.getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length == 0 || bytes.length > MAX_ADDRESS_LENGTH) {
+            throw new IllegalArgumentException("invalid wallet address length: " + bytes.length);
+        }
+        int mask = addressSlots - 1;
+        for (int entry = (int) BlockFilter.sipHash24(salt0, salt1, bytes) & mask; ; entry = (entry + 1) & mask) {
+            long position = addressPosition(entry);
+            int length = file.getByte(position + A_LENGTH) & 0xff;
+            if (length == 0) {
+                if (!create) {
+                    return NONE;
+                }
+                file.putByte(position + A_LENGTH, (byte) bytes.length);
+                file.putBytes(position + A_ADDRESS, bytes, 0, bytes.length);
+                file.putInt(position + A_HEAD, NONE);
+                file.putInt(position + A_TAIL, NONE);
+                file.putInt(H_ADDRESS_COUNT, file.getInt(H_ADDRESS_COUNT) + 1);
+                return entry;
+            }
+            if (length == bytes.length) {
+                file.getBytes(position + A_ADDRESS, scratch, 0, length);
+                boolean equal = true;
+                for (int i = 0; i < length && equal; ++i) {
+                    equal = scratch[i] == bytes[i];
+                }
+                if (equal) {
+                    return entry;
+                }
+            }
+        }
+    }
+
+    private String readAddress(int entry) {
+        long position = addressPosition(entry);
+        int length = file.getByte(position + A_LENGTH) & 0xff;
+        byte[] bytes = new byte[length];
+        file.getBytes(position + A_ADDRESS, bytes, 0, length);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private UTXO readUtxo(int slot, String walletAddress) {
+        long record = recordPosition(slot);
+        byte[] txId = new byte[32];
+        file.getBytes(record + R_TXID, txId, 0, 32);
+        byte[] publicKeyHash = new byte[file.getByte(record + R_PKH_LENGTH) & 0xff];
+        file.getBytes(record + R_PKH, publicKeyHash, 0, publicKeyHash.length);
+        byte[] script = new byte[file.getInt(record + R_SCRIPT_LENGTH)];
+        if (script.length > 0) {
+            ByteBuffer buffer = ByteBuffer.wrap(script);
+            long position = file.getLong(record + R_SCRIPT_OFFSET);
+            try {
+                while (buffer.hasRemaining()) {
+                    int read = blob.read(buffer, position + buffer.position());
+                    if (read < 0) {
+                        throw new IOException("truncated script blob");
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return UTXO.restore(walletAddress, file.getInt(record + R_AMOUNT), publicKeyHash, script, txId,
+                file.getInt(record + R_OUTPUT_INDEX));
+    }
+
+    /**
+     * @return outpoint对应的utxo是否存在，只访问索引，不读取记录
+     */
+    public boolean contains(byte[] txId, int outputIndex) {
+        return findEntry(txId, outputIndex, hashOutPoint(txId, outputIndex)) != NONE;
+    }
+
+    @Override
+    public UTXO get(byte[] txId, int outputIndex) {
+        int entry = findEntry(txId, outputIndex, hashOutPoint(txId, outputIndex));
+        if (entry == NONE) {
+            return null;
+        }
+        int slot = file.getInt(indexPosition(entry)) - 1;
+        return readUtxo(slot, readAddress(file.getInt(recordPosition(slot) + R_ADDRESS)));
+    }
+
+    @Override
+    public UTXO[] getUtxos(String walletAddress) {
+        int address = findAddress(walletAddress, false);
+        if (address == NONE) {
+            return new UTXO[0];
+        }
+        long position = addressPosition(address);
+        UTXO[] utxos = new UTXO[file.getInt(position + A_COUNT)];
+        int i = 0;
+        for (int slot = file.getInt(position + A_HEAD); slot != NONE; slot = file.getInt(recordPosition(slot) + R_NEXT)) {
+            utxos[i++] = readUtxo(slot, walletAddress);
+        }
+        return utxos;
+    }
+
+    @Override
+    public long getBalance(String walletAddress) {
+        int address = findAddress(walletAddress, false);
+        return address == NONE ? 0 : file.getLong(addressPosition(address) + A_BALANCE);
+    }
+
+    @Override
+    public long[] getBalances(String[] walletAddresses) {
+        long[] balances = new long[walletAddresses.length];
+        for (int i = 0; i < walletAddresses.length; ++i) {
+            balances[i] = getBalance(walletAddresses[i]);
+        }
+        return balances;
+    }
+
+    @Override
+    public long getTotalAmount() {
+        return file.getLong(H_TOTAL_AMOUNT);
+    }
+
+    @Override
+    public long size() {
+        return file.getLong(H_SIZE);
+    }
+
+    @Override
+    public int getHeight() {
+        return file.getInt(H_HEIGHT);
+    }
+
+    /**
+     * @return 记录区的容量（utxo个数），超过时重建为两倍容量
+     */
+    public int getCapacity() {
+        return recordCapacity;
+    }
+
+    private long indexPosition(int entry) {
+        return indexOffset + (long) entry * INDEX_ENTRY_SIZE;
+    }
+
+    private long recordPosition(int slot) {
+        return recordsOffset + (long) slot * RECORD_SIZE;
+    }
+
+    private long addressPosition(int entry) {
+        return addressesOffset + (long) entry * ADDRESS_ENTRY_SIZE;
+    }
+
+    private static long readLong(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; ++i) {
+            value = (value << 8) | (data[offset + i] & 0xffL);
+        }
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+        blob.close();
+    }
+}
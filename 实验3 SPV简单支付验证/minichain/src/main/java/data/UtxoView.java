@@ -0,0 +1,62 @@
+package data;
+
+/**
+ * 链上未花费utxo集合的查询与更新接口
+ *
+ * 实现有堆内的UtxoSet，基于内存映射文件、不占用Java堆的UtxoStore，以及UtxoStore之上有界的堆内缓存UtxoCache，
+ * BlockChain根据配置选择（见MiniChainConfig.UTXO_STORE_DIR）
+ *
+ */
+public interface UtxoView {
+
+    /**
+     * 应用一个区块中的所有交易：按交易顺序删除交易的输入，加入交易的输出，一个区块的修改整体生效
+     *
+     * 修改之前先校验（见BlockValidator）：输入必须存在且与保存的utxo一致，同一outpoint不能被花费两次，输出不能已存在
+     *
+     * @param transactions 区块中的交易，按区块中的顺序
+     * @param height 区块高度
+     * @throws IllegalArgumentException 交易不能按顺序应用到当前集合上，此时集合保持不变
+     */
+    void apply(Transaction[] transactions, int height);
+
+    /**
+     * @param txId 产生utxo的交易的txid
+     * @param outputIndex 输出下标
+     * @return 该outpoint对应的未花费utxo，不存在或已被花费时返回null
+     */
+    UTXO get(byte[] txId, int outputIndex);
+
+    /**
+     * @param walletAddress 钱包地址
+     * @return 该地址当前所有未花费的utxo，按加入的顺序排列
+     */
+    UTXO[] getUtxos(String walletAddress);
+
+    /**
+     * @param walletAddress 钱包地址
+     * @return 该地址所有未花费utxo的总额
+     */
+    long getBalance(String walletAddress);
+
+    /**
+     * @param walletAddresses 钱包地址
+     * @return 各地址的余额，与参数按下标对应
+     */
+    long[] getBalances(String[] walletAddresses);
+
+    /**
+     * @return 所有未花费utxo的总额，即当前流通的货币总量
+     */
+    long getTotalAmount();
+
+    /**
+     * @return 未花费utxo的总数
+     */
+    long size();
+
+    /**
+     * @return 最后应用的区块高度，尚未应用任何区块时为-1
+     */
+    int getHeight();
+}
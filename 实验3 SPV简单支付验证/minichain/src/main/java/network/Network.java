@@ -4,13 +4,14 @@ import config.MiniChainConfig;
 import consensus.MinerPeer;
 import consensus.TransactionProducer;
 import data.*;
+import spv.SpvPeer;
+import utils.MinerUtil;
 import utils.SecurityUtil;
 
 import java.nio.charset.StandardCharsets;
 import java.security.KeyPair;
 import java.security.PrivateKey;
 import java.security.PublicKey;
-import java.util.Random;
 
 /**
  * 该类模拟一个网络环境，在该网络中主要有区块链和矿工，另外地，出于工程实现的角度，还有一个交易池和一个生成随机交易的线程
@@ -19,6 +20,7 @@ import java.util.Random;
 public class Network {
 
     private final Account[] accounts;
+    private final SpvPeer[] spvPeers;
     private final TransactionPool transactionPool;
     private final TransactionProducer transactionProducer;
     private final BlockChain blockChain;
@@ -32,10 +34,12 @@ public class Network {
         // 初始化用户和spv节点, 并注册到网络中
         System.out.println("\naccounts and spvPeers config...");
         accounts = new Account[MiniChainConfig.ACCOUNT_NUM];
+        spvPeers = new SpvPeer[MiniChainConfig.ACCOUNT_NUM];
         for (int i = 0; i < MiniChainConfig.ACCOUNT_NUM; ++i) {
             accounts[i] = new Account();
             System.out.println("network register new account: " + accounts[i]);
             // 每个账户创建一个spv轻节点， 并获得与网络的连接
+            spvPeers[i] = new SpvPeer(accounts[i], this);
         }
 
         // 创建交易池，网络中会有交易涌入
@@ -83,13 +87,18 @@ public class Network {
         // 交易数组只有这一个交易
         Transaction[] transactions = { transaction };
         // 前一个区块的哈希
-        String preBlockHash = SecurityUtil.sha256Digest(blockChain.getLatestBlock().toString());
+        String preBlockHash = blockChain.getLatestBlock().getBlockHeader().getHash();
         // 因为本区块只有一个交易，所以merkle根哈希即为该交易的哈希
-        String merkleRootHash = SecurityUtil.sha256Digest(transaction.toString());
+        String merkleRootHash = SecurityUtil.bytes2HexString(transaction.getTxId());
         // 构建区块
-        BlockHeader blockHeader = new BlockHeader(preBlockHash, merkleRootHash, Math.abs(new Random().nextLong()));
+        int bits = blockChain.getNextBits();
+        BlockHeader blockHeader = new BlockHeader(preBlockHash, merkleRootHash, bits, 0);
         BlockBody blockBody = new BlockBody(merkleRootHash, transactions);
         Block block = new Block(blockHeader, blockBody);
+        // 该区块同样需要满足难度条件才能加入链中，这里简单地顺序尝试nonce
+        while (!MinerUtil.hashMeetsTarget(SecurityUtil.sha256Digest(blockHeader.toBytes()), bits)) {
+            blockHeader.setNonce(blockHeader.getNonce() + 1);
+        }
         // 添加到链中
         blockChain.addNewBlock(block);
 
@@ -123,4 +132,8 @@ public class Network {
     public Account[] getAccounts() {
         return accounts;
     }
+
+    public SpvPeer[] getSpvPeers() {
+        return spvPeers;
+    }
 }
@@ -0,0 +1,287 @@
+package script;
+
+import utils.SecurityUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 预先解析（编译）好的脚本
+ *
+ * 脚本的二进制格式与比特币相同，支持的操作码如下：
+ *    OP_0、直接压栈（0x01-0x4b）、OP_PUSHDATA1、OP_PUSHDATA2、OP_1 - OP_16: 压入数据
+ *    OP_VERIFY、OP_DUP、OP_EQUAL、OP_EQUALVERIFY、OP_HASH160、OP_CHECKSIG、OP_CHECKSIGVERIFY、OP_CHECKMULTISIG
+ *
+ * 编译时把每条指令拆分为操作码数组和压栈数据数组，执行时不再解析二进制；
+ * 压栈数据的HASH160结果和解码得到的PublicKey在第一次用到时缓存在脚本上，
+ * 同一个解锁脚本对多个utxo执行时，公钥只会被哈希和解码一次
+ *
+ * 常用的脚本：
+ *    P2PKH锁定脚本: OP_DUP OP_HASH160 <PubHash> OP_EQUALVERIFY OP_CHECKSIG，解锁脚本: <Sig> <PubK>
+ *    多重签名锁定脚本: m <PubK1> ... <PubKn> n OP_CHECKMULTISIG，解锁脚本: <Sig1> ... <Sigm>
+ *    （与比特币不同，OP_CHECKMULTISIG不额外弹出一个无用元素）
+ */
+public final class Script {
+
+    public static final int OP_0 = 0x00;
+    public static final int OP_PUSHDATA1 = 0x4c;
+    public static final int OP_PUSHDATA2 = 0x4d;
+    public static final int OP_1 = 0x51;
+    public static final int OP_16 = 0x60;
+    public static final int OP_VERIFY = 0x69;
+    public static final int OP_DUP = 0x76;
+    public static final int OP_EQUAL = 0x87;
+    public static final int OP_EQUALVERIFY = 0x88;
+    public static final int OP_HASH160 = 0xa9;
+    public static final int OP_CHECKSIG = 0xac;
+    public static final int OP_CHECKSIGVERIFY = 0xad;
+    public static final int OP_CHECKMULTISIG = 0xae;
+
+    /**
+     * 编译后表示压栈指令的操作码，压入的数据见pushData
+     */
+    static final int PUSH = -1;
+
+    private final byte[] program;
+    /**
+     * 每条指令的操作码，压栈指令为PUSH（OP_1 - OP_16同样编译为PUSH）
+     */
+    final int[] ops;
+    /**
+     * 压栈指令压入的数据，其他指令为null
+     */
+    final byte[][] pushData;
+    private final boolean pushOnly;
+
+    /**
+     * 压栈数据的HASH160及公钥的缓存，一个脚本可能同时在多个线程上执行
+     */
+    private final AtomicReferenceArray<byte[]> hash160;
+    private final AtomicReferenceArray<PublicKey> publicKeys;
+
+    private Script(byte[] program, int[] ops, byte[][] pushData) {
+        this.program = program;
+        this.ops = ops;
+        this.pushData = pushData;
+        boolean pushOnly = true;
+        for (int op : ops) {
+            pushOnly &= op == PUSH;
+        }
+        this.pushOnly = pushOnly;
+        this.hash160 = new AtomicReferenceArray<>(ops.length);
+        this.publicKeys = new AtomicReferenceArray<>(ops.length);
+    }
+
+    /**
+     * 解析二进制脚本
+     *
+     * @param program 二进制脚本
+     * @return 编译后的脚本
+     * @throws IllegalArgumentException 脚本中有不支持的操作码或压栈数据不完整
+     */
+    public static Script compile(byte[] program) {
+        int[] ops = new int[program.length];
+        byte[][] pushData = new byte[program.length][];
+        int count = 0;
+        int pc = 0;
+        while (pc < program.length) {
+            int op = program[pc++] & 0xff;
+            int length = -1;
+            if (op == OP_0) {
+                length = 0;
+            } else if (op < OP_PUSHDATA1) {
+                length = op;
+            } else if (op == OP_PUSHDATA1) {
+                checkRemaining(program, pc, 1);
+                length = program[pc++] & 0xff;
+            } else if (op == OP_PUSHDATA2) {
+                checkRemaining(program, pc, 2);
+                length = (program[pc] & 0xff) | (program[pc + 1] & 0xff) << 8;
+                pc += 2;
+            } else if (op >= OP_1 && op <= OP_16) {
+                ops[count] = PUSH;
+                pushData[count++] = new byte[]{(byte) (op - OP_1 + 1)};
+                continue;
+            } else if (op != OP_VERIFY && op != OP_DUP && op != OP_EQUAL && op != OP_EQUALVERIFY && op != OP_HASH160
+                    && op != OP_CHECKSIG && op != OP_CHECKSIGVERIFY && op != OP_CHECKMULTISIG) {
+                throw new IllegalArgumentException("unsupported opcode 0x" + Integer.toHexString(op) + " at " + (pc - 1));
+            }
+            if (length >= 0) {
+                checkRemaining(program, pc, length);
+                ops[count] = PUSH;
+                pushData[count++] = Arrays.copyOfRange(program, pc, pc + length);
+                pc += length;
+            } else {
+                ops[count++] = op;
+            }
+        }
+        return new Script(program.clone(), Arrays.copyOf(ops, count), Arrays.copyOf(pushData, count));
+    }
+
+    private static void checkRemaining(byte[] program, int pc, int length) {
+        if (pc + length > program.length) {
+            throw new IllegalArgumentException("push data exceeds the end of script at " + pc);
+        }
+    }
+
+    /**
+     * @param publicKeyHash 公钥哈希 RIPEMD160(SHA256(PubK))
+     * @return P2PKH锁定脚本: OP_DUP OP_HASH160 <PubHash> OP_EQUALVERIFY OP_CHECKSIG
+     */
+    public static Script payToPublicKeyHash(byte[] publicKeyHash) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(publicKeyHash.length + 5);
+        out.write(OP_DUP);
+        out.write(OP_HASH160);
+        writePush(out, publicKeyHash);
+        out.write(OP_EQUALVERIFY);
+        out.write(OP_CHECKSIG);
+        return compile(out.toByteArray());
+    }
+
+    /**
+     * @param required 需要的签名个数m，1 <= m <= n <= 16
+     * @param publicKeys n个公钥，解锁脚本中的签名需按公钥的顺序排列
+     * @return 多重签名锁定脚本: m <PubK1> ... <PubKn> n OP_CHECKMULTISIG
+     */
+    public static Script multisig(int required, PublicKey... publicKeys) {
+        if (required < 1 || required > publicKeys.length || publicKeys.length > 16) {
+            throw new IllegalArgumentException("invalid multisig " + required + " of " + publicKeys.length);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(OP_1 + required - 1);
+        for (PublicKey publicKey : publicKeys) {
+            writePush(out, publicKey.getEncoded());
+        }
+        out.write(OP_1 + publicKeys.length - 1);
+        out.write(OP_CHECKMULTISIG);
+        return compile(out.toByteArray());
+    }
+
+    /**
+     * @param items 依次压栈的数据，如P2PKH的 <Sig> <PubK>
+     * @return 只包含压栈指令的解锁脚本
+     */
+    public static Script unlocking(byte[]... items) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] item : items) {
+            writePush(out, item);
+        }
+        return compile(out.toByteArray());
+    }
+
+    private static void writePush(ByteArrayOutputStream out, byte[] data) {
+        if (data.length < OP_PUSHDATA1) {
+            out.write(data.length);
+        } else if (data.length <= 0xff) {
+            out.write(OP_PUSHDATA1);
+            out.write(data.length);
+        } else {
+            out.write(OP_PUSHDATA2);
+            out.write(data.length);
+            out.write(data.length >>> 8);
+        }
+        out.write(data, 0, data.length);
+    }
+
+    /**
+     * @return 第index条指令压入数据的HASH160，第一次调用时计算
+     */
+    byte[] hash160(int index) {
+        byte[] hash = hash160.get(index);
+        if (hash == null) {
+            hash = SecurityUtil.ripemd160Digest(SecurityUtil.sha256Digest(pushData[index]));
+            hash160.set(index, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * @return 第index条指令压入的数据解码得到的公钥（X.509编码），第一次调用时解码，无法解码时返回null
+     */
+    PublicKey publicKey(int index) {
+        PublicKey publicKey = publicKeys.get(index);
+        if (publicKey == null) {
+            publicKey = decodePublicKey(pushData[index]);
+            publicKeys.set(index, publicKey);
+        }
+        return publicKey;
+    }
+
+    static PublicKey decodePublicKey(byte[] encoded) {
+        try {
+            return SecurityUtil.decodePublicKey(encoded);
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return 脚本是否只包含压栈指令（解锁脚本必须如此）
+     */
+    public boolean isPushOnly() {
+        return pushOnly;
+    }
+
+    /**
+     * @return 二进制脚本
+     */
+    public byte[] toBytes() {
+        return program.clone();
+    }
+
+    public int size() {
+        return program.length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Script && Arrays.equals(program, ((Script) o).program);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(program);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder stringBuilder = new StringBuilder();
+        for (int i = 0; i < ops.length; ++i) {
+            if (i > 0) {
+                stringBuilder.append(' ');
+            }
+            if (ops[i] == PUSH) {
+                stringBuilder.append('<').append(SecurityUtil.bytes2HexString(pushData[i])).append('>');
+            } else {
+                stringBuilder.append(opName(ops[i]));
+            }
+        }
+        return stringBuilder.toString();
+    }
+
+    private static String opName(int op) {
+        switch (op) {
+            case OP_VERIFY:
+                return "OP_VERIFY";
+            case OP_DUP:
+                return "OP_DUP";
+            case OP_EQUAL:
+                return "OP_EQUAL";
+            case OP_EQUALVERIFY:
+                return "OP_EQUALVERIFY";
+            case OP_HASH160:
+                return "OP_HASH160";
+            case OP_CHECKSIG:
+                return "OP_CHECKSIG";
+            case OP_CHECKSIGVERIFY:
+                return "OP_CHECKSIGVERIFY";
+            case OP_CHECKMULTISIG:
+                return "OP_CHECKMULTISIG";
+            default:
+                return "0x" + Integer.toHexString(op);
+        }
+    }
+}
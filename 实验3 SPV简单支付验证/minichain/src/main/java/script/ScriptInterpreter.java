@@ -0,0 +1,260 @@
+package script;
+
+import utils.SecurityUtil;
+import utils.SignatureCache;
+
+import java.security.PublicKey;
+import java.util.Arrays;
+
+/**
+ * 脚本解释器
+ *
+ * 先执行解锁脚本，再在同一个栈上执行锁定脚本，执行完毕且栈顶为真时解锁成功
+ *
+ * 栈由预先分配的定长数组实现，每个栈元素记录数据所在的数组、长度，以及数据来自哪个脚本的哪条压栈指令；
+ * 来自压栈指令的数据做HASH160、CHECKSIG时直接使用脚本上缓存的哈希和公钥（见Script），
+ * 其他数据的HASH160结果写入该栈位置预先分配的缓冲区，执行过程中解释器本身不分配对象
+ *
+ * 解释器不是线程安全的，每个线程通过get()使用自己的实例
+ *
+ */
+public class ScriptInterpreter {
+
+    private static final int MAX_STACK_SIZE = 64;
+    private static final int HASH_SIZE = SecurityUtil.SHA256_LENGTH;
+
+    private static final byte[] FALSE = new byte[0];
+    private static final byte[] TRUE = new byte[]{1};
+
+    private static final ThreadLocal<ScriptInterpreter> INTERPRETER = new ThreadLocal<ScriptInterpreter>() {
+        @Override
+        protected ScriptInterpreter initialValue() {
+            return new ScriptInterpreter();
+        }
+    };
+
+    private final byte[][] values = new byte[MAX_STACK_SIZE][];
+    private final int[] lengths = new int[MAX_STACK_SIZE];
+    /**
+     * 栈元素来自哪个脚本的哪条压栈指令，计算得到的数据为null和-1
+     */
+    private final Script[] origins = new Script[MAX_STACK_SIZE];
+    private final int[] pushIndexes = new int[MAX_STACK_SIZE];
+    /**
+     * 每个栈位置的HASH160结果缓冲区
+     */
+    private final byte[][] hashBuffers = new byte[MAX_STACK_SIZE][HASH_SIZE];
+    private int top;
+
+    private byte[] message;
+
+    private ScriptInterpreter() {
+    }
+
+    /**
+     * @return 当前线程的解释器
+     */
+    public static ScriptInterpreter get() {
+        return INTERPRETER.get();
+    }
+
+    /**
+     * 执行解锁脚本和锁定脚本
+     *
+     * @param unlocking 解锁脚本，只能包含压栈指令
+     * @param locking 锁定脚本
+     * @param message CHECKSIG / CHECKMULTISIG 所验证的签名数据
+     * @return 是否解锁成功
+     */
+    public boolean verify(Script unlocking, Script locking, byte[] message) {
+        if (!unlocking.isPushOnly()) {
+            return false;
+        }
+        this.message = message;
+        top = 0;
+        try {
+            return run(unlocking) && run(locking) && top > 0 && isTrue(top - 1);
+        } finally {
+            // 不持有数据的引用
+            Arrays.fill(values, 0, MAX_STACK_SIZE, null);
+            Arrays.fill(origins, 0, MAX_STACK_SIZE, null);
+            this.message = null;
+        }
+    }
+
+    private boolean run(Script script) {
+        int[] ops = script.ops;
+        for (int pc = 0; pc < ops.length; ++pc) {
+            switch (ops[pc]) {
+                case Script.PUSH:
+                    if (!push(script.pushData[pc], script.pushData[pc].length, script, pc)) {
+                        return false;
+                    }
+                    break;
+                case Script.OP_VERIFY:
+                    if (top < 1 || !isTrue(--top)) {
+                        return false;
+                    }
+                    break;
+                case Script.OP_DUP:
+                    if (top < 1 || !push(values[top - 1], lengths[top - 1], origins[top - 1], pushIndexes[top - 1])) {
+                        return false;
+                    }
+                    break;
+                case Script.OP_HASH160:
+                    if (top < 1 || !hash160()) {
+                        return false;
+                    }
+                    break;
+                case Script.OP_EQUAL:
+                case Script.OP_EQUALVERIFY:
+                    if (top < 2) {
+                        return false;
+                    }
+                    boolean equal = equalsTop();
+                    top -= 2;
+                    if (ops[pc] == Script.OP_EQUALVERIFY) {
+                        if (!equal) {
+                            return false;
+                        }
+                    } else {
+                        push(equal ? TRUE : FALSE, equal ? 1 : 0, null, -1);
+                    }
+                    break;
+                case Script.OP_CHECKSIG:
+                case Script.OP_CHECKSIGVERIFY:
+                    if (top < 2) {
+                        return false;
+                    }
+                    boolean valid = checkSig(top - 2, top - 1);
+                    top -= 2;
+                    if (ops[pc] == Script.OP_CHECKSIGVERIFY) {
+                        if (!valid) {
+                            return false;
+                        }
+                    } else {
+                        push(valid ? TRUE : FALSE, valid ? 1 : 0, null, -1);
+                    }
+                    break;
+                case Script.OP_CHECKMULTISIG:
+                    if (!checkMultisig()) {
+                        return false;
+                    }
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean push(byte[] value, int length, Script origin, int pushIndex) {
+        if (top == MAX_STACK_SIZE) {
+            return false;
+        }
+        values[top] = value;
+        lengths[top] = length;
+        origins[top] = origin;
+        pushIndexes[top] = pushIndex;
+        ++top;
+        return true;
+    }
+
+    /**
+     * 将栈顶替换为其HASH160：RIPEMD160(SHA256(x))，RIPEMD160见SecurityUtil.ripemd160Digest，目前不做任何操作
+     */
+    private boolean hash160() {
+        int i = top - 1;
+        if (origins[i] != null) {
+            byte[] hash = origins[i].hash160(pushIndexes[i]);
+            values[i] = hash;
+            lengths[i] = hash.length;
+        } else {
+            // 输入可能就是本位置的缓冲区，update时数据已读入引擎，之后再写回
+            SecurityUtil.sha256Digest(values[i], 0, lengths[i], hashBuffers[i], 0);
+            values[i] = hashBuffers[i];
+            lengths[i] = HASH_SIZE;
+        }
+        origins[i] = null;
+        pushIndexes[i] = -1;
+        return true;
+    }
+
+    private boolean equalsTop() {
+        int a = top - 2;
+        int b = top - 1;
+        if (lengths[a] != lengths[b]) {
+            return false;
+        }
+        for (int i = 0; i < lengths[a]; ++i) {
+            if (values[a][i] != values[b][i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * m个签名须按公钥的顺序依次对应其中m个公钥
+     */
+    private boolean checkMultisig() {
+        if (top < 1) {
+            return false;
+        }
+        int keyCount = smallInt(--top);
+        if (keyCount < 0 || top < keyCount + 1) {
+            return false;
+        }
+        int keyBase = top - keyCount;
+        int required = smallInt(keyBase - 1);
+        int sigBase = keyBase - 1 - required;
+        if (required < 0 || required > keyCount || sigBase < 0) {
+            return false;
+        }
+        int key = keyBase;
+        boolean valid = true;
+        for (int sig = sigBase; sig < keyBase - 1 && valid; ++sig) {
+            while (key < keyBase + keyCount && !checkSig(sig, key)) {
+                ++key;
+            }
+            valid = key < keyBase + keyCount;
+            ++key;
+        }
+        top = sigBase;
+        push(valid ? TRUE : FALSE, valid ? 1 : 0, null, -1);
+        return true;
+    }
+
+    private boolean checkSig(int sigIndex, int keyIndex) {
+        PublicKey publicKey = origins[keyIndex] != null
+                ? origins[keyIndex].publicKey(pushIndexes[keyIndex])
+                : Script.decodePublicKey(exact(keyIndex));
+        if (publicKey == null) {
+            return false;
+        }
+        return SignatureCache.getShared().verify(message, message, exact(sigIndex), publicKey);
+    }
+
+    /**
+     * @return 与栈元素长度相同的数组，来自压栈指令的数据不需要复制
+     */
+    private byte[] exact(int index) {
+        return values[index].length == lengths[index] ? values[index] : Arrays.copyOf(values[index], lengths[index]);
+    }
+
+    private int smallInt(int index) {
+        if (lengths[index] == 0) {
+            return 0;
+        }
+        return lengths[index] == 1 ? values[index][0] : -1;
+    }
+
+    private boolean isTrue(int index) {
+        for (int i = 0; i < lengths[index]; ++i) {
+            if (values[index][i] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,173 @@
+package spv;
+
+import data.Transaction;
+import data.UTXO;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 轻节点加载到全节点上的布隆过滤器（与比特币BIP37相同）
+ *
+ * 轻节点把自己关心的数据（钱包地址、公钥哈希）插入过滤器后交给全节点，全节点只返回与过滤器匹配的交易，
+ * 轻节点无需下载完整的区块；过滤器存在一定的假阳性，可以隐藏轻节点真正关心的数据
+ *
+ * 第i个哈希函数为种子为 i * 0xFBA4C795 + tweak 的MurmurHash3（x86_32），判断是否匹配只需计算若干次
+ * 整数运算的哈希并检查对应的比特位，一个全节点可以同时为大量轻节点过滤区块
+ *
+ * 创建之后只会由全节点读取，insert需在交给全节点之前完成
+ *
+ */
+public class BloomFilter {
+
+    /**
+     * 过滤器的最大字节数与哈希函数的最大个数，与BIP37一致
+     */
+    public static final int MAX_FILTER_SIZE = 36000;
+    public static final int MAX_HASH_FUNCS = 50;
+
+    private static final double LN2 = Math.log(2);
+    private static final double LN2_SQUARED = LN2 * LN2;
+
+    private final byte[] data;
+    private final int hashFuncs;
+    private final int tweak;
+
+    /**
+     * 根据预计插入的元素个数和期望的假阳性率确定过滤器大小和哈希函数个数
+     *
+     * @param elements 预计插入的元素个数
+     * @param falsePositiveRate 期望的假阳性率，如0.0001
+     * @param tweak 哈希种子的随机调整量，不同轻节点使用不同的值，避免假阳性总落在同样的数据上
+     */
+    public BloomFilter(int elements, double falsePositiveRate, int tweak) {
+        elements = Math.max(1, elements);
+        int size = (int) (-1 / LN2_SQUARED * elements * Math.log(falsePositiveRate) / 8);
+        this.data = new byte[Math.max(1, Math.min(size, MAX_FILTER_SIZE))];
+        int hashFuncs = (int) (data.length * 8 / (double) elements * LN2);
+        this.hashFuncs = Math.max(1, Math.min(hashFuncs, MAX_HASH_FUNCS));
+        this.tweak = tweak;
+    }
+
+    /**
+     * 向过滤器中插入一个元素
+     */
+    public void insert(byte[] element) {
+        int bits = data.length * 8;
+        for (int i = 0; i < hashFuncs; ++i) {
+            int bit = (int) ((murmurHash3(seed(i), element) & 0xffffffffL) % bits);
+            data[bit >>> 3] |= 1 << (bit & 7);
+        }
+    }
+
+    /**
+     * @param element 待检查的元素
+     * @return 元素可能在过滤器中则返回true（可能为假阳性），一定不在时返回false
+     */
+    public boolean contains(byte[] element) {
+        int bits = data.length * 8;
+        for (int i = 0; i < hashFuncs; ++i) {
+            int bit = (int) ((murmurHash3(seed(i), element) & 0xffffffffL) % bits);
+            if ((data[bit >>> 3] & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 交易的任一输入或输出的公钥哈希或钱包地址与过滤器匹配，即认为该交易与轻节点相关
+     * （输入匹配说明是轻节点自己花出的钱，输出匹配说明是向轻节点的转账）
+     *
+     * @param transaction 交易
+     * @return 交易是否与过滤器匹配
+     */
+    public boolean matches(Transaction transaction) {
+        return matchesAny(transaction.getOutUtxos()) || matchesAny(transaction.getInUtxos());
+    }
+
+    private boolean matchesAny(UTXO[] utxos) {
+        for (UTXO utxo : utxos) {
+            // 公钥哈希已是字节数组，先检查它，匹配时不必再编码钱包地址
+            if (contains(utxo.getPublicKeyHash())
+                    || contains(utxo.getWalletAddress().getBytes(StandardCharsets.US_ASCII))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int seed(int hashNum) {
+        return hashNum * 0xFBA4C795 + tweak;
+    }
+
+    /**
+     * MurmurHash3 x86_32
+     *
+     * @param seed 种子
+     * @param data 数据
+     * @return 32位哈希值
+     */
+    public static int murmurHash3(int seed, byte[] data) {
+        final int c1 = 0xcc9e2d51;
+        final int c2 = 0x1b873593;
+        int h1 = seed;
+        int blocks = data.length / 4;
+        for (int i = 0; i < blocks; ++i) {
+            int k1 = (data[4 * i] & 0xff) | (data[4 * i + 1] & 0xff) << 8
+                    | (data[4 * i + 2] & 0xff) << 16 | (data[4 * i + 3] & 0xff) << 24;
+            k1 *= c1;
+            k1 = Integer.rotateLeft(k1, 15);
+            k1 *= c2;
+            h1 ^= k1;
+            h1 = Integer.rotateLeft(h1, 13);
+            h1 = h1 * 5 + 0xe6546b64;
+        }
+        // 剩余不足4字节的部分，按小端序组成k1
+        int remaining = data.length & 3;
+        if (remaining > 0) {
+            int tail = blocks * 4;
+            int k1 = data[tail] & 0xff;
+            if (remaining > 1) {
+                k1 |= (data[tail + 1] & 0xff) << 8;
+            }
+            if (remaining > 2) {
+                k1 |= (data[tail + 2] & 0xff) << 16;
+            }
+            k1 *= c1;
+            k1 = Integer.rotateLeft(k1, 15);
+            k1 *= c2;
+            h1 ^= k1;
+        }
+        h1 ^= data.length;
+        h1 ^= h1 >>> 16;
+        h1 *= 0x85ebca6b;
+        h1 ^= h1 >>> 13;
+        h1 *= 0xc2b2ae35;
+        h1 ^= h1 >>> 16;
+        return h1;
+    }
+
+    /**
+     * @return 过滤器的比特数组，与BIP37中filterload消息的filter字段相同
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getHashFuncs() {
+        return hashFuncs;
+    }
+
+    public int getTweak() {
+        return tweak;
+    }
+
+    @Override
+    public String toString() {
+        return "BloomFilter{" +
+                "size=" + data.length +
+                ", hashFuncs=" + hashFuncs +
+                ", tweak=" + tweak +
+                '}';
+    }
+}
@@ -0,0 +1,55 @@
+package spv;
+
+import data.BlockHeader;
+import data.Transaction;
+
+import java.util.List;
+
+/**
+ * 过滤后的区块（与比特币BIP37中的merkleblock消息作用相同），由全节点根据轻节点加载的布隆过滤器生成
+ *
+ *    blockHeader、height: 区块头及其高度
+ *    transactions: 区块中与过滤器匹配的交易（可能包含假阳性）
+ *    proofs: 与transactions一一对应的Merkle证明
+ *
+ * 轻节点用本地保存的区块头验证每个证明，不信任全节点提供的区块头
+ */
+public class FilteredBlock {
+
+    private final BlockHeader blockHeader;
+    private final int height;
+    private final List<Transaction> transactions;
+    private final List<Proof> proofs;
+
+    public FilteredBlock(BlockHeader blockHeader, int height, List<Transaction> transactions, List<Proof> proofs) {
+        this.blockHeader = blockHeader;
+        this.height = height;
+        this.transactions = transactions;
+        this.proofs = proofs;
+    }
+
+    public BlockHeader getBlockHeader() {
+        return blockHeader;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    public List<Proof> getProofs() {
+        return proofs;
+    }
+
+    @Override
+    public String toString() {
+        return "FilteredBlock{" +
+                "blockHeader=" + blockHeader +
+                ", height=" + height +
+                ", transactions=" + transactions.size() +
+                '}';
+    }
+}
@@ -0,0 +1,98 @@
+package spv;
+
+import java.util.List;
+
+/**
+ * 交易的Merkle证明（简单支付验证所需的全部数据）
+ *
+ *    txHash: 被证明的交易的哈希
+ *    merkleRootHash: 交易所在区块的Merkle根哈希
+ *    blockHash、height: 交易所在区块的哈希与高度（创世区块高度为0），轻节点据此找到本地保存的区块头
+ *    path: 从交易到Merkle根路径上的兄弟节点，自底向上排列
+ *
+ * 轻节点从txHash出发，依次与path中的节点拼接计算哈希，最终结果等于区块头中的merkleRootHash即验证通过
+ */
+public class Proof {
+
+    private final String txHash;
+    private final String merkleRootHash;
+    private final String blockHash;
+    private final int height;
+    private final List<Node> path;
+
+    public Proof(String txHash, String merkleRootHash, String blockHash, int height, List<Node> path) {
+        this.txHash = txHash;
+        this.merkleRootHash = merkleRootHash;
+        this.blockHash = blockHash;
+        this.height = height;
+        this.path = path;
+    }
+
+    public String getTxHash() {
+        return txHash;
+    }
+
+    public String getMerkleRootHash() {
+        return merkleRootHash;
+    }
+
+    public String getBlockHash() {
+        return blockHash;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public List<Node> getPath() {
+        return path;
+    }
+
+    @Override
+    public String toString() {
+        return "Proof{" +
+                "txHash='" + txHash + '\'' +
+                ", merkleRootHash='" + merkleRootHash + '\'' +
+                ", blockHash='" + blockHash + '\'' +
+                ", height=" + height +
+                ", path=" + path +
+                '}';
+    }
+
+    /**
+     * Merkle路径上的一个兄弟节点
+     */
+    public static class Node {
+
+        private final String txHash;
+        private final Orientation orientation;
+
+        public Node(String txHash, Orientation orientation) {
+            this.txHash = txHash;
+            this.orientation = orientation;
+        }
+
+        public String getTxHash() {
+            return txHash;
+        }
+
+        public Orientation getOrientation() {
+            return orientation;
+        }
+
+        @Override
+        public String toString() {
+            return "Node{" +
+                    "txHash='" + txHash + '\'' +
+                    ", orientation=" + orientation +
+                    '}';
+        }
+    }
+
+    /**
+     * 兄弟节点相对于路径上节点的位置：LEFT表示兄弟节点在左，计算 SHA256(兄弟节点 || 当前节点)
+     */
+    public enum Orientation {
+        LEFT, RIGHT
+    }
+}
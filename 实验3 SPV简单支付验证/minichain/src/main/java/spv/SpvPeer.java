@@ -0,0 +1,331 @@
+package spv;
+
+import config.MiniChainConfig;
+import consensus.DifficultyAdjuster;
+import data.Account;
+import data.BlockChain;
+import data.BlockFilter;
+import data.BlockHeader;
+import data.MerkleTree;
+import data.Transaction;
+import data.UTXO;
+import network.Network;
+import utils.MinerUtil;
+import utils.SecurityUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 轻节点（SPV节点）
+ *
+ * 轻节点只从全节点同步区块头，不保存区块体：每个新的区块头都要检查其preBlockHash与本地最新区块头的哈希一致、
+ * 难度目标与难度调整的结果一致、区块哈希满足难度目标；创世区块头作为信任起点直接接受
+ *
+ * 验证一笔支付时，轻节点向全节点请求该交易的Merkle证明，用交易哈希和证明中的路径计算Merkle根，
+ * 与本地区块头中的merkleRootHash比较，而不需要像全节点那样遍历整条链
+ *
+ * 轻节点把自己的钱包地址和公钥哈希放入布隆过滤器交给全节点，全节点只返回过滤后的区块
+ * （区块头、匹配的交易及其Merkle证明），轻节点不需要下载完整的区块；
+ * 也可以下载所有轻节点共用的区块紧凑过滤器（BlockFilter），在本地判断哪些区块与自己相关
+ *
+ * 区块头以定长二进制序列化（88字节）连续保存在一个字节数组中，每个区块只占用约百字节的内存，
+ * 一个JVM中可以同时运行大量轻节点
+ *
+ */
+public class SpvPeer {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * 布隆过滤器的假阳性率
+     */
+    private static final double FALSE_POSITIVE_RATE = 0.0001;
+
+    private final Account account;
+    private final String walletAddress;
+    private final Network network;
+    /**
+     * 直接连接的全节点，为null时使用网络中的区块链（网络创建轻节点时区块链尚未创建）
+     */
+    private final BlockChain blockChain;
+    private final byte[] publicKeyHash;
+
+    /**
+     * 按高度顺序连续保存的区块头二进制序列化，高度为h的区块头位于 [h * HEADER_SIZE, (h + 1) * HEADER_SIZE)
+     */
+    private byte[] headers = new byte[INITIAL_CAPACITY * BlockHeader.HEADER_SIZE];
+    private int headerCount = 0;
+    private byte[] latestBlockHash;
+
+    /**
+     * 加载到全节点上的布隆过滤器，包含本账户的钱包地址和公钥哈希
+     */
+    private final BloomFilter bloomFilter;
+    /**
+     * 已经过滤验证过的区块数，下次只请求该高度之后的过滤后的区块
+     */
+    private int filteredHeight = 0;
+
+    /**
+     * 轻节点根据下载的区块过滤器自己计算的过滤器头，按高度顺序连续保存，每个32字节
+     */
+    private byte[] filterHeaders = new byte[INITIAL_CAPACITY * BlockHeader.HASH_SIZE];
+    private int filterHeaderCount = 0;
+
+    public SpvPeer(Account account, Network network) {
+        this(account, network, null);
+    }
+
+    /**
+     * 直接连接到给定的全节点（区块链），不经过网络
+     */
+    public SpvPeer(Account account, BlockChain blockChain) {
+        this(account, null, blockChain);
+    }
+
+    private SpvPeer(Account account, Network network, BlockChain blockChain) {
+        this.account = account;
+        this.walletAddress = account.getWalletAddress();
+        this.network = network;
+        this.blockChain = blockChain;
+        // 与UTXO中的公钥哈希计算方式相同：RIPEMD160(SHA256(PubK))
+        this.publicKeyHash = SecurityUtil.ripemd160Digest(SecurityUtil.sha256Digest(account.getPublicKey().getEncoded()));
+        this.bloomFilter = new BloomFilter(2, FALSE_POSITIVE_RATE, new Random().nextInt());
+        bloomFilter.insert(walletAddress.getBytes(StandardCharsets.US_ASCII));
+        bloomFilter.insert(publicKeyHash);
+    }
+
+    /**
+     * 从全节点同步本地还没有的区块头，逐个校验后追加到本地
+     *
+     * @return 所有新区块头都校验通过则返回true，遇到校验失败的区块头时停止同步并返回false
+     */
+    public synchronized boolean syncHeaders() {
+        List<BlockHeader> blockHeaders = getFullNode().getBlockHeaders(headerCount);
+        for (BlockHeader blockHeader : blockHeaders) {
+            byte[] headerBytes = blockHeader.toBytes();
+            byte[] blockHash = SecurityUtil.sha256Digest(headerBytes);
+            if (headerCount > 0 && !checkHeader(headerBytes, blockHash, blockHeader.getBits())) {
+                return false;
+            }
+            append(headerBytes, blockHash);
+        }
+        return true;
+    }
+
+    private BlockChain getFullNode() {
+        return blockChain != null ? blockChain : network.getBlockChain();
+    }
+
+    private boolean checkHeader(byte[] headerBytes, byte[] blockHash, int bits) {
+        if (!rangeEquals(headerBytes, BlockHeader.PRE_BLOCK_HASH_OFFSET, latestBlockHash)) {
+            System.out.println("spv peer reject header at height " + headerCount + ": preBlockHash does not match");
+            return false;
+        }
+        if (bits != getNextBits()) {
+            System.out.println("spv peer reject header at height " + headerCount + ": unexpected bits");
+            return false;
+        }
+        if (!MinerUtil.hashMeetsTarget(blockHash, bits)) {
+            System.out.println("spv peer reject header at height " + headerCount + ": hash does not meet the target");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 与BlockChain.getNextBits相同，根据本地最近的RETARGET_WINDOW + 1个区块头计算下一个区块的难度目标
+     */
+    private int getNextBits() {
+        int from = Math.max(0, headerCount - 1 - MiniChainConfig.RETARGET_WINDOW);
+        List<BlockHeader> window = new ArrayList<>(headerCount - from);
+        for (int i = from; i < headerCount; ++i) {
+            window.add(BlockHeader.fromBytes(headers, i * BlockHeader.HEADER_SIZE));
+        }
+        return DifficultyAdjuster.getNextBits(window);
+    }
+
+    private void append(byte[] headerBytes, byte[] blockHash) {
+        if ((headerCount + 1) * BlockHeader.HEADER_SIZE > headers.length) {
+            headers = Arrays.copyOf(headers, headers.length * 2);
+        }
+        System.arraycopy(headerBytes, 0, headers, headerCount * BlockHeader.HEADER_SIZE, BlockHeader.HEADER_SIZE);
+        ++headerCount;
+        latestBlockHash = blockHash;
+    }
+
+    /**
+     * 使用本地的区块头验证Merkle证明：证明中的区块必须已同步到本地，
+     * 且由交易哈希和路径计算出的根哈希与本地区块头中的merkleRootHash一致（证明中的merkleRootHash不可信，不参与验证）
+     *
+     * @param proof 全节点提供的Merkle证明
+     * @return 验证是否通过
+     */
+    public synchronized boolean verifyProof(Proof proof) {
+        int height = proof.getHeight();
+        if (height < 0 || height >= headerCount) {
+            return false;
+        }
+        int offset = height * BlockHeader.HEADER_SIZE;
+        byte[] headerBytes = Arrays.copyOfRange(headers, offset, offset + BlockHeader.HEADER_SIZE);
+        if (!SecurityUtil.bytes2HexString(SecurityUtil.sha256Digest(headerBytes)).equals(proof.getBlockHash())) {
+            return false;
+        }
+        byte[] merkleRoot = MerkleTree.computeRoot(SecurityUtil.hexString2Bytes(proof.getTxHash()), proof.getPath());
+        return rangeEquals(headerBytes, BlockHeader.MERKLE_ROOT_HASH_OFFSET, merkleRoot);
+    }
+
+    /**
+     * 简单支付验证：同步区块头后，用布隆过滤器向全节点请求上次验证之后的各个过滤后的区块，
+     * 逐一验证其中交易的Merkle证明；过滤器的假阳性交易（与本账户无关）直接忽略
+     *
+     * @return 所有相关交易都验证通过（或没有相关交易）则返回true
+     */
+    public boolean simplifiedPaymentVerify() {
+        if (!syncHeaders()) {
+            return false;
+        }
+        int fromHeight;
+        int toHeight;
+        synchronized (this) {
+            fromHeight = filteredHeight;
+            toHeight = headerCount;
+        }
+        for (FilteredBlock filteredBlock : getFullNode().getFilteredBlocks(fromHeight, toHeight, bloomFilter)) {
+            if (!verifyFilteredBlock(filteredBlock)) {
+                return false;
+            }
+        }
+        synchronized (this) {
+            filteredHeight = Math.max(filteredHeight, toHeight);
+        }
+        return true;
+    }
+
+    private boolean verifyFilteredBlock(FilteredBlock filteredBlock) {
+        List<Transaction> transactions = filteredBlock.getTransactions();
+        List<Proof> proofs = filteredBlock.getProofs();
+        for (int i = 0; i < transactions.size(); ++i) {
+            Transaction transaction = transactions.get(i);
+            // 交易由全节点提供，轻节点自己计算交易哈希并确认该交易确实与自己有关
+            if (!paysTo(transaction, walletAddress) && !spendsFrom(transaction, walletAddress)) {
+                continue;
+            }
+            String txHash = SecurityUtil.bytes2HexString(transaction.getTxId());
+            Proof proof = proofs.get(i);
+            if (proof == null || !txHash.equals(proof.getTxHash())
+                    || proof.getHeight() != filteredBlock.getHeight() || !verifyProof(proof)) {
+                System.out.println("spv peer of " + walletAddress + " failed to verify transaction " + txHash);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 使用区块的紧凑过滤器在本地查找与本账户相关的区块：全节点只提供所有轻节点共用的过滤器，
+     * 不会知道轻节点关心哪些地址
+     *
+     * 轻节点用下载的过滤器自己计算过滤器头并保存在本地，已保存过的高度再次下载时，过滤器必须与本地的过滤器头串联一致，
+     * 可以发现全节点前后提供的过滤器不一致；第一次下载某高度的过滤器时没有可比较的来源，无法发现全节点一直提供错误的过滤器。
+     * 本地的过滤器头是连续的，fromHeight超出本地已保存的高度时，从本地保存到的高度开始下载
+     *
+     * @param fromHeight 起始高度（包含），到本地最新区块头为止
+     * @return 过滤器与本账户公钥哈希匹配的区块高度（可能包含假阳性），过滤器与本地的过滤器头不一致时返回null
+     */
+    public List<Integer> getRelevantHeights(int fromHeight) {
+        if (!syncHeaders()) {
+            return null;
+        }
+        int startHeight;
+        int toHeight;
+        synchronized (this) {
+            fromHeight = Math.max(0, fromHeight);
+            startHeight = Math.min(fromHeight, filterHeaderCount);
+            toHeight = headerCount;
+        }
+        List<BlockFilter> blockFilters = getFullNode().getBlockFilters(startHeight, toHeight);
+        List<Integer> heights = new ArrayList<>();
+        synchronized (this) {
+            byte[] filterHeader = startHeight == 0 ? new byte[BlockHeader.HASH_SIZE] : Arrays.copyOfRange(filterHeaders,
+                    (startHeight - 1) * BlockHeader.HASH_SIZE, startHeight * BlockHeader.HASH_SIZE);
+            for (int i = 0; i < blockFilters.size(); ++i) {
+                int height = startHeight + i;
+                BlockFilter blockFilter = blockFilters.get(i);
+                filterHeader = blockFilter.getFilterHeader(filterHeader);
+                // 本地的过滤器头只会增加，height不会超过filterHeaderCount
+                if (height < filterHeaderCount) {
+                    if (!rangeEquals(filterHeaders, height * BlockHeader.HASH_SIZE, filterHeader)) {
+                        System.out.println("spv peer of " + walletAddress + " got a block filter at height " + height
+                                + " inconsistent with the filter header it saved");
+                        return null;
+                    }
+                } else {
+                    appendFilterHeader(filterHeader);
+                }
+                if (height >= fromHeight && blockFilter.match(publicKeyHash)) {
+                    heights.add(height);
+                }
+            }
+        }
+        return heights;
+    }
+
+    private void appendFilterHeader(byte[] filterHeader) {
+        if ((filterHeaderCount + 1) * BlockHeader.HASH_SIZE > filterHeaders.length) {
+            filterHeaders = Arrays.copyOf(filterHeaders, filterHeaders.length * 2);
+        }
+        System.arraycopy(filterHeader, 0, filterHeaders, filterHeaderCount * BlockHeader.HASH_SIZE, BlockHeader.HASH_SIZE);
+        ++filterHeaderCount;
+    }
+
+    private static boolean paysTo(Transaction transaction, String walletAddress) {
+        for (UTXO utxo : transaction.getOutUtxos()) {
+            if (utxo.getWalletAddress().equals(walletAddress)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean spendsFrom(Transaction transaction, String walletAddress) {
+        for (UTXO utxo : transaction.getInUtxos()) {
+            if (utxo.getWalletAddress().equals(walletAddress)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean rangeEquals(byte[] data, int offset, byte[] expected) {
+        for (int i = 0; i < expected.length; ++i) {
+            if (data[offset + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return 本地保存的区块头数量，即本地最新区块的高度 + 1
+     */
+    public synchronized int getHeaderCount() {
+        return headerCount;
+    }
+
+    public Account getAccount() {
+        return account;
+    }
+
+    @Override
+    public String toString() {
+        return "SpvPeer{" +
+                "walletAddress='" + walletAddress + '\'' +
+                ", headerCount=" + getHeaderCount() +
+                '}';
+    }
+}
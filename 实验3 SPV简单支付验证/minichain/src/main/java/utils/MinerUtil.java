@@ -1,21 +1,111 @@
 package utils;
 
-import config.MiniChainConfig;
+import java.math.BigInteger;
+import java.util.Arrays;
 
+/**
+ * 挖矿难度相关的工具方法
+ *
+ * 难度目标是一个256位的无符号整数，区块哈希（按大端序看作整数）不大于该目标即满足难度条件，
+ * 区块头中使用比特币的紧凑格式（bits）保存目标值：最高字节为指数e，低3字节为尾数m，
+ * 目标值 = m * 256^(e - 3)，例如 0x1f0fffff 对应的目标值以3个十六进制0开头
+ */
 public class MinerUtil {
 
     /**
-     * 静态方法，使用MinerUtil.hashPrefixTarget()即可调用
-     * 该方法根据根据挖矿的难度值设置，返回一个相应数量的0组成的字符串，供挖矿线程判断其区块是否满足难度条件
+     * 将紧凑格式的难度目标展开为256位整数
      *
-     * @return 根据挖矿难度值，相应数量的0组成的字符串
+     * @param bits 紧凑格式的难度目标
+     * @return 难度目标，尾数的符号位被置位时视为非法，返回0
      */
-    public static String hashPrefixTarget() {
-        StringBuilder stringBuilder = new StringBuilder();
-        for (int i = 0; i < MiniChainConfig.DIFFICULTY; i++) {
-            stringBuilder.append("0");
+    public static BigInteger bitsToTarget(int bits) {
+        int exponent = bits >>> 24;
+        int mantissa = bits & 0x007fffff;
+        if ((bits & 0x00800000) != 0) {
+            return BigInteger.ZERO;
         }
-        return stringBuilder.toString();
+        BigInteger target = BigInteger.valueOf(mantissa);
+        if (exponent <= 3) {
+            return target.shiftRight(8 * (3 - exponent));
+        }
+        return target.shiftLeft(8 * (exponent - 3));
+    }
+
+    /**
+     * 将256位整数形式的难度目标压缩为紧凑格式，尾数只保留最高的3个有效字节
+     *
+     * @param target 难度目标
+     * @return 紧凑格式的难度目标
+     */
+    public static int targetToBits(BigInteger target) {
+        int size = (target.bitLength() + 7) / 8;
+        int mantissa;
+        if (size <= 3) {
+            mantissa = target.intValue() << (8 * (3 - size));
+        } else {
+            mantissa = target.shiftRight(8 * (size - 3)).intValue();
+        }
+        // 尾数最高位是符号位，被占用时尾数右移一个字节，指数加一
+        if ((mantissa & 0x00800000) != 0) {
+            mantissa >>>= 8;
+            ++size;
+        }
+        return (size << 24) | mantissa;
+    }
+
+    /**
+     * 将紧凑格式的难度目标展开为8个32位字（大端序），与Sha256Midstate输出的哈希值格式一致，
+     * 超出256位的目标值按256位的最大值处理
+     *
+     * @param bits 紧凑格式的难度目标
+     * @return 长度为8的数组
+     */
+    public static int[] bitsToTargetWords(int bits) {
+        BigInteger target = bitsToTarget(bits);
+        int[] words = new int[8];
+        if (target.bitLength() > 256) {
+            Arrays.fill(words, -1);
+            return words;
+        }
+        for (int i = 0; i < 8; ++i) {
+            words[7 - i] = target.shiftRight(32 * i).intValue();
+        }
+        return words;
+    }
+
+    /**
+     * 判断哈希值是否满足难度条件（哈希值 <= 目标值），从最高位的字开始逐个比较，一旦分出大小立即返回
+     *
+     * @param hashWords 哈希值的8个32位字（大端序）
+     * @param targetWords 目标值的8个32位字（大端序），见bitsToTargetWords方法
+     * @return 是否满足难度条件
+     */
+    public static boolean hashMeetsTarget(int[] hashWords, int[] targetWords) {
+        for (int i = 0; i < 8; ++i) {
+            if (hashWords[i] != targetWords[i]) {
+                return Integer.compareUnsigned(hashWords[i], targetWords[i]) < 0;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 判断哈希值是否满足难度条件（哈希值 <= 目标值），从最高位的字节开始逐个比较，一旦分出大小立即返回
+     *
+     * @param hash 32字节的哈希值
+     * @param bits 紧凑格式的难度目标
+     * @return 是否满足难度条件
+     */
+    public static boolean hashMeetsTarget(byte[] hash, int bits) {
+        int[] targetWords = bitsToTargetWords(bits);
+        for (int i = 0; i < 32; ++i) {
+            int hashByte = hash[i] & 0xff;
+            int targetByte = (targetWords[i / 4] >>> (24 - 8 * (i % 4))) & 0xff;
+            if (hashByte != targetByte) {
+                return hashByte < targetByte;
+            }
+        }
+        return true;
     }
 
 }
@@ -0,0 +1,35 @@
+package utils;
+
+/**
+ * 挖矿哈希引擎的统一接口
+ *
+ * 实现类对同一个区块头模板批量尝试连续的nonce，找到第一个满足难度目标的nonce即返回，
+ * 目前有逐个计算的ScalarNonceHasher和多路并行计算的VectorNonceHasher两种实现，由NonceHasherFactory在启动时选择
+ *
+ * 实现类持有可复用的工作缓冲区，不是线程安全的，每个挖矿线程应使用自己的对象
+ */
+public interface NonceHasher {
+
+    /**
+     * 设置新的区块头模板，之后的scan都基于该模板计算
+     *
+     * @param headerBytes 区块头的二进制序列化，构造后对该数组的修改不会影响本对象
+     * @param nonceOffset nonce在headerBytes中的偏移量
+     */
+    void reset(byte[] headerBytes, int nonceOffset);
+
+    /**
+     * 顺序尝试 [startNonce, startNonce + count) 内的nonce
+     *
+     * @param startNonce 起始nonce
+     * @param count 尝试的个数
+     * @param targetWords 难度目标的8个32位字，见MinerUtil.bitsToTargetWords
+     * @return 第一个满足难度目标的nonce相对startNonce的偏移量，都不满足则返回-1
+     */
+    int scan(long startNonce, int count, int[] targetWords);
+
+    /**
+     * @return 实现的名称，用于输出日志
+     */
+    String getName();
+}
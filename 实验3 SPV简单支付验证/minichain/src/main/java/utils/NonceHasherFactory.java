@@ -0,0 +1,87 @@
+package utils;
+
+import data.BlockHeader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 挖矿哈希引擎的选择与创建
+ *
+ * 首次使用时尝试加载VectorNonceHasher（JDK版本过低、未启用jdk.incubator.vector模块等情况下加载会失败），
+ * 然后对所有可用的实现做一次简短的基准测试，之后创建的都是其中最快的实现
+ */
+public class NonceHasherFactory {
+
+    private static final String VECTOR_HASHER_CLASS = "utils.VectorNonceHasher";
+
+    /**
+     * 基准测试每轮尝试的nonce个数及轮数，前几轮用于JIT预热
+     */
+    private static final int BENCHMARK_NONCES = 1 << 14;
+    private static final int BENCHMARK_ROUNDS = 8;
+
+    private static Class<? extends NonceHasher> fastestClass;
+
+    /**
+     * @return 一个新的、当前JVM上最快的挖矿哈希引擎
+     */
+    public static synchronized NonceHasher create() {
+        if (fastestClass == null) {
+            fastestClass = selectFastest();
+            System.out.println("nonce hasher selected: " + newInstance(fastestClass).getName());
+        }
+        return newInstance(fastestClass);
+    }
+
+    /**
+     * @return 所有在当前JVM上可用的挖矿哈希引擎，标量实现总是可用并排在第一位
+     */
+    public static List<NonceHasher> available() {
+        List<NonceHasher> hashers = new ArrayList<>();
+        hashers.add(new ScalarNonceHasher());
+        try {
+            Class<? extends NonceHasher> vectorClass =
+                    Class.forName(VECTOR_HASHER_CLASS).asSubclass(NonceHasher.class);
+            NonceHasher vectorHasher = vectorClass.getDeclaredConstructor().newInstance();
+            // 在这里就跑一次，确保向量相关的类都能正常链接
+            vectorHasher.reset(new byte[BlockHeader.HEADER_SIZE], BlockHeader.NONCE_OFFSET);
+            vectorHasher.scan(0, 1, new int[8]);
+            hashers.add(vectorHasher);
+        } catch (LinkageError | ReflectiveOperationException e) {
+            // 类文件版本不支持、缺少孵化模块等都会抛出LinkageError，未编译该类时为ClassNotFoundException，
+            // 此时只使用标量实现；其他Error（如OutOfMemoryError）照常抛出
+        }
+        return hashers;
+    }
+
+    private static Class<? extends NonceHasher> selectFastest() {
+        byte[] headerBytes = new byte[BlockHeader.HEADER_SIZE];
+        // 全0的目标值不会被满足，保证每轮都完整地尝试所有nonce
+        int[] targetWords = new int[8];
+        NonceHasher fastest = null;
+        long fastestTime = Long.MAX_VALUE;
+        for (NonceHasher hasher : available()) {
+            hasher.reset(headerBytes, BlockHeader.NONCE_OFFSET);
+            long bestTime = Long.MAX_VALUE;
+            for (int round = 0; round < BENCHMARK_ROUNDS; ++round) {
+                long startTime = System.nanoTime();
+                hasher.scan((long) round * BENCHMARK_NONCES, BENCHMARK_NONCES, targetWords);
+                bestTime = Math.min(bestTime, System.nanoTime() - startTime);
+            }
+            if (bestTime < fastestTime) {
+                fastestTime = bestTime;
+                fastest = hasher;
+            }
+        }
+        return fastest.getClass();
+    }
+
+    private static NonceHasher newInstance(Class<? extends NonceHasher> hasherClass) {
+        try {
+            return hasherClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
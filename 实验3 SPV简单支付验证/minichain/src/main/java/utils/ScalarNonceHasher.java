@@ -0,0 +1,31 @@
+package utils;
+
+/**
+ * 基于Sha256Midstate逐个计算nonce的挖矿哈希引擎，任何JVM上均可使用
+ */
+public class ScalarNonceHasher implements NonceHasher {
+
+    private final int[] hashWords = new int[8];
+    private Sha256Midstate hasher;
+
+    @Override
+    public void reset(byte[] headerBytes, int nonceOffset) {
+        hasher = new Sha256Midstate(headerBytes, nonceOffset);
+    }
+
+    @Override
+    public int scan(long startNonce, int count, int[] targetWords) {
+        for (int i = 0; i < count; ++i) {
+            hasher.hash(startNonce + i, hashWords);
+            if (MinerUtil.hashMeetsTarget(hashWords, targetWords)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+}
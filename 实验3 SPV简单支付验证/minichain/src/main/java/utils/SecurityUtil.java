@@ -1,10 +1,13 @@
 package utils;
 
-import data.Transaction;
 import data.UTXO;
+
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.*;
 import java.security.spec.ECGenParameterSpec;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
@@ -12,13 +15,71 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * 哈希、签名与编码工具
+ *
+ * MessageDigest、Signature、KeyFactory都不是线程安全的，每次getInstance都要查找provider并创建新对象，
+ * 这里每个线程各缓存一个引擎对象，复用时的状态约定如下：
+ *    1. SHA-256：digest()完成后引擎自动回到初始状态；sha256Engine()取出时会先reset()，
+ *       即使上一次使用中途抛出异常也不会有残留数据
+ *    2. ECDSA：每次签名/验签前都会initSign/initVerify，重新初始化会丢弃上一次的所有状态
+ *    3. 引擎对象只能在取出它的线程上使用，不要保存或传给其他线程
+ */
 public class SecurityUtil {
 
+    /**
+     * SHA-256哈希值的字节数
+     */
+    public static final int SHA256_LENGTH = 32;
+
     /**
      * 十六进制映射字符串
      */
     private static final String HEX_CHAR = "0123456789abcdef";
 
+    /**
+     * 每个线程复用的交易签名数据缓冲区，容量不足时按需扩大
+     */
+    private static final ThreadLocal<ByteBuffer> SIGHASH_BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(1024);
+        }
+    };
+
+    private static final ThreadLocal<MessageDigest> SHA256_DIGEST = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    private static final ThreadLocal<Signature> ECDSA_SIGNATURE = new ThreadLocal<Signature>() {
+        @Override
+        protected Signature initialValue() {
+            try {
+                return Signature.getInstance("SHA256withECDSA");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    private static final ThreadLocal<KeyFactory> EC_KEY_FACTORY = new ThreadLocal<KeyFactory>() {
+        @Override
+        protected KeyFactory initialValue() {
+            try {
+                return KeyFactory.getInstance("EC");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
     /**
      * 比特数据转为相应的十六进制字符串
      * @param data
@@ -34,6 +95,24 @@ public class SecurityUtil {
         return stringBuilder.toString();
     }
 
+    /**
+     * 十六进制字符串转为相应的比特数据，null 视为空数组
+     * @param hexString
+     * @return
+     */
+    public static byte[] hexString2Bytes(String hexString) {
+        if (hexString == null) {
+            return new byte[0];
+        }
+        byte[] data = new byte[hexString.length() / 2];
+        for (int i = 0; i < data.length; ++i) {
+            int high = Character.digit(hexString.charAt(2 * i), 16);
+            int low = Character.digit(hexString.charAt(2 * i + 1), 16);
+            data[i] = (byte) ((high << 4) | low);
+        }
+        return data;
+    }
+
     /**
      * 使用SHA256算法进行哈希值计算
      *
@@ -41,15 +120,7 @@ public class SecurityUtil {
      * @return SHA256哈希值
      */
     public static String sha256Digest(String data) {
-        MessageDigest sha256Digest = null;
-        try {
-            sha256Digest = MessageDigest.getInstance("SHA-256");
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-            System.exit(-1);
-        }
-        sha256Digest.update(data.getBytes(StandardCharsets.UTF_8));
-        return bytes2HexString(sha256Digest.digest());
+        return bytes2HexString(sha256Digest(data.getBytes(StandardCharsets.UTF_8)));
     }
 
     /**
@@ -58,17 +129,48 @@ public class SecurityUtil {
      * @return
      */
     public static byte[] sha256Digest(byte[] data) {
-        MessageDigest sha256Digest = null;
-        try {
-            sha256Digest = MessageDigest.getInstance("SHA-256");
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-            System.exit(-1);
-        }
+        MessageDigest sha256Digest = SHA256_DIGEST.get();
         sha256Digest.update(data);
         return sha256Digest.digest();
     }
 
+    /**
+     * 计算 data[offset, offset + length) 的SHA256哈希值，写入调用方提供的缓冲区，不分配新数组
+     *
+     * @param data 数据
+     * @param offset 数据起始位置
+     * @param length 数据长度
+     * @param out 输出缓冲区，可以与data是同一个数组
+     * @param outOffset 哈希值写入 out[outOffset, outOffset + 32)
+     * @throws IllegalArgumentException 输出缓冲区不足32字节
+     */
+    public static void sha256Digest(byte[] data, int offset, int length, byte[] out, int outOffset) {
+        if (outOffset < 0 || out.length - outOffset < SHA256_LENGTH) {
+            throw new IllegalArgumentException("output buffer too short");
+        }
+        MessageDigest sha256Digest = SHA256_DIGEST.get();
+        sha256Digest.update(data, offset, length);
+        try {
+            sha256Digest.digest(out, outOffset, SHA256_LENGTH);
+        } catch (DigestException e) {
+            // 已检查过缓冲区长度，不会发生
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 当前线程的SHA-256引擎，用于需要多次update的场景（如Merkle树节点的拼接哈希）
+     *
+     * 取出时已reset，调用方以digest()结束使用即可；不要在调用期间再调用本类的其他哈希方法，它们共用同一个引擎
+     *
+     * @return 当前线程的MessageDigest
+     */
+    public static MessageDigest sha256Engine() {
+        MessageDigest sha256Digest = SHA256_DIGEST.get();
+        sha256Digest.reset();
+        return sha256Digest;
+    }
+
     /**
      * 由于java标准库没有提供RIPEMD160哈希摘要算法，故暂不做任何操作
      * @param data
@@ -108,11 +210,15 @@ public class SecurityUtil {
      * @return 签名后的比特数据
      */
     public static byte[] signature(byte[] data, PrivateKey privateKey) {
+        return signature(data, 0, data.length, privateKey);
+    }
+
+    private static byte[] signature(byte[] data, int offset, int length, PrivateKey privateKey) {
         byte[] sign = null;
         try {
-            Signature signature = Signature.getInstance("SHA256withECDSA");
+            Signature signature = ECDSA_SIGNATURE.get();
             signature.initSign(privateKey);
-            signature.update(data);
+            signature.update(data, offset, length);
             sign = signature.sign();
         } catch (Exception e) {
             e.printStackTrace();
@@ -129,12 +235,19 @@ public class SecurityUtil {
      * @return 签名是否正确
      */
     public static boolean verify(byte[] data, byte[] sign, PublicKey publicKey) {
+        return verify(data, 0, data.length, sign, publicKey);
+    }
+
+    private static boolean verify(byte[] data, int offset, int length, byte[] sign, PublicKey publicKey) {
         boolean result = false;
         try {
-            Signature signature = Signature.getInstance("SHA256withECDSA");
+            Signature signature = ECDSA_SIGNATURE.get();
             signature.initVerify(publicKey);
-            signature.update(data);
+            signature.update(data, offset, length);
             result = signature.verify(sign);
+        } catch (SignatureException e) {
+            // 签名格式错误，视为验签失败
+            result = false;
         } catch (Exception e) {
             e.printStackTrace();
             System.exit(-1);
@@ -142,14 +255,89 @@ public class SecurityUtil {
         return result;
     }
 
+    /**
+     * 解码X.509编码的EC公钥
+     *
+     * @param encoded 公钥的X.509编码，即PublicKey.getEncoded()
+     * @return 公钥
+     * @throws InvalidKeySpecException 编码不是合法的EC公钥
+     */
+    public static PublicKey decodePublicKey(byte[] encoded) throws InvalidKeySpecException {
+        return EC_KEY_FACTORY.get().generatePublic(new X509EncodedKeySpec(encoded));
+    }
+
+    /**
+     * 对交易的输入和输出签名，签名数据见utxos2Bytes，直接使用线程复用的缓冲区，不另外复制
+     *
+     * @param inUtxos 交易输入
+     * @param outUtxos 交易输出
+     * @param privateKey 交易发送方的私钥
+     * @return 签名
+     */
+    public static byte[] signUtxos(UTXO[] inUtxos, UTXO[] outUtxos, PrivateKey privateKey) {
+        ByteBuffer buffer = sighashPreimage(inUtxos, outUtxos);
+        return signature(buffer.array(), 0, buffer.limit(), privateKey);
+    }
+
+    /**
+     * 验证交易的签名，签名数据见utxos2Bytes
+     *
+     * @param inUtxos 交易输入
+     * @param outUtxos 交易输出
+     * @param sign 交易发送方的签名
+     * @param publicKey 交易发送方的公钥
+     * @return 签名是否正确
+     */
+    public static boolean verifyUtxos(UTXO[] inUtxos, UTXO[] outUtxos, byte[] sign, PublicKey publicKey) {
+        ByteBuffer buffer = sighashPreimage(inUtxos, outUtxos);
+        return verify(buffer.array(), 0, buffer.limit(), sign, publicKey);
+    }
+
     /**
      * utxo数组（包含输入和输出）转化为byte数据供交易签名
+     *
+     * 签名数据为二进制编码：输入个数（2字节） + 各输入（outpoint + utxo） + 输出个数（2字节） + 各输出utxo，
+     * 每个utxo包含钱包地址、数额和公钥哈希，编码见UTXO；签名覆盖输入的outpoint，即签名时确定了花费的是哪个utxo
+     *
      * @param inUtxos
      * @param outUtxos
      * @return
      */
     public static byte[] utxos2Bytes(UTXO[] inUtxos, UTXO[] outUtxos) {
-        return (Arrays.toString(inUtxos) + Arrays.toString(outUtxos)).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = sighashPreimage(inUtxos, outUtxos);
+        return Arrays.copyOf(buffer.array(), buffer.limit());
+    }
+
+    /**
+     * 将签名数据写入当前线程复用的缓冲区
+     *
+     * @return 缓冲区，签名数据位于 [0, limit)，在该线程下一次调用前有效
+     */
+    private static ByteBuffer sighashPreimage(UTXO[] inUtxos, UTXO[] outUtxos) {
+        int size = 4;
+        for (UTXO utxo : inUtxos) {
+            size += UTXO.OUTPOINT_SIZE + utxo.encodedSize();
+        }
+        for (UTXO utxo : outUtxos) {
+            size += utxo.encodedSize();
+        }
+        ByteBuffer buffer = SIGHASH_BUFFER.get();
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2));
+            SIGHASH_BUFFER.set(buffer);
+        }
+        buffer.clear();
+        buffer.putShort((short) inUtxos.length);
+        for (UTXO utxo : inUtxos) {
+            utxo.writeOutPointTo(buffer);
+            utxo.writeTo(buffer);
+        }
+        buffer.putShort((short) outUtxos.length);
+        for (UTXO utxo : outUtxos) {
+            utxo.writeTo(buffer);
+        }
+        buffer.flip();
+        return buffer;
     }
 
 
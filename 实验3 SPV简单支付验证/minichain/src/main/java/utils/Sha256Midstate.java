@@ -0,0 +1,171 @@
+package utils;
+
+/**
+ * 带中间状态（midstate）缓存的SHA256计算，专供挖矿内循环使用
+ *
+ * 挖矿时区块头中只有末尾的nonce在变化，nonce之前完整的64字节分组在每次尝试中都相同，
+ * 因此创建对象时先对这些分组做一次压缩得到中间状态并缓存下来，之后每次尝试只需
+ * 在末尾分组（含填充）中写入新的nonce，从中间状态出发压缩末尾的1~2个分组即可
+ *
+ * 该类的对象持有可复用的工作缓冲区，不是线程安全的，每个挖矿线程应使用自己的对象
+ *
+ */
+public class Sha256Midstate {
+
+    static final int[] K = {
+            0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+            0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+            0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+            0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+            0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+            0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+            0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+            0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+    };
+
+    private static final int[] IV = {
+            0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+    };
+
+    private static final int BLOCK_SIZE = 64;
+
+    private final int[] midstate = new int[8];
+    private final int[] tail;
+    private final int tailBlocks;
+    private final int nonceWordIndex;
+    private final int[] w = new int[64];
+    private final int[] state = new int[8];
+
+    /**
+     * @param message 完整的待哈希数据（如区块头的二进制序列化），构造后对该数组的修改不会影响本对象
+     * @param nonceOffset nonce（8字节，大端序）在message中的偏移量，必须是4的倍数
+     */
+    public Sha256Midstate(byte[] message, int nonceOffset) {
+        if (nonceOffset % 4 != 0 || nonceOffset < 0 || nonceOffset + 8 > message.length) {
+            throw new IllegalArgumentException("nonce must be 8 bytes at a 4-byte aligned offset");
+        }
+        // nonce之前完整的分组只压缩一次，得到中间状态
+        int prefixBlocks = nonceOffset / BLOCK_SIZE;
+        System.arraycopy(IV, 0, midstate, 0, 8);
+        int[] block = new int[16];
+        for (int i = 0; i < prefixBlocks; ++i) {
+            for (int j = 0; j < 16; ++j) {
+                block[j] = readInt(message, i * BLOCK_SIZE + j * 4);
+            }
+            compress(midstate, block, 0);
+        }
+
+        // 剩余数据加上填充（0x80、若干0和64位的消息比特长度）构成末尾分组
+        int tailStart = prefixBlocks * BLOCK_SIZE;
+        int tailLength = message.length - tailStart;
+        tailBlocks = (tailLength + 9 + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        byte[] tailBytes = new byte[tailBlocks * BLOCK_SIZE];
+        System.arraycopy(message, tailStart, tailBytes, 0, tailLength);
+        tailBytes[tailLength] = (byte) 0x80;
+        long bitLength = (long) message.length * 8;
+        for (int i = 0; i < 8; ++i) {
+            tailBytes[tailBytes.length - 1 - i] = (byte) (bitLength >>> (8 * i));
+        }
+        tail = new int[tailBlocks * 16];
+        for (int i = 0; i < tail.length; ++i) {
+            tail[i] = readInt(tailBytes, i * 4);
+        }
+        nonceWordIndex = (nonceOffset - tailStart) / 4;
+    }
+
+    /**
+     * 计算nonce取给定值时整个消息的SHA256哈希值
+     *
+     * @param nonce 写入消息末尾的nonce
+     * @param out 长度至少为8的数组，用于存放哈希值的8个32位字（大端序）
+     */
+    public void hash(long nonce, int[] out) {
+        tail[nonceWordIndex] = (int) (nonce >>> 32);
+        tail[nonceWordIndex + 1] = (int) nonce;
+        System.arraycopy(midstate, 0, out, 0, 8);
+        for (int i = 0; i < tailBlocks; ++i) {
+            compress(out, tail, i * 16);
+        }
+    }
+
+    /**
+     * 计算nonce取给定值时整个消息的SHA256哈希值
+     *
+     * @param nonce 写入消息末尾的nonce
+     * @param out 长度至少为32的数组，用于存放哈希值
+     */
+    public void hash(long nonce, byte[] out) {
+        hash(nonce, state);
+        for (int i = 0; i < 8; ++i) {
+            out[4 * i] = (byte) (state[i] >>> 24);
+            out[4 * i + 1] = (byte) (state[i] >>> 16);
+            out[4 * i + 2] = (byte) (state[i] >>> 8);
+            out[4 * i + 3] = (byte) state[i];
+        }
+    }
+
+    /**
+     * SHA256的压缩函数，用block[offset, offset + 16)这一分组更新state
+     */
+    private void compress(int[] state, int[] block, int offset) {
+        System.arraycopy(block, offset, w, 0, 16);
+        for (int t = 16; t < 64; ++t) {
+            int w15 = w[t - 15];
+            int w2 = w[t - 2];
+            int s0 = Integer.rotateRight(w15, 7) ^ Integer.rotateRight(w15, 18) ^ (w15 >>> 3);
+            int s1 = Integer.rotateRight(w2, 17) ^ Integer.rotateRight(w2, 19) ^ (w2 >>> 10);
+            w[t] = w[t - 16] + s0 + w[t - 7] + s1;
+        }
+
+        int a = state[0], b = state[1], c = state[2], d = state[3];
+        int e = state[4], f = state[5], g = state[6], h = state[7];
+        for (int t = 0; t < 64; ++t) {
+            int s1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer.rotateRight(e, 25);
+            int ch = (e & f) ^ (~e & g);
+            int t1 = h + s1 + ch + K[t] + w[t];
+            int s0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer.rotateRight(a, 22);
+            int maj = (a & b) ^ (a & c) ^ (b & c);
+            int t2 = s0 + maj;
+            h = g;
+            g = f;
+            f = e;
+            e = d + t1;
+            d = c;
+            c = b;
+            b = a;
+            a = t1 + t2;
+        }
+        state[0] += a;
+        state[1] += b;
+        state[2] += c;
+        state[3] += d;
+        state[4] += e;
+        state[5] += f;
+        state[6] += g;
+        state[7] += h;
+    }
+
+    /**
+     * 以下方法供同一包内的其他哈希实现（如VectorNonceHasher）复用已计算好的中间状态和末尾分组
+     */
+    int[] getMidstate() {
+        return midstate;
+    }
+
+    int[] getTail() {
+        return tail;
+    }
+
+    int getTailBlocks() {
+        return tailBlocks;
+    }
+
+    int getNonceWordIndex() {
+        return nonceWordIndex;
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16)
+                | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+    }
+}
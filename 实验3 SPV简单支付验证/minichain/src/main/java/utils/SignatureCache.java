@@ -0,0 +1,173 @@
+package utils;
+
+import config.MiniChainConfig;
+
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 验签结果缓存（与比特币的sigcache相同）
+ *
+ * 只缓存验证通过的签名：键为 SHA256(salt || 消息标识 || 公钥 || 签名)，消息标识对交易签名为txid，
+ * salt在进程启动时随机生成，外部无法构造哈希冲突的键；交易入池时验签一次，之后打包区块时验签直接命中缓存
+ *
+ * 查找是无锁的（ConcurrentHashMap），命中时只设置条目的访问标记；缓存满时按CLOCK算法淘汰：
+ * 指针沿环形数组前进，跳过并清除有访问标记的条目，淘汰第一个没有访问标记的条目，近似LRU且不需要维护链表
+ *
+ */
+public class SignatureCache {
+
+    private static final SignatureCache SHARED = new SignatureCache(MiniChainConfig.SIGNATURE_CACHE_SIZE);
+
+    private final byte[] salt = new byte[32];
+    private final ConcurrentHashMap<Key, Key> entries;
+    /**
+     * CLOCK的环形数组及指针，插入与淘汰在持有该对象的锁时进行
+     */
+    private final Key[] ring;
+    private int hand = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param capacity 最多缓存的签名个数
+     */
+    public SignatureCache(int capacity) {
+        new SecureRandom().nextBytes(salt);
+        this.entries = new ConcurrentHashMap<>(capacity * 4 / 3 + 1);
+        this.ring = new Key[capacity];
+    }
+
+    /**
+     * @return 交易池入池验签与区块验签共用的缓存
+     */
+    public static SignatureCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * 先查缓存，未命中时再验签，验证通过的结果加入缓存
+     *
+     * @param messageId 被签名消息的标识，相同的标识必须对应相同的签名数据
+     * @param data 签名数据
+     * @param sign 签名
+     * @param publicKey 验签公钥
+     * @return 签名是否正确
+     */
+    public boolean verify(byte[] messageId, byte[] data, byte[] sign, PublicKey publicKey) {
+        Key key = key(messageId, publicKey, sign);
+        if (lookup(key)) {
+            return true;
+        }
+        if (!SecurityUtil.verify(data, sign, publicKey)) {
+            return false;
+        }
+        insert(key);
+        return true;
+    }
+
+    /**
+     * 只查询缓存，不验签
+     *
+     * @return 该签名已验证通过过则返回true
+     */
+    public boolean contains(byte[] messageId, PublicKey publicKey, byte[] sign) {
+        return lookup(key(messageId, publicKey, sign));
+    }
+
+    /**
+     * 记录一个已验证通过的签名
+     */
+    public void add(byte[] messageId, PublicKey publicKey, byte[] sign) {
+        insert(key(messageId, publicKey, sign));
+    }
+
+    private boolean lookup(Key key) {
+        Key entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return false;
+        }
+        entry.referenced = true;
+        hits.incrementAndGet();
+        return true;
+    }
+
+    private synchronized void insert(Key key) {
+        if (entries.containsKey(key)) {
+            return;
+        }
+        // 沿环形数组寻找空位或没有访问标记的条目
+        while (ring[hand] != null && ring[hand].referenced) {
+            ring[hand].referenced = false;
+            hand = (hand + 1) % ring.length;
+        }
+        if (ring[hand] != null) {
+            entries.remove(ring[hand]);
+        }
+        ring[hand] = key;
+        entries.put(key, key);
+        hand = (hand + 1) % ring.length;
+    }
+
+    private Key key(byte[] messageId, PublicKey publicKey, byte[] sign) {
+        MessageDigest digest = SecurityUtil.sha256Engine();
+        digest.update(salt);
+        digest.update(messageId);
+        digest.update(publicKey.getEncoded());
+        digest.update(sign);
+        return new Key(digest.digest());
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public String toString() {
+        return "SignatureCache{" +
+                "size=" + size() +
+                ", capacity=" + ring.length +
+                ", hits=" + getHits() +
+                ", misses=" + getMisses() +
+                '}';
+    }
+
+    /**
+     * 缓存的键，同时作为CLOCK中的条目保存访问标记
+     */
+    private static class Key {
+
+        private final byte[] hash;
+        private final int hashCode;
+        private volatile boolean referenced;
+
+        Key(byte[] hash) {
+            this.hash = hash;
+            this.hashCode = (hash[0] & 0xff) << 24 | (hash[1] & 0xff) << 16 | (hash[2] & 0xff) << 8 | (hash[3] & 0xff);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(hash, ((Key) o).hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
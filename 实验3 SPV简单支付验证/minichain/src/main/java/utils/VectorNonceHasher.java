@@ -0,0 +1,148 @@
+package utils;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 基于Vector API的多路并行挖矿哈希引擎
+ *
+ * 向量的每个通道（lane）计算一个nonce的SHA256，一次压缩即可同时尝试4/8/16个nonce（取决于CPU的向量宽度），
+ * 中间状态与末尾分组仍由Sha256Midstate计算，各通道之间只有nonce所在的两个字不同
+ *
+ * 该类依赖孵化模块jdk.incubator.vector，需要JDK 16及以上并在启动时加上 --add-modules jdk.incubator.vector，
+ * 单独在pom的vector profile中编译，不可用时NonceHasherFactory会退回ScalarNonceHasher
+ */
+public class VectorNonceHasher implements NonceHasher {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    private final int[] high = new int[LANES];
+    private final int[] low = new int[LANES];
+    private final int[] w = new int[64 * LANES];
+    private final int[] state = new int[8 * LANES];
+    private final int[] hashWords = new int[8];
+
+    private int[] midstate;
+    private int[] tail;
+    private int tailBlocks;
+    private int nonceWordIndex;
+
+    @Override
+    public void reset(byte[] headerBytes, int nonceOffset) {
+        Sha256Midstate hasher = new Sha256Midstate(headerBytes, nonceOffset);
+        midstate = hasher.getMidstate().clone();
+        tail = hasher.getTail().clone();
+        tailBlocks = hasher.getTailBlocks();
+        nonceWordIndex = hasher.getNonceWordIndex();
+    }
+
+    @Override
+    public int scan(long startNonce, int count, int[] targetWords) {
+        for (int base = 0; base < count; base += LANES) {
+            for (int lane = 0; lane < LANES; ++lane) {
+                long nonce = startNonce + base + lane;
+                high[lane] = (int) (nonce >>> 32);
+                low[lane] = (int) nonce;
+            }
+            for (int i = 0; i < 8; ++i) {
+                IntVector.broadcast(SPECIES, midstate[i]).intoArray(state, i * LANES);
+            }
+            for (int block = 0; block < tailBlocks; ++block) {
+                for (int t = 0; t < 16; ++t) {
+                    int index = block * 16 + t;
+                    IntVector word;
+                    if (index == nonceWordIndex) {
+                        word = IntVector.fromArray(SPECIES, high, 0);
+                    } else if (index == nonceWordIndex + 1) {
+                        word = IntVector.fromArray(SPECIES, low, 0);
+                    } else {
+                        word = IntVector.broadcast(SPECIES, tail[index]);
+                    }
+                    word.intoArray(w, t * LANES);
+                }
+                compress();
+            }
+
+            // 先只比较最高位的字，绝大多数通道在这里就被排除
+            for (int lane = 0; lane < LANES && base + lane < count; ++lane) {
+                if (Integer.compareUnsigned(state[lane], targetWords[0]) > 0) {
+                    continue;
+                }
+                for (int i = 0; i < 8; ++i) {
+                    hashWords[i] = state[i * LANES + lane];
+                }
+                if (MinerUtil.hashMeetsTarget(hashWords, targetWords)) {
+                    return base + lane;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 对所有通道同时执行SHA256压缩函数，消息分组已写入w的前16个字，结果累加到state
+     */
+    private void compress() {
+        for (int t = 16; t < 64; ++t) {
+            IntVector w15 = IntVector.fromArray(SPECIES, w, (t - 15) * LANES);
+            IntVector w2 = IntVector.fromArray(SPECIES, w, (t - 2) * LANES);
+            IntVector s0 = w15.lanewise(VectorOperators.ROR, 7)
+                    .lanewise(VectorOperators.XOR, w15.lanewise(VectorOperators.ROR, 18))
+                    .lanewise(VectorOperators.XOR, w15.lanewise(VectorOperators.LSHR, 3));
+            IntVector s1 = w2.lanewise(VectorOperators.ROR, 17)
+                    .lanewise(VectorOperators.XOR, w2.lanewise(VectorOperators.ROR, 19))
+                    .lanewise(VectorOperators.XOR, w2.lanewise(VectorOperators.LSHR, 10));
+            IntVector.fromArray(SPECIES, w, (t - 16) * LANES)
+                    .add(s0)
+                    .add(IntVector.fromArray(SPECIES, w, (t - 7) * LANES))
+                    .add(s1)
+                    .intoArray(w, t * LANES);
+        }
+
+        IntVector a = IntVector.fromArray(SPECIES, state, 0);
+        IntVector b = IntVector.fromArray(SPECIES, state, LANES);
+        IntVector c = IntVector.fromArray(SPECIES, state, 2 * LANES);
+        IntVector d = IntVector.fromArray(SPECIES, state, 3 * LANES);
+        IntVector e = IntVector.fromArray(SPECIES, state, 4 * LANES);
+        IntVector f = IntVector.fromArray(SPECIES, state, 5 * LANES);
+        IntVector g = IntVector.fromArray(SPECIES, state, 6 * LANES);
+        IntVector h = IntVector.fromArray(SPECIES, state, 7 * LANES);
+        for (int t = 0; t < 64; ++t) {
+            IntVector s1 = e.lanewise(VectorOperators.ROR, 6)
+                    .lanewise(VectorOperators.XOR, e.lanewise(VectorOperators.ROR, 11))
+                    .lanewise(VectorOperators.XOR, e.lanewise(VectorOperators.ROR, 25));
+            IntVector ch = e.and(f).lanewise(VectorOperators.XOR, e.not().and(g));
+            IntVector t1 = h.add(s1).add(ch).add(Sha256Midstate.K[t])
+                    .add(IntVector.fromArray(SPECIES, w, t * LANES));
+            IntVector s0 = a.lanewise(VectorOperators.ROR, 2)
+                    .lanewise(VectorOperators.XOR, a.lanewise(VectorOperators.ROR, 13))
+                    .lanewise(VectorOperators.XOR, a.lanewise(VectorOperators.ROR, 22));
+            IntVector maj = a.and(b).lanewise(VectorOperators.XOR, a.and(c))
+                    .lanewise(VectorOperators.XOR, b.and(c));
+            IntVector t2 = s0.add(maj);
+            h = g;
+            g = f;
+            f = e;
+            e = d.add(t1);
+            d = c;
+            c = b;
+            b = a;
+            a = t1.add(t2);
+        }
+        IntVector.fromArray(SPECIES, state, 0).add(a).intoArray(state, 0);
+        IntVector.fromArray(SPECIES, state, LANES).add(b).intoArray(state, LANES);
+        IntVector.fromArray(SPECIES, state, 2 * LANES).add(c).intoArray(state, 2 * LANES);
+        IntVector.fromArray(SPECIES, state, 3 * LANES).add(d).intoArray(state, 3 * LANES);
+        IntVector.fromArray(SPECIES, state, 4 * LANES).add(e).intoArray(state, 4 * LANES);
+        IntVector.fromArray(SPECIES, state, 5 * LANES).add(f).intoArray(state, 5 * LANES);
+        IntVector.fromArray(SPECIES, state, 6 * LANES).add(g).intoArray(state, 6 * LANES);
+        IntVector.fromArray(SPECIES, state, 7 * LANES).add(h).intoArray(state, 7 * LANES);
+    }
+
+    @Override
+    public String getName() {
+        return "vector-" + LANES + "x32";
+    }
+}
@@ -0,0 +1,61 @@
+package unit;
+
+import data.BlockFilter;
+import org.junit.Assert;
+import org.junit.Test;
+import utils.SecurityUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class BlockFilterTest {
+
+    private static byte[][] items(int from, int to) {
+        byte[][] items = new byte[to - from][];
+        for (int i = from; i < to; i++) {
+            items[i - from] = SecurityUtil.sha256Digest(("pubkey" + i).getBytes(StandardCharsets.UTF_8));
+        }
+        return items;
+    }
+
+    @Test
+    public void sipHashTest() {
+        // SipHash论文中的测试向量：密钥为00..0f
+        long k0 = 0x0706050403020100L;
+        long k1 = 0x0f0e0d0c0b0a0908L;
+        Assert.assertEquals(0x726fdb47dd0e0e31L, BlockFilter.sipHash24(k0, k1, new byte[0]));
+        Assert.assertEquals(0xa129ca6149be45e5L,
+                BlockFilter.sipHash24(k0, k1, SecurityUtil.hexString2Bytes("000102030405060708090a0b0c0d0e")));
+    }
+
+    @Test
+    public void matchTest() {
+        byte[] key = Arrays.copyOf(SecurityUtil.sha256Digest("block".getBytes(StandardCharsets.UTF_8)), 16);
+        byte[][] items = items(0, 200);
+        BlockFilter filter = BlockFilter.build(key, items);
+        Assert.assertEquals(200, filter.getN());
+        // 每个元素约占P + 2个比特
+        Assert.assertTrue(filter.toBytes().length < 200 * (BlockFilter.P + 2) / 8 + 10);
+        for (byte[] item : items) {
+            Assert.assertTrue(filter.match(item));
+        }
+        byte[][] others = items(200, 20200);
+        int falsePositives = 0;
+        for (byte[] item : others) {
+            if (filter.match(item)) {
+                ++falsePositives;
+            }
+        }
+        Assert.assertTrue(falsePositives < 5);
+        Assert.assertTrue(filter.matchAny(Arrays.asList(others[0], others[1], items[123])));
+    }
+
+    @Test
+    public void emptyFilterTest() {
+        BlockFilter filter = BlockFilter.build(new byte[16], new byte[0][]);
+        Assert.assertEquals(0, filter.getN());
+        Assert.assertArrayEquals(new byte[]{0}, filter.toBytes());
+        Assert.assertFalse(filter.match(items(0, 1)[0]));
+        Assert.assertFalse(Arrays.equals(new byte[32], filter.getFilterHeader(new byte[32])));
+    }
+}
@@ -0,0 +1,31 @@
+package unit;
+
+import data.BlockHeader;
+import org.junit.Assert;
+import org.junit.Test;
+import utils.SecurityUtil;
+
+public class BlockHeaderTest {
+
+    @Test
+    public void fromBytesTest() {
+        String preBlockHash = SecurityUtil.sha256Digest("pre");
+        String merkleRootHash = SecurityUtil.sha256Digest("merkle");
+        BlockHeader blockHeader = new BlockHeader(preBlockHash, merkleRootHash, 0x1f0fffff, 12345L);
+
+        // 放在数组中间，检查偏移量的处理
+        byte[] data = new byte[BlockHeader.HEADER_SIZE + 10];
+        System.arraycopy(blockHeader.toBytes(), 0, data, 10, BlockHeader.HEADER_SIZE);
+        BlockHeader restored = BlockHeader.fromBytes(data, 10);
+
+        Assert.assertEquals(preBlockHash, restored.getPreBlockHash());
+        Assert.assertEquals(merkleRootHash, restored.getMerkleRootHash());
+        Assert.assertEquals(blockHeader.getTimestamp(), restored.getTimestamp());
+        Assert.assertEquals(blockHeader.getBits(), restored.getBits());
+        Assert.assertEquals(blockHeader.getNonce(), restored.getNonce());
+        Assert.assertEquals(blockHeader.getHash(), restored.getHash());
+        // 创世区块头的null哈希还原为全0，序列化结果不变
+        BlockHeader genesis = new BlockHeader(null, null, 1L);
+        Assert.assertArrayEquals(genesis.toBytes(), BlockHeader.fromBytes(genesis.toBytes(), 0).toBytes());
+    }
+}
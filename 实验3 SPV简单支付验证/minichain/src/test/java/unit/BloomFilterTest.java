@@ -0,0 +1,57 @@
+package unit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import spv.BloomFilter;
+import utils.SecurityUtil;
+
+import java.nio.charset.StandardCharsets;
+
+public class BloomFilterTest {
+
+    @Test
+    public void murmurHash3Test() {
+        // 比特币中MurmurHash3的测试向量
+        Assert.assertEquals(0x00000000, BloomFilter.murmurHash3(0x00000000, new byte[0]));
+        Assert.assertEquals(0x6a396f08, BloomFilter.murmurHash3(0xFBA4C795, new byte[0]));
+        Assert.assertEquals(0x514e28b7, BloomFilter.murmurHash3(0x00000000, SecurityUtil.hexString2Bytes("00")));
+        Assert.assertEquals(0xea3f0b17, BloomFilter.murmurHash3(0xFBA4C795, SecurityUtil.hexString2Bytes("00")));
+        Assert.assertEquals(0x2362f9de, BloomFilter.murmurHash3(0x5082EDEE, SecurityUtil.hexString2Bytes("21436587")));
+        // 剩余1 ~ 3字节的各种情况
+        Assert.assertEquals(0x16c6b7ab, BloomFilter.murmurHash3(0x00000000, SecurityUtil.hexString2Bytes("0011")));
+        Assert.assertEquals(0x8eb51c3d, BloomFilter.murmurHash3(0x00000000, SecurityUtil.hexString2Bytes("001122")));
+        Assert.assertEquals(0xe2301fa8, BloomFilter.murmurHash3(0x00000000, SecurityUtil.hexString2Bytes("0011223344")));
+        Assert.assertEquals(0xb074502c, BloomFilter.murmurHash3(0x00000000, SecurityUtil.hexString2Bytes("00112233445566")));
+    }
+
+    @Test
+    public void bip37FilterTest() {
+        // BIP37中的过滤器测试向量：3个元素、假阳性率0.01、tweak为0
+        BloomFilter filter = new BloomFilter(3, 0.01, 0);
+        filter.insert(SecurityUtil.hexString2Bytes("99108ad8ed9bb6274d3980bab5a85c048f0950c8"));
+        Assert.assertTrue(filter.contains(SecurityUtil.hexString2Bytes("99108ad8ed9bb6274d3980bab5a85c048f0950c8")));
+        Assert.assertFalse(filter.contains(SecurityUtil.hexString2Bytes("19108ad8ed9bb6274d3980bab5a85c048f0950c8")));
+        filter.insert(SecurityUtil.hexString2Bytes("b5a2c786d9ef4658287ced5914b37a1b4aa32eee"));
+        filter.insert(SecurityUtil.hexString2Bytes("b9300670b4c5366e95b2699e8b18bc75e5f729c5"));
+        Assert.assertEquals(5, filter.getHashFuncs());
+        Assert.assertEquals("614e9b", SecurityUtil.bytes2HexString(filter.getData()));
+    }
+
+    @Test
+    public void noFalseNegativeTest() {
+        BloomFilter filter = new BloomFilter(100, 0.0001, 12345);
+        for (int i = 0; i < 100; i++) {
+            filter.insert(("address" + i).getBytes(StandardCharsets.US_ASCII));
+        }
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(filter.contains(("address" + i).getBytes(StandardCharsets.US_ASCII)));
+        }
+        int falsePositives = 0;
+        for (int i = 100; i < 10100; i++) {
+            if (filter.contains(("address" + i).getBytes(StandardCharsets.US_ASCII))) {
+                ++falsePositives;
+            }
+        }
+        Assert.assertTrue(falsePositives < 20);
+    }
+}
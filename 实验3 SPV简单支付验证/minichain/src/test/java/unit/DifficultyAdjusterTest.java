@@ -0,0 +1,36 @@
+package unit;
+
+import config.MiniChainConfig;
+import consensus.DifficultyAdjuster;
+import data.BlockHeader;
+import org.junit.Assert;
+import org.junit.Test;
+import utils.MinerUtil;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+public class DifficultyAdjusterTest {
+
+    /**
+     * 连续出块过快时目标值不断缩小，但不会小于1，链始终可以继续出块
+     */
+    @Test
+    public void minTargetTest() {
+        List<BlockHeader> window = new ArrayList<>();
+        int bits = MiniChainConfig.INIT_BITS;
+        for (int height = 0; height < 2000; ++height) {
+            BlockHeader blockHeader = new BlockHeader(null, null, bits, 0);
+            // 所有区块的时间戳相同
+            blockHeader.setTimestamp(0);
+            window.add(blockHeader);
+            if (window.size() > MiniChainConfig.RETARGET_WINDOW + 1) {
+                window.remove(0);
+            }
+            bits = DifficultyAdjuster.getNextBits(window);
+            Assert.assertTrue(MinerUtil.bitsToTarget(bits).signum() > 0);
+        }
+        Assert.assertEquals(BigInteger.ONE, MinerUtil.bitsToTarget(bits));
+    }
+}
@@ -0,0 +1,109 @@
+package unit;
+
+import config.MiniChainConfig;
+import data.Block;
+import data.BlockBody;
+import data.BlockChain;
+import data.BlockHeader;
+import data.MerkleTree;
+import data.Transaction;
+import data.UTXO;
+import script.Script;
+import utils.MinerUtil;
+import utils.SecurityUtil;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 各测试共用的密钥与交易数据
+ */
+final class Fixtures {
+
+    static final String[] ADDRESSES = {"1A", "1B", "1C", "1D", "1E"};
+
+    /**
+     * 与SecurityUtil.secp256k1Generate相同，使用secp256k1曲线；较新的JDK（16起）不再提供secp256k1，此时退回secp256r1。
+     * 签名、验签（SHA256withECDSA）及公钥的X.509编码都与曲线无关，被测的代码路径相同。
+     * 不直接调用secp256k1Generate，是因为它在曲线不可用时会调用System.exit结束测试进程
+     */
+    private static final String CURVE = supportedCurve();
+
+    private Fixtures() {
+    }
+
+    private static String supportedCurve() {
+        try {
+            KeyPairGenerator.getInstance("EC").initialize(new ECGenParameterSpec("secp256k1"));
+            return "secp256k1";
+        } catch (InvalidAlgorithmParameterException e) {
+            return "secp256r1";
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static KeyPair generateKeyPair() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+        keyPairGenerator.initialize(new ECGenParameterSpec(CURVE), new SecureRandom());
+        return keyPairGenerator.generateKeyPair();
+    }
+
+    /**
+     * 随机生成blockCount个区块，区块内的交易可以花费同一区块中前面交易的输出，部分输出使用多重签名脚本
+     */
+    static List<Transaction[]> randomBlocks(int blockCount, long seed) throws Exception {
+        KeyPair[] keys = {generateKeyPair(), generateKeyPair()};
+        Random random = new Random(seed);
+        List<UTXO> unspent = new ArrayList<>();
+        List<Transaction[]> blocks = new ArrayList<>();
+        for (int height = 0; height < blockCount; ++height) {
+            Transaction[] transactions = new Transaction[1 + random.nextInt(3)];
+            for (int i = 0; i < transactions.length; ++i) {
+                List<UTXO> inUtxos = new ArrayList<>();
+                for (int j = random.nextInt(3); j > 0 && !unspent.isEmpty(); --j) {
+                    inUtxos.add(unspent.remove(random.nextInt(unspent.size())));
+                }
+                UTXO[] outUtxos = new UTXO[1 + random.nextInt(3)];
+                for (int j = 0; j < outUtxos.length; ++j) {
+                    String walletAddress = ADDRESSES[random.nextInt(ADDRESSES.length)];
+                    outUtxos[j] = random.nextInt(4) == 0
+                            ? new UTXO(walletAddress, random.nextInt(1000),
+                                    Script.multisig(1, keys[0].getPublic(), keys[1].getPublic()))
+                            : new UTXO(walletAddress, random.nextInt(1000), keys[random.nextInt(2)].getPublic());
+                    unspent.add(outUtxos[j]);
+                }
+                transactions[i] = new Transaction(inUtxos.toArray(new UTXO[0]), outUtxos, new byte[0],
+                        keys[0].getPublic(), height * 10L + i);
+            }
+            blocks.add(transactions);
+        }
+        return blocks;
+    }
+
+    /**
+     * 在区块链的最新区块之后构造区块并顺序搜索nonce，区块尚未加入链中。
+     * 时间戳按期望的出块间隔递增，难度调整后目标不变，测试中连续出块不会越来越难
+     */
+    static Block mineBlock(BlockChain blockChain, Transaction... transactions) {
+        BlockHeader latest = blockChain.getLatestBlock().getBlockHeader();
+        byte[][] leaves = new byte[transactions.length][];
+        for (int i = 0; i < transactions.length; ++i) {
+            leaves[i] = transactions[i].getTxId();
+        }
+        BlockBody blockBody = new BlockBody(new MerkleTree(leaves), transactions);
+        int bits = blockChain.getNextBits();
+        BlockHeader blockHeader = new BlockHeader(latest.getHash(), blockBody.getMerkleRootHash(), bits, 0);
+        blockHeader.setTimestamp(latest.getTimestamp() + MiniChainConfig.TARGET_BLOCK_INTERVAL);
+        while (!MinerUtil.hashMeetsTarget(SecurityUtil.sha256Digest(blockHeader.toBytes()), bits)) {
+            blockHeader.setNonce(blockHeader.getNonce() + 1);
+        }
+        return new Block(blockHeader, blockBody);
+    }
+}
@@ -0,0 +1,96 @@
+package unit;
+
+import data.MerkleAccumulator;
+import data.MerkleTree;
+import org.junit.Assert;
+import org.junit.Test;
+import utils.SecurityUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class MerkleTreeTest {
+
+    private static byte[][] leaves(int count) {
+        byte[][] leaves = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            leaves[i] = SecurityUtil.sha256Digest(("tx" + i).getBytes(StandardCharsets.UTF_8));
+        }
+        return leaves;
+    }
+
+    private static byte[] concat(byte[] left, byte[] right) {
+        byte[] data = new byte[left.length + right.length];
+        System.arraycopy(left, 0, data, 0, left.length);
+        System.arraycopy(right, 0, data, left.length, right.length);
+        return data;
+    }
+
+    /**
+     * 逐层顺序计算的参考实现
+     */
+    private static byte[] referenceRoot(byte[][] level) {
+        while (level.length > 1) {
+            byte[][] parents = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < parents.length; i++) {
+                byte[] right = 2 * i + 1 < level.length ? level[2 * i + 1] : level[2 * i];
+                parents[i] = SecurityUtil.sha256Digest(concat(level[2 * i], right));
+            }
+            level = parents;
+        }
+        return level[0];
+    }
+
+    @Test
+    public void smallTreeTest() {
+        byte[][] leaves = leaves(3);
+        byte[] left = SecurityUtil.sha256Digest(concat(leaves[0], leaves[1]));
+        byte[] right = SecurityUtil.sha256Digest(concat(leaves[2], leaves[2]));
+        Assert.assertArrayEquals(SecurityUtil.sha256Digest(concat(left, right)), new MerkleTree(leaves).getRoot());
+        Assert.assertArrayEquals(leaves[0], new MerkleTree(leaves(1)).getRoot());
+        Assert.assertNull(new MerkleTree(new byte[0][]).getRoot());
+    }
+
+    @Test
+    public void parallelTreeTest() {
+        // 叶子数足够多时会并行计算各层
+        byte[][] leaves = leaves(10001);
+        Assert.assertArrayEquals(referenceRoot(leaves), new MerkleTree(leaves).getRoot());
+    }
+
+    @Test
+    public void pathTest() {
+        // 覆盖每层节点数为奇数、需要复制最后一个节点的情况
+        for (int count = 1; count <= 17; count++) {
+            byte[][] leaves = leaves(count);
+            MerkleTree merkleTree = new MerkleTree(leaves);
+            for (int i = 0; i < count; i++) {
+                Assert.assertArrayEquals(merkleTree.getRoot(), MerkleTree.computeRoot(leaves[i], merkleTree.getPath(i)));
+            }
+        }
+        byte[][] leaves = leaves(5);
+        MerkleTree merkleTree = new MerkleTree(leaves);
+        Assert.assertFalse(Arrays.equals(merkleTree.getRoot(), MerkleTree.computeRoot(leaves[1], merkleTree.getPath(2))));
+    }
+
+    @Test
+    public void accumulatorTest() {
+        byte[][] leaves = leaves(40);
+        MerkleAccumulator accumulator = new MerkleAccumulator();
+        Assert.assertNull(accumulator.toMerkleTree().getRoot());
+        for (int count = 1; count <= leaves.length; count++) {
+            // 每加入一个叶子都取一次根，之后还能继续加入
+            accumulator.add(leaves[count - 1]);
+            byte[][] prefix = Arrays.copyOf(leaves, count);
+            MerkleTree expected = new MerkleTree(prefix);
+            MerkleTree actual = accumulator.toMerkleTree();
+            Assert.assertArrayEquals(expected.getRoot(), actual.getRoot());
+            for (int i = 0; i < count; i++) {
+                Assert.assertEquals(expected.getPath(i).toString(), actual.getPath(i).toString());
+            }
+        }
+        accumulator.clear();
+        accumulator.add(leaves[0]);
+        Assert.assertArrayEquals(leaves[0], accumulator.toMerkleTree().getRoot());
+    }
+}
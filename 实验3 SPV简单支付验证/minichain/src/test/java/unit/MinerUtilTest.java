@@ -0,0 +1,37 @@
+package unit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import utils.MinerUtil;
+
+import java.math.BigInteger;
+
+public class MinerUtilTest {
+
+    @Test
+    public void bitsTest() {
+        // 0x1f0fffff 即 0x000fffff 后接28个0字节
+        BigInteger target = MinerUtil.bitsToTarget(0x1f0fffff);
+        Assert.assertEquals(BigInteger.valueOf(0x0fffff).shiftLeft(8 * 28), target);
+        Assert.assertEquals(0x1f0fffff, MinerUtil.targetToBits(target));
+        Assert.assertEquals(0x1d00ffff, MinerUtil.targetToBits(MinerUtil.bitsToTarget(0x1d00ffff)));
+        // 尾数最高位被占用时需要进位到指数
+        Assert.assertEquals(0x02008000, MinerUtil.targetToBits(BigInteger.valueOf(0x80)));
+    }
+
+    @Test
+    public void hashMeetsTargetTest() {
+        int[] targetWords = MinerUtil.bitsToTargetWords(0x1f0fffff);
+        Assert.assertArrayEquals(new int[]{0x000fffff, 0, 0, 0, 0, 0, 0, 0}, targetWords);
+        Assert.assertTrue(MinerUtil.hashMeetsTarget(new int[]{0x000fffff, 0, 0, 0, 0, 0, 0, 0}, targetWords));
+        Assert.assertTrue(MinerUtil.hashMeetsTarget(new int[]{0x0000ffff, -1, -1, -1, -1, -1, -1, -1}, targetWords));
+        Assert.assertFalse(MinerUtil.hashMeetsTarget(new int[]{0x000fffff, 1, 0, 0, 0, 0, 0, 0}, targetWords));
+        Assert.assertFalse(MinerUtil.hashMeetsTarget(new int[]{0xf0000000, 0, 0, 0, 0, 0, 0, 0}, targetWords));
+
+        byte[] hash = new byte[32];
+        hash[1] = 0x0f;
+        Assert.assertTrue(MinerUtil.hashMeetsTarget(hash, 0x1f0fffff));
+        hash[1] = 0x10;
+        Assert.assertFalse(MinerUtil.hashMeetsTarget(hash, 0x1f0fffff));
+    }
+}
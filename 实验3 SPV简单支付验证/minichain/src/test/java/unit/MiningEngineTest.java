@@ -0,0 +1,39 @@
+package unit;
+
+import consensus.MiningEngine;
+import data.BlockHeader;
+import org.junit.Assert;
+import org.junit.Test;
+import utils.MinerUtil;
+import utils.SecurityUtil;
+
+public class MiningEngineTest {
+
+    @Test
+    public void timestampRolloverTest() {
+        // 每个线程只有64个nonce，难度目标约4096次尝试才能满足一次，必然需要滚动时间戳
+        MiningEngine miningEngine = new MiningEngine(2, 64);
+        BlockHeader blockHeader = new BlockHeader(SecurityUtil.sha256Digest("pre"), SecurityUtil.sha256Digest("root"), 0x1f0fffff, 0);
+        long timestamp = blockHeader.getTimestamp();
+        Assert.assertTrue(miningEngine.search(blockHeader));
+
+        Assert.assertTrue(MinerUtil.hashMeetsTarget(SecurityUtil.sha256Digest(blockHeader.toBytes()), 0x1f0fffff));
+        Assert.assertTrue(blockHeader.getNonce() >= 0 && blockHeader.getNonce() < 128);
+        Assert.assertTrue(blockHeader.getTimestamp() >= timestamp);
+        Assert.assertTrue(miningEngine.getLastHashCount() > 0);
+    }
+
+    @Test
+    public void interruptTest() {
+        // 难度约需2^32次尝试，调用前已被中断，应立即返回且不修改区块头
+        MiningEngine miningEngine = new MiningEngine(2);
+        BlockHeader blockHeader = new BlockHeader(SecurityUtil.sha256Digest("pre"), SecurityUtil.sha256Digest("root"), 0x1d00ffff, 7);
+        long timestamp = blockHeader.getTimestamp();
+        Thread.currentThread().interrupt();
+
+        Assert.assertFalse(miningEngine.search(blockHeader));
+        Assert.assertTrue(Thread.interrupted());
+        Assert.assertEquals(timestamp, blockHeader.getTimestamp());
+        Assert.assertEquals(7, blockHeader.getNonce());
+    }
+}
@@ -0,0 +1,40 @@
+package unit;
+
+import data.BlockHeader;
+import org.junit.Assert;
+import org.junit.Test;
+import utils.MinerUtil;
+import utils.NonceHasher;
+import utils.NonceHasherFactory;
+import utils.SecurityUtil;
+
+public class NonceHasherTest {
+
+    @Test
+    public void sameHitsAsScalarTest() {
+        BlockHeader blockHeader = new BlockHeader(SecurityUtil.sha256Digest("pre"), SecurityUtil.sha256Digest("root"), 0x1f0fffff, 0);
+        byte[] headerBytes = blockHeader.toBytes();
+        int[] targetWords = MinerUtil.bitsToTargetWords(0x1f0fffff);
+
+        for (NonceHasher hasher : NonceHasherFactory.available()) {
+            hasher.reset(headerBytes, BlockHeader.NONCE_OFFSET);
+            // 从一个跨越2^32边界的位置开始，检验nonce高位字在各通道中不同的情况
+            long nonce = (1L << 32) - 100;
+            for (int hits = 0; hits < 5; hits++) {
+                int index = hasher.scan(nonce, 1 << 20, targetWords);
+                Assert.assertTrue(hasher.getName(), index >= 0);
+                nonce += index;
+                blockHeader.setNonce(nonce);
+                Assert.assertTrue(hasher.getName(),
+                        MinerUtil.hashMeetsTarget(SecurityUtil.sha256Digest(blockHeader.toBytes()), 0x1f0fffff));
+                // 检查跳过的nonce中没有遗漏的结果
+                for (long skipped = nonce - index; skipped < nonce; skipped++) {
+                    blockHeader.setNonce(skipped);
+                    Assert.assertFalse(hasher.getName(),
+                            MinerUtil.hashMeetsTarget(SecurityUtil.sha256Digest(blockHeader.toBytes()), 0x1f0fffff));
+                }
+                nonce++;
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package unit;
+
+import data.OutPointMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class OutPointMapTest {
+
+    @Test
+    public void putGetRemoveTest() {
+        OutPointMap map = new OutPointMap(2);
+        byte[] txId = new byte[32];
+        txId[31] = 1;
+        Assert.assertEquals(OutPointMap.NO_VALUE, map.put(txId, 0, 10));
+        Assert.assertEquals(OutPointMap.NO_VALUE, map.put(txId, 1, 11));
+        Assert.assertEquals(10, map.put(txId, 0, 20));
+        Assert.assertEquals(20, map.get(txId, 0));
+        Assert.assertEquals(11, map.get(txId, 1));
+        Assert.assertEquals(OutPointMap.NO_VALUE, map.get(txId, 2));
+        // 键比较txid的全部32字节
+        byte[] other = txId.clone();
+        other[0] = 1;
+        Assert.assertFalse(map.containsKey(other, 0));
+        Assert.assertEquals(2, map.size());
+
+        Assert.assertEquals(20, map.remove(txId, 0));
+        Assert.assertEquals(OutPointMap.NO_VALUE, map.remove(txId, 0));
+        Assert.assertEquals(1, map.size());
+        map.clear();
+        Assert.assertTrue(map.isEmpty());
+        Assert.assertFalse(map.containsKey(txId, 1));
+    }
+
+    /**
+     * 随机增删与HashMap的结果一致，覆盖扩容以及删除时探测链上条目的前移
+     */
+    @Test
+    public void matchesHashMapTest() {
+        Random random = new Random(7);
+        OutPointMap map = new OutPointMap();
+        Map<ByteBuffer, Long> expected = new HashMap<>();
+        byte[][] txIds = new byte[500][32];
+        for (byte[] txId : txIds) {
+            random.nextBytes(txId);
+        }
+        for (int i = 0; i < 200000; ++i) {
+            byte[] txId = txIds[random.nextInt(txIds.length)];
+            int index = random.nextInt(8);
+            ByteBuffer key = ByteBuffer.allocate(36).put(txId).putInt(index);
+            key.flip();
+            if (random.nextInt(3) == 0) {
+                Long removed = expected.remove(key);
+                Assert.assertEquals(removed == null ? OutPointMap.NO_VALUE : removed, map.remove(txId, index));
+            } else {
+                long value = random.nextInt(Integer.MAX_VALUE);
+                Long previous = expected.put(key, value);
+                Assert.assertEquals(previous == null ? OutPointMap.NO_VALUE : previous, map.put(txId, index, value));
+            }
+        }
+        Assert.assertEquals(expected.size(), map.size());
+        for (Map.Entry<ByteBuffer, Long> entry : expected.entrySet()) {
+            ByteBuffer key = entry.getKey();
+            byte[] txId = Arrays.copyOf(key.array(), 32);
+            Assert.assertEquals((long) entry.getValue(), map.get(txId, key.getInt(32)));
+        }
+        // 预留容量足够时不扩容
+        OutPointMap sized = new OutPointMap(1000);
+        int capacity = sized.capacity();
+        for (int i = 0; i < 1000; ++i) {
+            sized.put(txIds[i % txIds.length], i / txIds.length, i);
+        }
+        Assert.assertEquals(capacity, sized.capacity());
+    }
+}
@@ -0,0 +1,99 @@
+package unit;
+
+import data.Transaction;
+import data.UTXO;
+import org.junit.Assert;
+import org.junit.Test;
+import script.Script;
+import script.ScriptInterpreter;
+import utils.SecurityUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+
+public class ScriptTest {
+
+    @Test
+    public void payToPublicKeyHashTest() throws Exception {
+        KeyPair a = Fixtures.generateKeyPair();
+        KeyPair b = Fixtures.generateKeyPair();
+        UTXO utxo = new UTXO("1AddressOfA", 100, a.getPublic());
+        Assert.assertEquals("OP_DUP OP_HASH160 <" + SecurityUtil.bytes2HexString(utxo.getPublicKeyHash())
+                + "> OP_EQUALVERIFY OP_CHECKSIG", utxo.getLockingScript().toString());
+
+        byte[] aEncoded = a.getPublic().getEncoded();
+        byte[] aSign = SecurityUtil.signature(aEncoded, a.getPrivate());
+        Script unlocking = Script.unlocking(aSign, aEncoded);
+        // 同一个解锁脚本可以反复使用
+        Assert.assertTrue(utxo.unlockScript(unlocking, aEncoded));
+        Assert.assertTrue(utxo.unlockScript(unlocking, aEncoded));
+        Assert.assertTrue(utxo.unlockScript(aSign, a.getPublic()));
+
+        // 公钥不匹配公钥哈希，或签名不是该公钥的私钥签的
+        byte[] bEncoded = b.getPublic().getEncoded();
+        byte[] bSign = SecurityUtil.signature(bEncoded, b.getPrivate());
+        Assert.assertFalse(utxo.unlockScript(Script.unlocking(bSign, bEncoded), bEncoded));
+        Assert.assertFalse(utxo.unlockScript(Script.unlocking(bSign, aEncoded), aEncoded));
+        Assert.assertFalse(utxo.unlockScript(Script.unlocking(aEncoded), aEncoded));
+    }
+
+    @Test
+    public void multisigTest() throws Exception {
+        KeyPair[] keys = {Fixtures.generateKeyPair(), Fixtures.generateKeyPair(), Fixtures.generateKeyPair()};
+        byte[] message = "spend".getBytes(StandardCharsets.UTF_8);
+        byte[][] signs = new byte[3][];
+        for (int i = 0; i < 3; i++) {
+            signs[i] = SecurityUtil.signature(message, keys[i].getPrivate());
+        }
+        Script locking = Script.multisig(2, keys[0].getPublic(), keys[1].getPublic(), keys[2].getPublic());
+        ScriptInterpreter interpreter = ScriptInterpreter.get();
+
+        Assert.assertTrue(interpreter.verify(Script.unlocking(signs[0], signs[1]), locking, message));
+        Assert.assertTrue(interpreter.verify(Script.unlocking(signs[0], signs[2]), locking, message));
+        Assert.assertTrue(interpreter.verify(Script.unlocking(signs[1], signs[2]), locking, message));
+        // 签名须按公钥顺序排列，且数量足够
+        Assert.assertFalse(interpreter.verify(Script.unlocking(signs[2], signs[0]), locking, message));
+        Assert.assertFalse(interpreter.verify(Script.unlocking(signs[0], signs[0]), locking, message));
+        Assert.assertFalse(interpreter.verify(Script.unlocking(signs[0]), locking, message));
+        Assert.assertFalse(interpreter.verify(Script.unlocking(signs[0], signs[1]), locking,
+                "other".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void compileTest() throws Exception {
+        Script script = Script.multisig(1, Fixtures.generateKeyPair().getPublic());
+        Assert.assertEquals(script, Script.compile(script.toBytes()));
+        Assert.assertFalse(script.isPushOnly());
+        Assert.assertTrue(Script.unlocking(new byte[300], new byte[0]).isPushOnly());
+        Assert.assertEquals(Script.unlocking(new byte[300]), Script.compile(Script.unlocking(new byte[300]).toBytes()));
+        try {
+            Script.compile(new byte[]{(byte) 0xff});
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            Script.compile(new byte[]{0x05, 1, 2});
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        // 解锁脚本不能包含操作码
+        Assert.assertFalse(ScriptInterpreter.get().verify(Script.compile(new byte[]{Script.OP_1, (byte) Script.OP_DUP}),
+                Script.compile(new byte[]{(byte) Script.OP_EQUAL}), new byte[0]));
+        Assert.assertTrue(ScriptInterpreter.get().verify(Script.compile(new byte[]{Script.OP_1, Script.OP_1}),
+                Script.compile(new byte[]{(byte) Script.OP_EQUAL}), new byte[0]));
+    }
+
+    @Test
+    public void customScriptEncodingTest() throws Exception {
+        KeyPair a = Fixtures.generateKeyPair();
+        KeyPair b = Fixtures.generateKeyPair();
+        UTXO multisig = new UTXO("1Shared", 500, Script.multisig(1, a.getPublic(), b.getPublic()));
+        UTXO[] inUtxos = {new UTXO("1AddressOfA", 500, a.getPublic())};
+        byte[] sign = SecurityUtil.signUtxos(inUtxos, new UTXO[]{multisig}, a.getPrivate());
+        Transaction transaction = new Transaction(inUtxos, new UTXO[]{multisig}, sign, a.getPublic(), 1L);
+        Transaction restored = Transaction.fromBytes(transaction.toBytes());
+        Assert.assertArrayEquals(transaction.getTxId(), restored.getTxId());
+        Assert.assertEquals(multisig.getLockingScript(), restored.getOutUtxos()[0].getLockingScript());
+        Assert.assertEquals(inUtxos[0].getLockingScript(), restored.getInUtxos()[0].getLockingScript());
+    }
+}
@@ -0,0 +1,100 @@
+package unit;
+
+import data.UTXO;
+import org.junit.Assert;
+import org.junit.Test;
+import utils.SecurityUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+public class SecurityUtilTest {
+
+    @Test
+    public void signUtxosTest() throws Exception {
+        KeyPair a = Fixtures.generateKeyPair();
+        KeyPair b = Fixtures.generateKeyPair();
+        UTXO[] inUtxos = {new UTXO("1AddressOfA", 10000, a.getPublic())};
+        UTXO[] outUtxos = {new UTXO("1AddressOfB", 300, b.getPublic()), new UTXO("1AddressOfA", 9700, a.getPublic())};
+
+        byte[] sign = SecurityUtil.signUtxos(inUtxos, outUtxos, a.getPrivate());
+        Assert.assertTrue(SecurityUtil.verifyUtxos(inUtxos, outUtxos, sign, a.getPublic()));
+        // 与先取签名数据再签名的方式兼容
+        Assert.assertTrue(SecurityUtil.verify(SecurityUtil.utxos2Bytes(inUtxos, outUtxos), sign, a.getPublic()));
+        Assert.assertFalse(SecurityUtil.verifyUtxos(inUtxos, outUtxos, sign, b.getPublic()));
+
+        // 篡改输出数额或收款方后验签失败
+        UTXO[] tamperedAmount = {new UTXO("1AddressOfB", 3000, b.getPublic()), outUtxos[1]};
+        Assert.assertFalse(SecurityUtil.verifyUtxos(inUtxos, tamperedAmount, sign, a.getPublic()));
+        UTXO[] tamperedReceiver = {new UTXO("1AddressOfB", 300, a.getPublic()), outUtxos[1]};
+        Assert.assertFalse(SecurityUtil.verifyUtxos(inUtxos, tamperedReceiver, sign, a.getPublic()));
+        // 输入和输出的划分也在签名数据中
+        Assert.assertFalse(SecurityUtil.verifyUtxos(new UTXO[0], new UTXO[]{inUtxos[0], outUtxos[0], outUtxos[1]},
+                sign, a.getPublic()));
+    }
+
+    @Test
+    public void utxos2BytesTest() throws Exception {
+        KeyPair a = Fixtures.generateKeyPair();
+        // 超过缓冲区初始容量时自动扩大
+        UTXO[] outUtxos = new UTXO[100];
+        for (int i = 0; i < outUtxos.length; i++) {
+            outUtxos[i] = new UTXO("1AddressOfA", i, a.getPublic());
+        }
+        byte[] data = SecurityUtil.utxos2Bytes(new UTXO[0], outUtxos);
+        Assert.assertEquals(4 + 100 * outUtxos[0].encodedSize(), data.length);
+        Assert.assertArrayEquals(data, SecurityUtil.utxos2Bytes(new UTXO[0], outUtxos));
+    }
+
+    @Test
+    public void sha256DigestTest() {
+        byte[] abc = "abc".getBytes(StandardCharsets.UTF_8);
+        String expected = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+        Assert.assertEquals(expected, SecurityUtil.sha256Digest("abc"));
+        Assert.assertEquals(expected, SecurityUtil.bytes2HexString(SecurityUtil.sha256Digest(abc)));
+
+        // 写入调用方的缓冲区，只哈希指定区间
+        byte[] data = "xxabcxx".getBytes(StandardCharsets.UTF_8);
+        byte[] out = new byte[40];
+        SecurityUtil.sha256Digest(data, 2, 3, out, 4);
+        Assert.assertEquals(expected, SecurityUtil.bytes2HexString(Arrays.copyOfRange(out, 4, 36)));
+
+        // 输入与输出为同一个数组
+        byte[] inPlace = Arrays.copyOf(abc, SecurityUtil.SHA256_LENGTH);
+        SecurityUtil.sha256Digest(inPlace, 0, abc.length, inPlace, 0);
+        Assert.assertEquals(expected, SecurityUtil.bytes2HexString(inPlace));
+
+        // 输出缓冲区不足时抛出异常，引擎不残留数据
+        try {
+            SecurityUtil.sha256Digest(abc, 0, abc.length, new byte[16], 0);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // 预期
+        }
+        Assert.assertEquals(expected, SecurityUtil.sha256Digest("abc"));
+
+        // 取出引擎时已reset，未完成的update不影响下一次使用
+        SecurityUtil.sha256Engine().update(abc);
+        MessageDigest engine = SecurityUtil.sha256Engine();
+        engine.update(abc);
+        Assert.assertEquals(expected, SecurityUtil.bytes2HexString(engine.digest()));
+    }
+
+    @Test
+    public void engineReuseTest() throws Exception {
+        KeyPair a = Fixtures.generateKeyPair();
+        KeyPair b = Fixtures.generateKeyPair();
+        byte[] data = "data".getBytes(StandardCharsets.UTF_8);
+        // 同一线程上交替签名、验签，引擎每次重新初始化
+        byte[] signA = SecurityUtil.signature(data, a.getPrivate());
+        byte[] signB = SecurityUtil.signature(data, b.getPrivate());
+        Assert.assertFalse(SecurityUtil.verify(data, new byte[]{1, 2, 3}, a.getPublic()));
+        Assert.assertTrue(SecurityUtil.verify(data, signA, a.getPublic()));
+        Assert.assertFalse(SecurityUtil.verify(data, signA, b.getPublic()));
+        Assert.assertTrue(SecurityUtil.verify(data, signB, b.getPublic()));
+
+        Assert.assertEquals(a.getPublic(), SecurityUtil.decodePublicKey(a.getPublic().getEncoded()));
+    }
+}
@@ -0,0 +1,43 @@
+package unit;
+
+import data.BlockHeader;
+import org.junit.Assert;
+import org.junit.Test;
+import utils.SecurityUtil;
+import utils.Sha256Midstate;
+
+import java.util.Random;
+
+public class Sha256MidstateTest {
+
+    @Test
+    public void headerHashTest() {
+        BlockHeader blockHeader = new BlockHeader(SecurityUtil.sha256Digest("pre"), SecurityUtil.sha256Digest("root"), 0);
+        byte[] headerBytes = blockHeader.toBytes();
+        Sha256Midstate hasher = new Sha256Midstate(headerBytes, BlockHeader.NONCE_OFFSET);
+        byte[] digest = new byte[32];
+        Random random = new Random(1);
+        for (int i = 0; i < 100; i++) {
+            long nonce = random.nextLong();
+            hasher.hash(nonce, digest);
+            blockHeader.setNonce(nonce);
+            Assert.assertArrayEquals(SecurityUtil.sha256Digest(blockHeader.toBytes()), digest);
+        }
+    }
+
+    @Test
+    public void twoTailBlocksTest() {
+        // nonce之后的填充放不进同一个分组时，末尾需要压缩两个分组
+        byte[] message = new byte[120];
+        new Random(2).nextBytes(message);
+        Sha256Midstate hasher = new Sha256Midstate(message, 112);
+        byte[] digest = new byte[32];
+        for (long nonce = 0; nonce < 10; nonce++) {
+            hasher.hash(nonce, digest);
+            for (int i = 0; i < 8; i++) {
+                message[112 + i] = (byte) (nonce >>> (56 - 8 * i));
+            }
+            Assert.assertArrayEquals(SecurityUtil.sha256Digest(message), digest);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package unit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import utils.SecurityUtil;
+import utils.SignatureCache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+
+public class SignatureCacheTest {
+
+    private static byte[] id(int i) {
+        return SecurityUtil.sha256Digest(("message" + i).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void verifyTest() throws Exception {
+        KeyPair keyPair = Fixtures.generateKeyPair();
+        SignatureCache cache = new SignatureCache(16);
+        byte[] data = "data".getBytes(StandardCharsets.UTF_8);
+        byte[] sign = SecurityUtil.signature(data, keyPair.getPrivate());
+
+        Assert.assertTrue(cache.verify(id(0), data, sign, keyPair.getPublic()));
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertTrue(cache.verify(id(0), data, sign, keyPair.getPublic()));
+        Assert.assertEquals(1, cache.getHits());
+
+        // 验签失败的结果不会被缓存
+        Assert.assertFalse(cache.verify(id(1), data, sign, Fixtures.generateKeyPair().getPublic()));
+        Assert.assertFalse(cache.verify(id(2), "other".getBytes(StandardCharsets.UTF_8), sign, keyPair.getPublic()));
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void clockEvictionTest() throws Exception {
+        KeyPair keyPair = Fixtures.generateKeyPair();
+        byte[] sign = new byte[]{1};
+        SignatureCache cache = new SignatureCache(4);
+        for (int i = 0; i < 4; i++) {
+            cache.add(id(i), keyPair.getPublic(), sign);
+        }
+        // 访问过的条目在下一轮淘汰中被保留
+        Assert.assertTrue(cache.contains(id(0), keyPair.getPublic(), sign));
+        Assert.assertTrue(cache.contains(id(2), keyPair.getPublic(), sign));
+        cache.add(id(4), keyPair.getPublic(), sign);
+        cache.add(id(5), keyPair.getPublic(), sign);
+        Assert.assertEquals(4, cache.size());
+        Assert.assertTrue(cache.contains(id(0), keyPair.getPublic(), sign));
+        Assert.assertTrue(cache.contains(id(2), keyPair.getPublic(), sign));
+        Assert.assertFalse(cache.contains(id(1), keyPair.getPublic(), sign));
+        Assert.assertFalse(cache.contains(id(3), keyPair.getPublic(), sign));
+        Assert.assertTrue(cache.contains(id(5), keyPair.getPublic(), sign));
+        // 键包含公钥和签名
+        Assert.assertFalse(cache.contains(id(0), Fixtures.generateKeyPair().getPublic(), sign));
+        Assert.assertFalse(cache.contains(id(0), keyPair.getPublic(), new byte[]{2}));
+    }
+}
@@ -0,0 +1,69 @@
+package unit;
+
+import consensus.SignatureVerifier;
+import data.Transaction;
+import data.UTXO;
+import org.junit.Assert;
+import org.junit.Test;
+import utils.SecurityUtil;
+
+import java.security.KeyPair;
+
+public class SignatureVerifierTest {
+
+    /**
+     * 生成一批交易，bad中的下标对应的交易使用错误的私钥签名
+     */
+    private static Transaction[] transactions(int count, int... bad) throws Exception {
+        KeyPair sender = Fixtures.generateKeyPair();
+        KeyPair other = Fixtures.generateKeyPair();
+        Transaction[] transactions = new Transaction[count];
+        for (int i = 0; i < count; i++) {
+            UTXO[] inUtxos = {new UTXO("1Sender", 100 + i, sender.getPublic())};
+            UTXO[] outUtxos = {new UTXO("1Receiver", 100 + i, other.getPublic())};
+            boolean invalid = false;
+            for (int index : bad) {
+                invalid |= index == i;
+            }
+            byte[] sign = SecurityUtil.signUtxos(inUtxos, outUtxos, invalid ? other.getPrivate() : sender.getPrivate());
+            transactions[i] = new Transaction(inUtxos, outUtxos, sign, sender.getPublic(), i);
+        }
+        return transactions;
+    }
+
+    @Test
+    public void verifyTest() throws Exception {
+        SignatureVerifier verifier = new SignatureVerifier(4);
+        Assert.assertEquals(-1, verifier.verify(transactions(32), 0));
+        Assert.assertEquals(-1, verifier.verify(new Transaction[0], 0));
+
+        // 总是返回第一笔验签失败的交易
+        Transaction[] transactions = transactions(32, 5, 9, 30);
+        Assert.assertEquals(5, verifier.verify(transactions, 0));
+        Assert.assertEquals(9, verifier.verify(transactions, 6));
+        Assert.assertEquals(30, verifier.verify(transactions, 10));
+        Assert.assertEquals(-1, verifier.verify(transactions, 31));
+
+        // 格式错误的签名同样视为验签失败
+        Transaction valid = transactions(1)[0];
+        Transaction malformed = new Transaction(valid.getInUtxos(), valid.getOutUtxos(), new byte[]{1, 2, 3},
+                valid.getSendPublicKey(), 0);
+        Assert.assertEquals(1, verifier.verify(new Transaction[]{valid, malformed}, 0));
+    }
+
+    /**
+     * 等待时被中断，没有验证完的一批交易不能视为验签通过
+     */
+    @Test
+    public void interruptTest() throws Exception {
+        SignatureVerifier verifier = new SignatureVerifier(2);
+        Thread.currentThread().interrupt();
+        try {
+            verifier.verify(transactions(8), 0);
+            Assert.fail();
+        } catch (InterruptedException expected) {
+            // 不返回-1
+        }
+        Assert.assertFalse(Thread.currentThread().isInterrupted());
+    }
+}
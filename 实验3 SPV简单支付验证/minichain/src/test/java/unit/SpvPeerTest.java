@@ -0,0 +1,165 @@
+package unit;
+
+import config.MiniChainConfig;
+import data.Account;
+import data.BlockChain;
+import data.BlockFilter;
+import data.BlockHeader;
+import data.Transaction;
+import data.UTXO;
+import org.junit.Assert;
+import org.junit.Test;
+import spv.Proof;
+import spv.SpvPeer;
+import utils.MinerUtil;
+import utils.SecurityUtil;
+
+import java.util.Collections;
+import java.util.List;
+
+public class SpvPeerTest {
+
+    /**
+     * 同步合法的区块头，用本地区块头验证Merkle证明；篡改交易哈希、区块或高度的证明都不能通过验证
+     */
+    @Test
+    public void verifyProofTest() throws Exception {
+        Account account = new Account(Fixtures.generateKeyPair());
+        BlockChain blockChain = new BlockChain(null);
+        Transaction[] transactions = payments(account, 3);
+        Assert.assertTrue(blockChain.addNewBlock(Fixtures.mineBlock(blockChain, transactions)));
+        Assert.assertTrue(blockChain.addNewBlock(Fixtures.mineBlock(blockChain)));
+
+        SpvPeer spvPeer = new SpvPeer(account, blockChain);
+        Assert.assertTrue(spvPeer.syncHeaders());
+        Assert.assertEquals(3, spvPeer.getHeaderCount());
+        Assert.assertTrue(spvPeer.simplifiedPaymentVerify());
+
+        String blockHash = blockChain.getBlock(1).getBlockHeader().getHash();
+        String txHash = SecurityUtil.bytes2HexString(transactions[1].getTxId());
+        Proof proof = blockChain.getMerkleProof(blockHash, txHash);
+        Assert.assertTrue(spvPeer.verifyProof(proof));
+
+        // 把证明套用到另一笔交易上
+        String otherTxHash = SecurityUtil.bytes2HexString(transactions[2].getTxId());
+        Assert.assertFalse(spvPeer.verifyProof(new Proof(otherTxHash, proof.getMerkleRootHash(),
+                proof.getBlockHash(), proof.getHeight(), proof.getPath())));
+        // 证明中的区块与本地同一高度的区块头不符
+        String otherBlockHash = blockChain.getBlock(2).getBlockHeader().getHash();
+        Assert.assertFalse(spvPeer.verifyProof(new Proof(txHash, proof.getMerkleRootHash(),
+                otherBlockHash, proof.getHeight(), proof.getPath())));
+        // 本地还没有的高度
+        Assert.assertFalse(spvPeer.verifyProof(new Proof(txHash, proof.getMerkleRootHash(),
+                proof.getBlockHash(), 3, proof.getPath())));
+    }
+
+    /**
+     * 全节点在合法的区块头之后提供preBlockHash、难度目标或工作量证明不正确的区块头时，轻节点拒绝该区块头，
+     * 之前合法的区块头保留在本地
+     */
+    @Test
+    public void rejectForgedHeaderTest() throws Exception {
+        Account account = new Account(Fixtures.generateKeyPair());
+        BlockChain blockChain = new BlockChain(null);
+        Assert.assertTrue(blockChain.addNewBlock(Fixtures.mineBlock(blockChain, payments(account, 1))));
+        BlockHeader latest = blockChain.getLatestBlock().getBlockHeader();
+        BlockHeader honest = Fixtures.mineBlock(blockChain).getBlockHeader();
+
+        BlockHeader wrongPreHash = new BlockHeader(latest.getMerkleRootHash(), honest.getMerkleRootHash(),
+                honest.getBits(), 0);
+        wrongPreHash.setTimestamp(honest.getTimestamp());
+        mine(wrongPreHash, true);
+
+        // 难度目标比难度调整的结果更低
+        BlockHeader wrongBits = new BlockHeader(latest.getHash(), honest.getMerkleRootHash(),
+                MiniChainConfig.MAX_TARGET_BITS, 0);
+        wrongBits.setTimestamp(honest.getTimestamp());
+        mine(wrongBits, true);
+
+        BlockHeader noWork = new BlockHeader(latest.getHash(), honest.getMerkleRootHash(), honest.getBits(), 0);
+        noWork.setTimestamp(honest.getTimestamp());
+        mine(noWork, false);
+
+        for (BlockHeader forged : new BlockHeader[]{wrongPreHash, wrongBits, noWork}) {
+            SpvPeer spvPeer = new SpvPeer(account, serving(blockChain, forged));
+            Assert.assertFalse(spvPeer.syncHeaders());
+            Assert.assertEquals(2, spvPeer.getHeaderCount());
+        }
+        SpvPeer spvPeer = new SpvPeer(account, serving(blockChain, honest));
+        Assert.assertTrue(spvPeer.syncHeaders());
+        Assert.assertEquals(3, spvPeer.getHeaderCount());
+    }
+
+    /**
+     * 轻节点保存自己计算的过滤器头：全节点之后为同一高度提供隐藏了付款的过滤器时，轻节点能发现过滤器不一致
+     */
+    @Test
+    public void relevantHeightsTest() throws Exception {
+        Account account = new Account(Fixtures.generateKeyPair());
+        final BlockChain blockChain = new BlockChain(null);
+        Assert.assertTrue(blockChain.addNewBlock(Fixtures.mineBlock(blockChain, payments(account, 1))));
+        Assert.assertTrue(blockChain.addNewBlock(Fixtures.mineBlock(blockChain)));
+
+        final boolean[] lying = {false};
+        BlockChain fullNode = new BlockChain(null) {
+            @Override
+            public List<BlockHeader> getBlockHeaders(int fromHeight) {
+                return blockChain.getBlockHeaders(fromHeight);
+            }
+
+            @Override
+            public List<BlockFilter> getBlockFilters(int fromHeight, int toHeight) {
+                List<BlockFilter> blockFilters = blockChain.getBlockFilters(fromHeight, toHeight);
+                if (lying[0] && fromHeight <= 1 && toHeight > 1) {
+                    String blockHash = blockChain.getBlock(1).getBlockHeader().getHash();
+                    blockFilters.set(1 - fromHeight, BlockFilter.build(blockHash, new Transaction[0]));
+                }
+                return blockFilters;
+            }
+        };
+        SpvPeer spvPeer = new SpvPeer(account, fullNode);
+        Assert.assertEquals(Collections.singletonList(1), spvPeer.getRelevantHeights(0));
+        Assert.assertEquals(Collections.<Integer>emptyList(), spvPeer.getRelevantHeights(2));
+
+        lying[0] = true;
+        Assert.assertNull(spvPeer.getRelevantHeights(0));
+        Assert.assertNull(spvPeer.getRelevantHeights(1));
+        Assert.assertEquals(Collections.<Integer>emptyList(), spvPeer.getRelevantHeights(2));
+    }
+
+    /**
+     * 每笔交易都向账户支付一笔新的金额
+     */
+    private static Transaction[] payments(Account account, int count) {
+        Transaction[] transactions = new Transaction[count];
+        for (int i = 0; i < count; ++i) {
+            UTXO utxo = new UTXO(account.getWalletAddress(), 100 + i, account.getPublicKey());
+            transactions[i] = new Transaction(new UTXO[0], new UTXO[]{utxo}, new byte[0], account.getPublicKey(), i);
+        }
+        return transactions;
+    }
+
+    /**
+     * 顺序搜索nonce，直到区块哈希满足（meetsTarget为true）或不满足（为false）区块头中的难度目标
+     */
+    private static void mine(BlockHeader blockHeader, boolean meetsTarget) {
+        while (MinerUtil.hashMeetsTarget(SecurityUtil.sha256Digest(blockHeader.toBytes()), blockHeader.getBits())
+                != meetsTarget) {
+            blockHeader.setNonce(blockHeader.getNonce() + 1);
+        }
+    }
+
+    /**
+     * 在区块链的区块头之后多提供一个区块头的全节点
+     */
+    private static BlockChain serving(final BlockChain blockChain, final BlockHeader extra) {
+        return new BlockChain(null) {
+            @Override
+            public List<BlockHeader> getBlockHeaders(int fromHeight) {
+                List<BlockHeader> blockHeaders = blockChain.getBlockHeaders(fromHeight);
+                blockHeaders.add(extra);
+                return blockHeaders;
+            }
+        };
+    }
+}
@@ -0,0 +1,73 @@
+package unit;
+
+import data.BlockChain;
+import data.Transaction;
+import data.TransactionPool;
+import data.UTXO;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.security.KeyPair;
+
+public class TransactionPoolTest {
+
+    /**
+     * 矿工把花费某utxo的区块加入链后、调用release之前或之后，再次花费该utxo的交易都不能入池，
+     * 包含这笔交易的区块也会被区块链拒绝
+     */
+    @Test
+    public void rejectSpentInputTest() throws Exception {
+        KeyPair a = Fixtures.generateKeyPair();
+        BlockChain blockChain = new BlockChain(null);
+        UTXO funds = new UTXO("1A", 10000, a.getPublic());
+        Transaction allocation = new Transaction(new UTXO[0], new UTXO[]{funds}, new byte[0], a.getPublic(), 0L);
+        Assert.assertTrue(blockChain.addNewBlock(Fixtures.mineBlock(blockChain, allocation)));
+
+        TransactionPool transactionPool = new TransactionPool(1);
+        Transaction spend = new Transaction(new UTXO[]{funds}, new UTXO[]{new UTXO("1B", 10000, a.getPublic())},
+                new byte[0], a.getPublic(), 1L);
+        transactionPool.put(spend, blockChain);
+        Assert.assertTrue(transactionPool.isFull());
+        Transaction[] taken = transactionPool.getAll();
+        Assert.assertTrue(blockChain.addNewBlock(Fixtures.mineBlock(blockChain, taken)));
+
+        // 在区块上链之前根据链上的utxo构造的交易
+        Transaction stale = new Transaction(new UTXO[]{funds}, new UTXO[]{new UTXO("1C", 10000, a.getPublic())},
+                new byte[0], a.getPublic(), 2L);
+        transactionPool.put(stale, blockChain);
+        Assert.assertTrue(transactionPool.isEmpty());
+        transactionPool.release(taken);
+        transactionPool.put(stale, blockChain);
+        Assert.assertTrue(transactionPool.isEmpty());
+
+        Assert.assertFalse(blockChain.addNewBlock(Fixtures.mineBlock(blockChain, stale)));
+        Assert.assertEquals(10000, blockChain.getBalance("1B"));
+        Assert.assertEquals(0, blockChain.getBalance("1C"));
+        Assert.assertEquals(10000, blockChain.getTotalSupply());
+    }
+
+    /**
+     * 输出总额超过输入总额的交易，以及初始分配之后没有输入的交易，不能入池，也不能上链
+     */
+    @Test
+    public void rejectMintingTest() throws Exception {
+        KeyPair a = Fixtures.generateKeyPair();
+        BlockChain blockChain = new BlockChain(null);
+        UTXO funds = new UTXO("1A", 10000, a.getPublic());
+        Transaction allocation = new Transaction(new UTXO[0], new UTXO[]{funds}, new byte[0], a.getPublic(), 0L);
+        Assert.assertTrue(blockChain.addNewBlock(Fixtures.mineBlock(blockChain, allocation)));
+
+        Transaction overspend = new Transaction(new UTXO[]{funds},
+                new UTXO[]{new UTXO("1B", 20000, a.getPublic())}, new byte[0], a.getPublic(), 1L);
+        Transaction issuance = new Transaction(new UTXO[0], new UTXO[]{new UTXO("1B", 10000, a.getPublic())},
+                new byte[0], a.getPublic(), 2L);
+        TransactionPool transactionPool = new TransactionPool(2);
+        for (Transaction transaction : new Transaction[]{overspend, issuance}) {
+            transactionPool.put(transaction, blockChain);
+            Assert.assertTrue(transactionPool.isEmpty());
+            Assert.assertFalse(blockChain.addNewBlock(Fixtures.mineBlock(blockChain, transaction)));
+        }
+        Assert.assertEquals(10000, blockChain.getTotalSupply());
+        Assert.assertEquals(0, blockChain.getBalance("1B"));
+    }
+}
@@ -0,0 +1,138 @@
+package unit;
+
+import data.Transaction;
+import data.UTXO;
+import org.junit.Assert;
+import org.junit.Test;
+import utils.SecurityUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.util.Arrays;
+
+public class TransactionTest {
+
+    @Test
+    public void encodingTest() throws Exception {
+        KeyPair a = Fixtures.generateKeyPair();
+        KeyPair b = Fixtures.generateKeyPair();
+        UTXO[] inUtxos = {new UTXO("1AddressOfA", 10000, a.getPublic())};
+        UTXO[] outUtxos = {new UTXO("1AddressOfB", 300, b.getPublic()), new UTXO("1AddressOfA", 9700, a.getPublic())};
+        byte[] sign = SecurityUtil.signature("data".getBytes(StandardCharsets.UTF_8), a.getPrivate());
+        Transaction transaction = new Transaction(inUtxos, outUtxos, sign, a.getPublic(), 1234567L);
+
+        byte[] encoded = transaction.toBytes();
+        Assert.assertArrayEquals(SecurityUtil.sha256Digest(encoded), transaction.getTxId());
+        // txid只计算一次
+        Assert.assertSame(transaction.getTxId(), transaction.getTxId());
+        Assert.assertTrue(encoded.length < transaction.toString().length() / 2);
+
+        Transaction restored = Transaction.fromBytes(encoded);
+        Assert.assertArrayEquals(encoded, restored.toBytes());
+        Assert.assertArrayEquals(transaction.getTxId(), restored.getTxId());
+        Assert.assertEquals(transaction.toString(), restored.toString());
+
+        // 任一字段改变，txid都会改变
+        Transaction other = new Transaction(inUtxos, outUtxos, sign, a.getPublic(), 1234568L);
+        Assert.assertFalse(Arrays.equals(transaction.getTxId(), other.getTxId()));
+    }
+
+    @Test
+    public void outPointTest() throws Exception {
+        KeyPair a = Fixtures.generateKeyPair();
+        KeyPair b = Fixtures.generateKeyPair();
+        UTXO[] outUtxos = {new UTXO("1AddressOfB", 300, b.getPublic()), new UTXO("1AddressOfA", 9700, a.getPublic())};
+        Transaction funding = new Transaction(new UTXO[0], outUtxos, new byte[0], a.getPublic(), 1L);
+        // 输出在构造交易时绑定outpoint
+        Assert.assertSame(outUtxos[1], funding.getOutUtxos()[1]);
+        Assert.assertArrayEquals(funding.getTxId(), outUtxos[1].getTxId());
+        Assert.assertEquals(1, outUtxos[1].getOutputIndex());
+        Assert.assertNotEquals(outUtxos[0], outUtxos[1]);
+
+        // 反序列化得到的utxo与原utxo相等
+        Transaction restoredFunding = Transaction.fromBytes(funding.toBytes());
+        Assert.assertEquals(outUtxos[1], restoredFunding.getOutUtxos()[1]);
+        Assert.assertEquals(outUtxos[1].hashCode(), restoredFunding.getOutUtxos()[1].hashCode());
+
+        // 输入的编码包含outpoint，还原后仍指向同一个utxo
+        Transaction spending = new Transaction(new UTXO[]{outUtxos[1]},
+                new UTXO[]{new UTXO("1AddressOfB", 9700, b.getPublic())}, new byte[0], a.getPublic(), 2L);
+        UTXO restoredInput = Transaction.fromBytes(spending.toBytes()).getInUtxos()[0];
+        Assert.assertEquals(outUtxos[1], restoredInput);
+        Assert.assertArrayEquals(spending.getTxId(), Transaction.fromBytes(spending.toBytes()).getTxId());
+
+        // 已属于其他交易的输出使用副本，不影响原交易
+        Transaction other = new Transaction(new UTXO[0], outUtxos, new byte[0], a.getPublic(), 3L);
+        Assert.assertNotSame(outUtxos[0], other.getOutUtxos()[0]);
+        Assert.assertArrayEquals(funding.getTxId(), outUtxos[0].getTxId());
+        Assert.assertArrayEquals(other.getTxId(), other.getOutUtxos()[0].getTxId());
+        Assert.assertNotEquals(outUtxos[0], other.getOutUtxos()[0]);
+    }
+
+    /**
+     * 超出编码范围的字段在构造时被拒绝，不会截断后得到与其他交易相同的编码
+     */
+    /**
+     * 修改构造时传入的数组或get方法返回的数组不影响交易，txid与验签结果保持一致
+     */
+    @Test
+    public void immutableTest() throws Exception {
+        KeyPair a = Fixtures.generateKeyPair();
+        KeyPair b = Fixtures.generateKeyPair();
+        UTXO[] inUtxos = {new UTXO("1AddressOfA", 10000, a.getPublic())};
+        new Transaction(new UTXO[0], inUtxos, new byte[0], a.getPublic(), 0L);
+        UTXO[] outUtxos = {new UTXO("1AddressOfB", 10000, b.getPublic())};
+        byte[] sign = SecurityUtil.signUtxos(inUtxos, outUtxos, a.getPrivate());
+        Transaction transaction = new Transaction(inUtxos, outUtxos, sign, a.getPublic(), 1L);
+        Assert.assertTrue(transaction.verifySignature());
+        byte[] txId = transaction.getTxId().clone();
+
+        UTXO toA = new UTXO("1AddressOfA", 10000, a.getPublic());
+        outUtxos[0] = toA;
+        inUtxos[0] = toA;
+        sign[0] ^= 1;
+        transaction.getOutUtxos()[0] = toA;
+        transaction.getInUtxos()[0] = toA;
+        transaction.getSendSign()[0] ^= 1;
+
+        Assert.assertEquals("1AddressOfB", transaction.getOutUtxos()[0].getWalletAddress());
+        Assert.assertArrayEquals(txId, SecurityUtil.sha256Digest(transaction.toBytes()));
+        Assert.assertTrue(transaction.verifySignature());
+        // 用修改后的数组构造的交易有不同的txid，不会命中原交易的验签结果
+        Assert.assertFalse(new Transaction(inUtxos, outUtxos, transaction.getSendSign(), a.getPublic(), 1L)
+                .verifySignature());
+    }
+
+    @Test
+    public void encodingRangeTest() throws Exception {
+        KeyPair a = Fixtures.generateKeyPair();
+        char[] longAddress = new char[256];
+        Arrays.fill(longAddress, '1');
+        try {
+            new UTXO(new String(longAddress), 1, a.getPublic());
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+            // 地址超过255个字符
+        }
+        try {
+            new UTXO("1地址", 1, a.getPublic());
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+            // 地址不是ASCII
+        }
+        try {
+            new Transaction(new UTXO[0], new UTXO[0], new byte[0x10000], a.getPublic(), 0L);
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+            // 签名超过65535字节
+        }
+        UTXO[] outUtxos = new UTXO[UTXO.NULL_INDEX + 1];
+        Arrays.fill(outUtxos, new UTXO("1AddressOfA", 1, a.getPublic()));
+        try {
+            new Transaction(new UTXO[0], outUtxos, new byte[0], a.getPublic(), 0L);
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+            // 输出下标超出outpoint的编码范围
+        }
+    }
+}
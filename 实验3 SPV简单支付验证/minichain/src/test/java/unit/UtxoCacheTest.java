@@ -0,0 +1,167 @@
+package unit;
+
+import data.Transaction;
+import data.UTXO;
+import data.UtxoCache;
+import data.UtxoSet;
+import data.UtxoStore;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import script.Script;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.util.List;
+
+public class UtxoCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void assertSameState(UtxoSet expected, UtxoCache actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        Assert.assertEquals(expected.getTotalAmount(), actual.getTotalAmount());
+        Assert.assertEquals(expected.getHeight(), actual.getHeight());
+        Assert.assertArrayEquals(expected.getBalances(Fixtures.ADDRESSES),
+                actual.getBalances(Fixtures.ADDRESSES));
+        for (String walletAddress : Fixtures.ADDRESSES) {
+            UTXO[] expectedUtxos = expected.getUtxos(walletAddress);
+            Assert.assertArrayEquals(expectedUtxos, actual.getUtxos(walletAddress));
+            for (UTXO utxo : expectedUtxos) {
+                UTXO byOutPoint = actual.get(utxo.getTxId(), utxo.getOutputIndex());
+                Assert.assertEquals(utxo, byOutPoint);
+                Assert.assertEquals(utxo.getAmount(), byOutPoint.getAmount());
+            }
+        }
+    }
+
+    /**
+     * 不同的刷新间隔与内存预算下，逐块的结果都与UtxoSet一致，关闭后文件中的结果也一致
+     */
+    @Test
+    public void matchesUtxoSetTest() throws Exception {
+        List<Transaction[]> blocks = Fixtures.randomBlocks(120, 5);
+        long[] budgets = {1, 4096, 1L << 30};
+        int[] intervals = {1, 7, 1000};
+        for (int i = 0; i < budgets.length; ++i) {
+            Path directory = folder.newFolder().toPath();
+            UtxoSet utxoSet = new UtxoSet();
+            try (UtxoCache cache = new UtxoCache(UtxoStore.create(directory, 16), budgets[i], intervals[i])) {
+                for (int height = 0; height < blocks.size(); ++height) {
+                    utxoSet.apply(blocks.get(height), height);
+                    cache.apply(blocks.get(height), height);
+                    assertSameState(utxoSet, cache);
+                }
+            }
+            try (UtxoStore store = UtxoStore.open(directory, 16)) {
+                Assert.assertEquals(utxoSet.size(), store.size());
+                Assert.assertEquals(utxoSet.getHeight(), store.getHeight());
+                for (String walletAddress : Fixtures.ADDRESSES) {
+                    Assert.assertArrayEquals(utxoSet.getUtxos(walletAddress), store.getUtxos(walletAddress));
+                }
+            }
+        }
+    }
+
+    /**
+     * 每N个区块刷新一次，两次刷新之间产生又被花费的utxo不写入文件
+     */
+    @Test
+    public void flushIntervalTest() throws Exception {
+        KeyPair keyPair = Fixtures.generateKeyPair();
+        Path directory = folder.getRoot().toPath();
+        UTXO multisig = new UTXO("1A", 100, Script.multisig(1, keyPair.getPublic()));
+        UTXO kept = new UTXO("1B", 200, keyPair.getPublic());
+        Transaction create = new Transaction(new UTXO[0], new UTXO[]{multisig, kept}, new byte[0],
+                keyPair.getPublic(), 0L);
+        UTXO toB = new UTXO("1B", 100, keyPair.getPublic());
+        Transaction spend = new Transaction(new UTXO[]{multisig}, new UTXO[]{toB}, new byte[0],
+                keyPair.getPublic(), 1L);
+
+        UtxoStore store = UtxoStore.create(directory, 16);
+        try (UtxoCache cache = new UtxoCache(store, 1L << 30, 3)) {
+            cache.apply(new Transaction[]{create}, 0);
+            cache.apply(new Transaction[]{spend}, 1);
+            // 尚未刷新，文件中没有任何utxo
+            Assert.assertEquals(-1, store.getHeight());
+            Assert.assertEquals(0, store.size());
+            Assert.assertEquals(2, cache.getUnflushedBlocks());
+            Assert.assertArrayEquals(new UTXO[]{kept, toB}, cache.getUtxos("1B"));
+            Assert.assertEquals(0, cache.getBalance("1A"));
+            Assert.assertEquals(300, cache.getTotalAmount());
+
+            cache.apply(new Transaction[0], 2);
+            Assert.assertEquals(0, cache.getUnflushedBlocks());
+            Assert.assertEquals(2, store.getHeight());
+            Assert.assertEquals(2, store.size());
+            Assert.assertArrayEquals(new UTXO[]{kept, toB}, store.getUtxos("1B"));
+            Assert.assertNull(store.get(multisig.getTxId(), multisig.getOutputIndex()));
+            // 多重签名脚本从未写入文件
+            Assert.assertEquals(0, Files.size(directory.resolve("utxo-1.blob")));
+
+            // 花费已写入文件的utxo，刷新前文件不变，查询结果已扣除
+            cache.apply(new Transaction[]{new Transaction(new UTXO[]{kept}, new UTXO[0], new byte[0],
+                    keyPair.getPublic(), 3L)}, 3);
+            Assert.assertArrayEquals(new UTXO[]{toB}, cache.getUtxos("1B"));
+            Assert.assertEquals(100, cache.getBalance("1B"));
+            Assert.assertEquals(200, store.getBalance("1B") - cache.getBalance("1B"));
+        }
+        // 关闭时刷新
+        try (UtxoStore reopened = UtxoStore.open(directory, 16)) {
+            Assert.assertEquals(3, reopened.getHeight());
+            Assert.assertArrayEquals(new UTXO[]{toB}, reopened.getUtxos("1B"));
+        }
+    }
+
+    /**
+     * FRESH和SPENT条目按刷新时文件中的脏页计入内存，刷新后只剩干净条目本身的大小
+     */
+    @Test
+    public void dirtyPageCostTest() throws Exception {
+        KeyPair keyPair = Fixtures.generateKeyPair();
+        UTXO[] outUtxos = new UTXO[100];
+        for (int i = 0; i < outUtxos.length; ++i) {
+            outUtxos[i] = new UTXO(Fixtures.ADDRESSES[i % Fixtures.ADDRESSES.length], i, keyPair.getPublic());
+        }
+        Transaction create = new Transaction(new UTXO[0], outUtxos, new byte[0], keyPair.getPublic(), 0L);
+        long pageCost = outUtxos.length * 4096L;
+        try (UtxoCache cache = new UtxoCache(UtxoStore.create(folder.getRoot().toPath(), 16), 1L << 30, 1000)) {
+            cache.apply(new Transaction[]{create}, 0);
+            Assert.assertTrue(cache.getMemoryUsage() > pageCost);
+            cache.flush();
+            Assert.assertTrue(cache.getMemoryUsage() < pageCost);
+
+            // 花费已写入文件的utxo，SPENT条目同样计入脏页
+            long clean = cache.getMemoryUsage();
+            cache.apply(new Transaction[]{new Transaction(outUtxos, new UTXO[0], new byte[0],
+                    keyPair.getPublic(), 1L)}, 1);
+            Assert.assertTrue(cache.getMemoryUsage() > clean + pageCost);
+            cache.flush();
+            Assert.assertEquals(0, cache.size());
+            Assert.assertEquals(0, cache.getMemoryUsage());
+        }
+    }
+
+    /**
+     * 超过内存预算时刷新，缓存占用的内存保持在预算以内
+     */
+    @Test
+    public void memoryBudgetTest() throws Exception {
+        List<Transaction[]> blocks = Fixtures.randomBlocks(20, 9);
+        UtxoStore store = UtxoStore.create(folder.getRoot().toPath(), 16);
+        try (UtxoCache cache = new UtxoCache(store, 2048, 1000)) {
+            for (int height = 0; height < blocks.size(); ++height) {
+                cache.apply(blocks.get(height), height);
+                // 刷新后仍超过预算的干净条目被清空
+                Assert.assertTrue(cache.getMemoryUsage() <= 2048);
+                if (cache.getUnflushedBlocks() == 0) {
+                    Assert.assertEquals(height, store.getHeight());
+                }
+            }
+            Assert.assertTrue(store.getHeight() >= 0);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package unit;
+
+import data.Transaction;
+import data.UTXO;
+import data.UtxoSet;
+import org.junit.Assert;
+import org.junit.Test;
+import script.Script;
+
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class UtxoSetTest {
+
+    @Test
+    public void applyTest() throws Exception {
+        KeyPair a = Fixtures.generateKeyPair();
+        KeyPair b = Fixtures.generateKeyPair();
+        UTXO genesisA = new UTXO("1AddressOfA", 10000, a.getPublic());
+        UTXO genesisB = new UTXO("1AddressOfB", 10000, b.getPublic());
+        UtxoSet utxoSet = new UtxoSet();
+        utxoSet.apply(new Transaction[]{new Transaction(new UTXO[0], new UTXO[]{genesisA, genesisB},
+                new byte[0], a.getPublic(), 0L)}, 0);
+        Assert.assertEquals(2, utxoSet.size());
+
+        // A支付给B 300，找零9700
+        UTXO toB = new UTXO("1AddressOfB", 300, b.getPublic());
+        UTXO change = new UTXO("1AddressOfA", 9700, a.getPublic());
+        utxoSet.apply(new Transaction(new UTXO[]{genesisA}, new UTXO[]{toB, change}, new byte[0], a.getPublic(), 1L));
+        Assert.assertArrayEquals(new UTXO[]{change}, utxoSet.getUtxos("1AddressOfA"));
+        Assert.assertArrayEquals(new UTXO[]{genesisB, toB}, utxoSet.getUtxos("1AddressOfB"));
+        Assert.assertFalse(utxoSet.contains(genesisA));
+        Assert.assertEquals(3, utxoSet.size());
+        Assert.assertEquals(9700, utxoSet.getBalance("1AddressOfA"));
+        Assert.assertEquals(10300, utxoSet.getBalance("1AddressOfB"));
+        Assert.assertEquals(20000, utxoSet.getTotalAmount());
+
+        // A花光所有utxo后查询结果为空
+        utxoSet.apply(new Transaction(new UTXO[]{change}, new UTXO[]{new UTXO("1AddressOfB", 9700, b.getPublic())},
+                new byte[0], a.getPublic(), 2L));
+        Assert.assertEquals(0, utxoSet.getUtxos("1AddressOfA").length);
+        Assert.assertEquals(0, utxoSet.getUtxos("1AddressOfC").length);
+        Assert.assertEquals(3, utxoSet.size());
+        Assert.assertArrayEquals(new long[]{0, 20000, 0},
+                utxoSet.getBalances(new String[]{"1AddressOfA", "1AddressOfB", "1AddressOfC"}));
+        Assert.assertEquals(20000, utxoSet.getTotalAmount());
+    }
+
+    /**
+     * 随机交易序列上，增量维护的结果与从头遍历所有交易的结果一致
+     */
+    @Test
+    public void matchesFullScanTest() throws Exception {
+        KeyPair keyPair = Fixtures.generateKeyPair();
+        String[] addresses = {"1A", "1B", "1C", "1D"};
+        Random random = new Random(42);
+        List<Transaction> history = new ArrayList<>();
+        List<UTXO> unspent = new ArrayList<>();
+        UtxoSet utxoSet = new UtxoSet();
+
+        for (int i = 0; i < 200; ++i) {
+            List<UTXO> inUtxos = new ArrayList<>();
+            for (int j = random.nextInt(3); j > 0 && !unspent.isEmpty(); --j) {
+                inUtxos.add(unspent.remove(random.nextInt(unspent.size())));
+            }
+            UTXO[] outUtxos = new UTXO[1 + random.nextInt(2)];
+            for (int j = 0; j < outUtxos.length; ++j) {
+                outUtxos[j] = new UTXO(addresses[random.nextInt(addresses.length)], random.nextInt(1000),
+                        keyPair.getPublic());
+                unspent.add(outUtxos[j]);
+            }
+            Transaction transaction = new Transaction(inUtxos.toArray(new UTXO[0]), outUtxos, new byte[0],
+                    keyPair.getPublic(), i);
+            history.add(transaction);
+            utxoSet.apply(new Transaction[]{transaction}, i);
+        }
+
+        Assert.assertEquals(unspent.size(), utxoSet.size());
+        long total = 0;
+        long[] balances = utxoSet.getBalances(addresses);
+        for (int i = 0; i < addresses.length; ++i) {
+            UTXO[] utxos = fullScan(history, addresses[i]);
+            Assert.assertArrayEquals(utxos, utxoSet.getUtxos(addresses[i]));
+            long balance = 0;
+            for (UTXO utxo : utxos) {
+                balance += utxo.getAmount();
+            }
+            Assert.assertEquals(balance, balances[i]);
+            Assert.assertEquals(balance, utxoSet.getBalance(addresses[i]));
+            total += balance;
+        }
+        Assert.assertEquals(total, utxoSet.getTotalAmount());
+    }
+
+    /**
+     * 输入不存在、在同一区块中被花费两次，或输出已存在时拒绝整个区块，集合保持不变
+     */
+    @Test
+    public void rejectInvalidBlockTest() throws Exception {
+        KeyPair a = Fixtures.generateKeyPair();
+        UTXO genesis = new UTXO("1AddressOfA", 10000, a.getPublic());
+        Transaction create = new Transaction(new UTXO[0], new UTXO[]{genesis}, new byte[0], a.getPublic(), 0L);
+        UtxoSet utxoSet = new UtxoSet();
+        utxoSet.apply(new Transaction[]{create}, 0);
+
+        // 绑定了outpoint但从未上链的utxo
+        UTXO unknown = new UTXO("1AddressOfA", 10000, a.getPublic());
+        new Transaction(new UTXO[0], new UTXO[]{unknown}, new byte[0], a.getPublic(), 1L);
+        Transaction spend = new Transaction(new UTXO[]{genesis}, new UTXO[]{new UTXO("1AddressOfB", 10000,
+                a.getPublic())}, new byte[0], a.getPublic(), 2L);
+        Transaction spendAgain = new Transaction(new UTXO[]{genesis}, new UTXO[]{new UTXO("1AddressOfC", 10000,
+                a.getPublic())}, new byte[0], a.getPublic(), 3L);
+        Transaction[][] invalidBlocks = {
+                {new Transaction(new UTXO[]{unknown}, new UTXO[0], new byte[0], a.getPublic(), 4L)},
+                {spend, spendAgain},
+                {create},
+        };
+        for (Transaction[] block : invalidBlocks) {
+            try {
+                utxoSet.apply(block, 1);
+                Assert.fail();
+            } catch (IllegalArgumentException expected) {
+                // 拒绝整个区块
+            }
+            Assert.assertEquals(1, utxoSet.size());
+            Assert.assertEquals(0, utxoSet.getHeight());
+            Assert.assertEquals(10000, utxoSet.getBalance("1AddressOfA"));
+            Assert.assertEquals(10000, utxoSet.getTotalAmount());
+            Assert.assertEquals(0, utxoSet.getUtxos("1AddressOfB").length);
+        }
+    }
+
+    private static UTXO[] fullScan(List<Transaction> history, String walletAddress) {
+        Set<UTXO> trueUtxoSet = new LinkedHashSet<>();
+        for (Transaction transaction : history) {
+            for (UTXO utxo : transaction.getInUtxos()) {
+                trueUtxoSet.remove(utxo);
+            }
+            for (UTXO utxo : transaction.getOutUtxos()) {
+                if (utxo.getWalletAddress().equals(walletAddress)) {
+                    trueUtxoSet.add(utxo);
+                }
+            }
+        }
+        return trueUtxoSet.toArray(new UTXO[0]);
+    }
+
+    /**
+     * 由槽位字段还原的utxo与原utxo的各字段一致，锁定条件释放后可以重新加入
+     */
+    @Test
+    public void restoreFieldsTest() throws Exception {
+        KeyPair a = Fixtures.generateKeyPair();
+        KeyPair b = Fixtures.generateKeyPair();
+        UTXO multisig = new UTXO("1AddressOfA", 500, Script.multisig(1, a.getPublic(), b.getPublic()));
+        UTXO single = new UTXO("1AddressOfA", 700, a.getPublic());
+        UtxoSet utxoSet = new UtxoSet();
+        utxoSet.apply(new Transaction[]{new Transaction(new UTXO[0], new UTXO[]{multisig, single},
+                new byte[0], a.getPublic(), 0L)}, 0);
+        for (UTXO expected : new UTXO[]{multisig, single}) {
+            UTXO actual = utxoSet.get(expected.getTxId(), expected.getOutputIndex());
+            Assert.assertEquals(expected, actual);
+            Assert.assertEquals(expected.getWalletAddress(), actual.getWalletAddress());
+            Assert.assertEquals(expected.getAmount(), actual.getAmount());
+            Assert.assertArrayEquals(expected.getPublicKeyHash(), actual.getPublicKeyHash());
+            Assert.assertEquals(expected.getLockingScript(), actual.getLockingScript());
+        }
+
+        // 花费后锁定条件被释放，再次加入相同的锁定条件
+        UTXO again = new UTXO("1AddressOfB", 1200, Script.multisig(1, a.getPublic(), b.getPublic()));
+        utxoSet.apply(new Transaction(new UTXO[]{multisig, single}, new UTXO[]{again}, new byte[0], a.getPublic(), 1L));
+        Assert.assertEquals(1, utxoSet.size());
+        Assert.assertEquals(again.getLockingScript(),
+                utxoSet.get(again.getTxId(), again.getOutputIndex()).getLockingScript());
+        Assert.assertEquals(0, utxoSet.getUtxos("1AddressOfA").length);
+    }
+}
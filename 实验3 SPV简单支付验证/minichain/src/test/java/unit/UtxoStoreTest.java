@@ -0,0 +1,273 @@
+package unit;
+
+import data.Transaction;
+import data.UTXO;
+import data.UtxoSet;
+import data.UtxoStore;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+public class UtxoStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void assertSameState(UtxoSet expected, UtxoStore actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        Assert.assertEquals(expected.getTotalAmount(), actual.getTotalAmount());
+        Assert.assertEquals(expected.getHeight(), actual.getHeight());
+        Assert.assertArrayEquals(expected.getBalances(Fixtures.ADDRESSES), actual.getBalances(Fixtures.ADDRESSES));
+        for (String walletAddress : Fixtures.ADDRESSES) {
+            UTXO[] expectedUtxos = expected.getUtxos(walletAddress);
+            UTXO[] actualUtxos = actual.getUtxos(walletAddress);
+            Assert.assertArrayEquals(expectedUtxos, actualUtxos);
+            for (int i = 0; i < expectedUtxos.length; ++i) {
+                Assert.assertEquals(expectedUtxos[i].getAmount(), actualUtxos[i].getAmount());
+                Assert.assertEquals(walletAddress, actualUtxos[i].getWalletAddress());
+                Assert.assertArrayEquals(expectedUtxos[i].getPublicKeyHash(), actualUtxos[i].getPublicKeyHash());
+                Assert.assertEquals(expectedUtxos[i].getLockingScript(), actualUtxos[i].getLockingScript());
+                UTXO byOutPoint = actual.get(expectedUtxos[i].getTxId(), expectedUtxos[i].getOutputIndex());
+                Assert.assertEquals(expectedUtxos[i], byOutPoint);
+            }
+        }
+    }
+
+    /**
+     * 与堆内的UtxoSet逐块比较，初始容量很小，期间多次扩容
+     */
+    @Test
+    public void matchesUtxoSetTest() throws Exception {
+        List<Transaction[]> blocks = Fixtures.randomBlocks(150, 42);
+        UtxoSet utxoSet = new UtxoSet();
+        try (UtxoStore store = UtxoStore.create(folder.getRoot().toPath(), 16)) {
+            Assert.assertEquals(-1, store.getHeight());
+            Assert.assertEquals(0, store.size());
+            for (int height = 0; height < blocks.size(); ++height) {
+                utxoSet.apply(blocks.get(height), height);
+                store.apply(blocks.get(height), height);
+                if (height % 10 == 0) {
+                    assertSameState(utxoSet, store);
+                }
+            }
+            assertSameState(utxoSet, store);
+            Assert.assertTrue(store.getCapacity() > 16);
+            Assert.assertEquals(0, store.getUtxos("1Unknown").length);
+            Assert.assertEquals(0, store.getBalance("1Unknown"));
+            Assert.assertNull(store.get(new byte[32], 0));
+        }
+    }
+
+    /**
+     * 关闭后重新打开，状态不变并可以继续应用区块
+     */
+    @Test
+    public void reopenTest() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        List<Transaction[]> blocks = Fixtures.randomBlocks(60, 7);
+        UtxoSet utxoSet = new UtxoSet();
+        try (UtxoStore store = UtxoStore.create(directory, 16)) {
+            for (int height = 0; height < 30; ++height) {
+                utxoSet.apply(blocks.get(height), height);
+                store.apply(blocks.get(height), height);
+            }
+        }
+        try (UtxoStore store = UtxoStore.open(directory, 16)) {
+            assertSameState(utxoSet, store);
+            for (int height = 30; height < blocks.size(); ++height) {
+                utxoSet.apply(blocks.get(height), height);
+                store.apply(blocks.get(height), height);
+            }
+        }
+        try (UtxoStore store = UtxoStore.open(directory, 16)) {
+            assertSameState(utxoSet, store);
+        }
+        // create清空原有数据
+        try (UtxoStore store = UtxoStore.create(directory, 16)) {
+            Assert.assertEquals(0, store.size());
+            Assert.assertEquals(0, store.getUtxos("1A").length);
+        }
+    }
+
+    /**
+     * 不合法的区块或批次被整体拒绝，文件保持不变
+     */
+    @Test
+    public void rejectInvalidBatchTest() throws Exception {
+        List<Transaction[]> blocks = Fixtures.randomBlocks(3, 13);
+        UtxoSet utxoSet = new UtxoSet();
+        utxoSet.apply(blocks.get(0), 0);
+        try (UtxoStore store = UtxoStore.create(folder.getRoot().toPath(), 16)) {
+            store.apply(blocks.get(0), 0);
+            // 重复应用同一区块：输出已存在
+            try {
+                store.apply(blocks.get(0), 1);
+                Assert.fail();
+            } catch (IllegalArgumentException expected) {
+                // 拒绝整个区块
+            }
+            assertSameState(utxoSet, store);
+
+            UTXO existing = store.getUtxos(blocks.get(0)[0].getOutUtxos()[0].getWalletAddress())[0];
+            UTXO unknown = blocks.get(1)[0].getOutUtxos()[0];
+            List<UTXO> none = new ArrayList<>();
+            List<List<UTXO>> invalidSpends = Arrays.asList(Arrays.asList(unknown), Arrays.asList(existing, existing));
+            for (List<UTXO> spends : invalidSpends) {
+                try {
+                    store.write(spends, none, 1);
+                    Assert.fail();
+                } catch (IllegalArgumentException expected) {
+                    // 拒绝整个批次
+                }
+                assertSameState(utxoSet, store);
+            }
+            try {
+                store.write(none, Arrays.asList(existing), 1);
+                Assert.fail();
+            } catch (IllegalArgumentException expected) {
+                // 输出已存在
+            }
+            assertSameState(utxoSet, store);
+        }
+    }
+
+    /**
+     * 模拟提交过程中崩溃：日志完整时重新打开得到提交后的状态，日志不完整时得到提交前的状态
+     */
+    @Test
+    public void crashRecoveryTest() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        List<Transaction[]> blocks = Fixtures.randomBlocks(2, 11);
+        UtxoSet before = new UtxoSet();
+        before.apply(blocks.get(0), 0);
+        UtxoSet after = new UtxoSet();
+        after.apply(blocks.get(0), 0);
+        after.apply(blocks.get(1), 1);
+
+        // 容量足够，两个区块都写在第1代文件中
+        Path dataFile = directory.resolve("utxo-1.dat");
+        Path journalFile = directory.resolve("utxo-1.journal");
+        try (UtxoStore store = UtxoStore.create(directory, 1024)) {
+            store.apply(blocks.get(0), 0);
+        }
+        byte[] beforeImage = Files.readAllBytes(dataFile);
+        try (UtxoStore store = UtxoStore.open(directory, 1024)) {
+            store.apply(blocks.get(1), 1);
+        }
+        byte[] afterImage = Files.readAllBytes(dataFile);
+        byte[] journal = journalOf(beforeImage, afterImage);
+
+        // 日志已force，写映射区时崩溃
+        Files.write(dataFile, beforeImage);
+        Files.write(journalFile, journal);
+        try (UtxoStore store = UtxoStore.open(directory, 1024)) {
+            assertSameState(after, store);
+        }
+        Assert.assertEquals(0, Files.size(journalFile));
+
+        // 写日志时崩溃
+        Files.write(dataFile, beforeImage);
+        Files.write(journalFile, Arrays.copyOf(journal, journal.length - 100));
+        try (UtxoStore store = UtxoStore.open(directory, 1024)) {
+            assertSameState(before, store);
+            // 恢复后可以重新应用该区块
+            store.apply(blocks.get(1), 1);
+            assertSameState(after, store);
+        }
+    }
+
+    /**
+     * 一个批次修改的页数超过日志缓冲区时，日志分段写入、分段重放
+     */
+    @Test
+    public void largeBatchRecoveryTest() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        KeyPair keyPair = Fixtures.generateKeyPair();
+        UTXO[] outUtxos = new UTXO[3000];
+        for (int i = 0; i < outUtxos.length; ++i) {
+            outUtxos[i] = new UTXO(Fixtures.ADDRESSES[i % Fixtures.ADDRESSES.length], i, keyPair.getPublic());
+        }
+        Transaction[] block = {new Transaction(new UTXO[0], outUtxos, new byte[0], keyPair.getPublic(), 0L)};
+        UtxoSet utxoSet = new UtxoSet();
+        utxoSet.apply(block, 0);
+
+        Path dataFile = directory.resolve("utxo-1.dat");
+        try (UtxoStore store = UtxoStore.create(directory, 4096)) {
+            Assert.assertEquals(-1, store.getHeight());
+        }
+        byte[] beforeImage = Files.readAllBytes(dataFile);
+        try (UtxoStore store = UtxoStore.open(directory, 4096)) {
+            store.apply(block, 0);
+            assertSameState(utxoSet, store);
+        }
+        byte[] journal = journalOf(beforeImage, Files.readAllBytes(dataFile));
+        Assert.assertTrue(journal.length > 64 * (8 + 4096));
+
+        Files.write(dataFile, beforeImage);
+        Files.write(directory.resolve("utxo-1.journal"), journal);
+        try (UtxoStore store = UtxoStore.open(directory, 4096)) {
+            assertSameState(utxoSet, store);
+        }
+    }
+
+    /**
+     * 构造由before变为after的重做日志，格式见MappedPageFile
+     */
+    private static byte[] journalOf(byte[] before, byte[] after) {
+        int pageSize = 4096;
+        List<Integer> pages = new ArrayList<>();
+        for (int page = 0; page * pageSize < after.length; ++page) {
+            if (!Arrays.equals(Arrays.copyOfRange(before, page * pageSize, (page + 1) * pageSize),
+                    Arrays.copyOfRange(after, page * pageSize, (page + 1) * pageSize))) {
+                pages.add(page);
+            }
+        }
+        Assert.assertFalse(pages.isEmpty());
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 4 + pages.size() * (8 + pageSize) + 8);
+        buffer.putLong(0x4d43484a524e4c31L);
+        buffer.putInt(pages.size());
+        for (int page : pages) {
+            buffer.putLong(page);
+            buffer.put(after, page * pageSize, pageSize);
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(buffer.array(), 0, buffer.position());
+        buffer.putLong(crc32.getValue());
+        return buffer.array();
+    }
+
+    /**
+     * 扩容过程中崩溃留下的新一代文件在重新打开时被删除
+     */
+    @Test
+    public void strayGenerationTest() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        List<Transaction[]> blocks = Fixtures.randomBlocks(5, 3);
+        UtxoSet utxoSet = new UtxoSet();
+        try (UtxoStore store = UtxoStore.create(directory, 1024)) {
+            for (int height = 0; height < blocks.size(); ++height) {
+                utxoSet.apply(blocks.get(height), height);
+                store.apply(blocks.get(height), height);
+            }
+        }
+        Files.copy(directory.resolve("utxo-1.dat"), directory.resolve("utxo-2.dat"), StandardCopyOption.REPLACE_EXISTING);
+        Files.write(directory.resolve("utxo-2.blob"), new byte[]{1, 2, 3}, StandardOpenOption.CREATE);
+        try (UtxoStore store = UtxoStore.open(directory, 1024)) {
+            assertSameState(utxoSet, store);
+        }
+        Assert.assertFalse(Files.exists(directory.resolve("utxo-2.dat")));
+        Assert.assertFalse(Files.exists(directory.resolve("utxo-2.blob")));
+    }
+}